@@ -0,0 +1,49 @@
+package com.github.afarion1.command_handler.command;
+
+import com.github.afarion1.command_handler.command.config.CommandConfigBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding a command by the longest matching name or alias.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AliasLookupBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int aliases;
+
+    private CommandHandler handler;
+    private String hit;
+    private String miss;
+
+    @Setup
+    public void setup() {
+        handler = BenchmarkFixtures.newHandler();
+        List<String> aliasList = new ArrayList<>();
+        for (int i = 1; i < aliases; i++)
+            aliasList.add("alias" + i);
+        handler.registerCommand(BenchmarkCommand.class, BenchmarkCommand::new,
+                new CommandConfigBuilder("alias0").addAliases(aliasList).build());
+        hit = "alias" + aliases / 2 + " some arguments";
+        miss = "unknown some arguments";
+    }
+
+    @Benchmark
+    public AbstractCommand lookupHit() {
+        return handler.new FindCommand(hit).invoke().getCommand();
+    }
+
+    @Benchmark
+    public AbstractCommand lookupMiss() {
+        return handler.new FindCommand(miss).invoke().getCommand();
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.afarion1.command_handler.command;
+
+import com.github.afarion1.command_handler.command.config.CommandArgumentConfigBuilder;
+import com.github.afarion1.command_handler.command.config.CommandConfigBuilder;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of three arguments of the same kind by {@link CommandArgumentsFactory}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArgumentParsingBenchmark {
+
+    @Param({"plain", "quoted", "double", "custom"})
+    public String kind;
+
+    private AbstractCommand command;
+    private String arguments;
+    private MessageReceivedEvent event;
+
+    @Setup
+    public void setup() {
+        CommandHandler handler = BenchmarkFixtures.newHandler();
+        CommandConfigBuilder config = new CommandConfigBuilder("parse");
+        for (int id = 0; id < 3; id++) {
+            CommandArgumentConfigBuilder arg = new CommandArgumentConfigBuilder(id, "argument " + id);
+            switch (kind) {
+                case "plain":
+                    break;
+                case "quoted":
+                    arg.setInQuotes(true);
+                    break;
+                case "double":
+                    arg.setParseToDouble(true);
+                    break;
+                case "custom":
+                    arg.enableCustomArgumentChoosing(true);
+                    break;
+                default:
+                    throw new IllegalArgumentException(kind);
+            }
+            config.addArguments(arg);
+        }
+        handler.registerCommand(BenchmarkCommand.class, BenchmarkCommand::new, config.build());
+        command = handler.newCommandInstance(BenchmarkCommand.class);
+
+        switch (kind) {
+            case "quoted":
+                arguments = " \"first value\" \"second value\" \"third value\"";
+                break;
+            case "double":
+                arguments = " 1.5 -20 300.125";
+                break;
+            default:
+                arguments = " first second third";
+        }
+
+        Guild guild = BenchmarkFixtures.DISCORD.guild(1);
+        TextChannel channel = BenchmarkFixtures.DISCORD.textChannel(2, guild);
+        User user = BenchmarkFixtures.DISCORD.user(3);
+        event = BenchmarkFixtures.DISCORD.guildMessage("~parse" + arguments,
+                BenchmarkFixtures.DISCORD.member(user, guild), channel);
+    }
+
+    @Benchmark
+    public CommandArguments parse() {
+        return CommandArgumentsFactory.processArguments(command, arguments, event);
+    }
+}
@@ -0,0 +1,23 @@
+package com.github.afarion1.command_handler.command;
+
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+
+/**
+ * Command doing nothing, its config is given on registration. Custom argument choosing takes the first word.
+ */
+public final class BenchmarkCommand extends AbstractCommand {
+
+    public BenchmarkCommand(CommandHandler handler) {
+        super(handler);
+    }
+
+    @Override
+    public int chooseArgumentSymbols(MessageReceivedEvent event, String strArgs, int argumentId) {
+        int space = strArgs.indexOf(' ');
+        return space < 0 ? strArgs.length() : space;
+    }
+
+    @Override
+    public void execute(MessageReceivedEvent event, CommandArguments args) {
+    }
+}
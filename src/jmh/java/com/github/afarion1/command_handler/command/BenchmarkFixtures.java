@@ -0,0 +1,28 @@
+package com.github.afarion1.command_handler.command;
+
+import com.github.afarion1.command_handler.cooldown.CooldownStore;
+import com.github.afarion1.command_handler.cooldown.SqliteCooldownStore;
+import com.github.afarion1.command_handler.loadtest.FakeDiscord;
+
+/**
+ * Shared fakes of the benchmarks. Replies are only counted, not recorded.
+ */
+final class BenchmarkFixtures {
+
+    static final FakeDiscord DISCORD = new FakeDiscord(0);
+
+    private BenchmarkFixtures() {
+    }
+
+    static CommandHandler newHandler() {
+        return newHandler(new SqliteCooldownStore("jdbc:sqlite::memory:"));
+    }
+
+    static CommandHandler newHandler(CooldownStore cooldownStore) {
+        return new CommandHandlerBuilder()
+                .setJda(DISCORD.getJda())
+                .setCommandPrefix("~")
+                .setCooldownStore(cooldownStore)
+                .build();
+    }
+}
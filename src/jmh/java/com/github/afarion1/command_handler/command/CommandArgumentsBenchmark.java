@@ -0,0 +1,47 @@
+package com.github.afarion1.command_handler.command;
+
+import it.unimi.dsi.fastutil.ints.Int2DoubleLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading argument values from {@link CommandArguments} the way commands do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandArgumentsBenchmark {
+
+    private static final int ARGUMENTS = 5;
+
+    private CommandArguments arguments;
+
+    @Setup
+    public void setup() {
+        Int2ObjectMap<String> strValues = new Int2ObjectOpenHashMap<>();
+        Int2DoubleMap doubleValues = new Int2DoubleLinkedOpenHashMap();
+        for (int id = 0; id < ARGUMENTS; id++) {
+            strValues.put(id, Integer.toString(id));
+            doubleValues.put(id, id);
+        }
+        arguments = new CommandArguments(new IntArrayList(), strValues, doubleValues, "");
+    }
+
+    @Benchmark
+    public void readAll(Blackhole bh) {
+        for (int id = 0; id < ARGUMENTS; id++) {
+            bh.consume(arguments.isArgumentPresent(id));
+            bh.consume(arguments.getStringArgumentValue(id));
+            bh.consume(arguments.getDoubleArgumentValue(id));
+        }
+    }
+}
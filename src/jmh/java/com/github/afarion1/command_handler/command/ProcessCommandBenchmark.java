@@ -0,0 +1,92 @@
+package com.github.afarion1.command_handler.command;
+
+import com.github.afarion1.command_handler.command.config.CommandArgumentConfigBuilder;
+import com.github.afarion1.command_handler.command.config.CommandConfigBuilder;
+import com.github.afarion1.command_handler.cooldown.CooldownStore;
+import com.github.afarion1.command_handler.cooldown.MappedCooldownStore;
+import com.github.afarion1.command_handler.cooldown.SqliteCooldownStore;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole {@link CommandHandler#processCommand(MessageReceivedEvent)} with cooldowns kept in in-memory SQLite or
+ * a memory-mapped log in a temporary file.
+ * With {@code cooldown} users take turns, so every call passes an expired cooldown and saves a new one,
+ * with {@code onCooldown} every call is rejected.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessCommandBenchmark {
+
+    private static final int USERS = 1024;
+
+    @Param({"none", "cooldown", "onCooldown"})
+    public String mode;
+
+    @Param({"sqlite", "mapped"})
+    public String store;
+
+    private MessageReceivedEvent[] events;
+    private CommandHandler handler;
+    private CooldownStore cooldownStore;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws IOException {
+        if (store.equals("mapped")) {
+            Path file = Files.createTempFile("bench-cooldowns", ".log");
+            file.toFile().deleteOnExit();
+            cooldownStore = new MappedCooldownStore(file);
+        } else {
+            cooldownStore = new SqliteCooldownStore("jdbc:sqlite::memory:");
+        }
+        handler = BenchmarkFixtures.newHandler(cooldownStore);
+
+        CommandConfigBuilder config = new CommandConfigBuilder("bench")
+                .addArguments(new CommandArgumentConfigBuilder(0, "number").setParseToDouble(true),
+                        new CommandArgumentConfigBuilder(1, "word"));
+        if (mode.equals("cooldown"))
+            config.setCooldown(Duration.ofMillis(1));
+        else if (mode.equals("onCooldown"))
+            config.setCooldown(Duration.ofDays(1));
+        handler.registerCommand(BenchmarkCommand.class, BenchmarkCommand::new, config.build());
+        handler.start();
+
+        Guild guild = BenchmarkFixtures.DISCORD.guild(1);
+        TextChannel channel = BenchmarkFixtures.DISCORD.textChannel(2, guild);
+        int users = mode.equals("onCooldown") ? 1 : USERS;
+        events = new MessageReceivedEvent[users];
+        for (int i = 0; i < users; i++) {
+            User user = BenchmarkFixtures.DISCORD.user(1000 + i);
+            events[i] = BenchmarkFixtures.DISCORD.guildMessage("~bench 42 word",
+                    BenchmarkFixtures.DISCORD.member(user, guild), channel);
+        }
+        if (mode.equals("onCooldown"))
+            handler.processCommand(events[0]);
+    }
+
+    @TearDown
+    public void tearDown() {
+        cooldownStore.close();
+    }
+
+    @Benchmark
+    public void processCommand() {
+        MessageReceivedEvent event = events[next];
+        next = next + 1 == events.length ? 0 : next + 1;
+        handler.processCommand(event);
+    }
+}
@@ -0,0 +1,294 @@
+package com.github.afarion1.command_handler.loadtest;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.*;
+import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.hooks.EventListener;
+import net.dv8tion.jda.api.requests.restaction.MessageAction;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * In-memory stand-in for Discord. Provides fake JDA entities built with dynamic proxies, delivers events to
+ * listeners registered on {@link #getJda()} and records messages sent to the fake channels instead of sending them.<br>
+ * Fake members own their guilds, so they pass all permission checks.
+ */
+public final class FakeDiscord {
+
+    /**
+     * Default maximum amount of messages kept by {@link #getSentMessages()}.
+     */
+    public static final int DEFAULT_RECORD_LIMIT = 10_000;
+
+    private final JDA jda;
+    private final List<EventListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong messageIds = new AtomicLong();
+
+    private final Map<Long, Guild> guilds = new ConcurrentHashMap<>();
+    private final Map<Long, TextChannel> textChannels = new ConcurrentHashMap<>();
+    private final Map<Long, PrivateChannel> privateChannels = new ConcurrentHashMap<>();
+    private final Map<Long, User> users = new ConcurrentHashMap<>();
+    //guild id -> user id -> member
+    private final Map<Long, Map<Long, Member>> members = new ConcurrentHashMap<>();
+
+    private final int recordLimit;
+    private final Queue<RecordedMessage> sentMessages = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger recorded = new AtomicInteger();
+    private final LongAdder sentMessageCount = new LongAdder();
+
+    public FakeDiscord() {
+        this(DEFAULT_RECORD_LIMIT);
+    }
+
+    /**
+     * @param recordLimit maximum amount of sent messages to keep, messages above the limit are only counted
+     */
+    public FakeDiscord(int recordLimit) {
+        this.recordLimit = recordLimit;
+        Map<String, Function<Object[], Object>> answers = new HashMap<>();
+        answers.put("addEventListener", args -> {
+            for (Object listener : (Object[]) args[0]) {
+                if (!(listener instanceof EventListener))
+                    throw new IllegalArgumentException("Listener must implement EventListener");
+                listeners.add((EventListener) listener);
+            }
+            return null;
+        });
+        answers.put("removeEventListener", args -> {
+            listeners.removeAll(Arrays.asList((Object[]) args[0]));
+            return null;
+        });
+        answers.put("getRegisteredListeners", args -> Collections.unmodifiableList(new ArrayList<>(listeners)));
+        this.jda = proxy(JDA.class, answers);
+    }
+
+    /**
+     * @return fake JDA to pass to {@link com.github.afarion1.command_handler.command.CommandHandlerBuilder#setJda(JDA)}
+     */
+    public JDA getJda() {
+        return jda;
+    }
+
+    /**
+     * Delivers the event to all the listeners registered on the fake JDA, in the calling thread.
+     */
+    public void dispatch(GenericEvent event) {
+        for (EventListener listener : listeners) {
+            listener.onEvent(event);
+        }
+    }
+
+    public Guild guild(long id) {
+        return guilds.computeIfAbsent(id, key -> {
+            Map<String, Function<Object[], Object>> answers = snowflakeAnswers(id);
+            answers.put("getJDA", args -> jda);
+            answers.put("getName", args -> "Guild " + id);
+            return proxy(Guild.class, answers);
+        });
+    }
+
+    public TextChannel textChannel(long id, Guild guild) {
+        return textChannels.computeIfAbsent(id, key -> {
+            Map<String, Function<Object[], Object>> answers = channelAnswers(id, ChannelType.TEXT);
+            answers.put("getGuild", args -> guild);
+            return proxy(TextChannel.class, answers);
+        });
+    }
+
+    public PrivateChannel privateChannel(User user) {
+        return privateChannels.computeIfAbsent(user.getIdLong(), key -> {
+            Map<String, Function<Object[], Object>> answers = channelAnswers(user.getIdLong(), ChannelType.PRIVATE);
+            answers.put("getUser", args -> user);
+            return proxy(PrivateChannel.class, answers);
+        });
+    }
+
+    public User user(long id) {
+        return users.computeIfAbsent(id, key -> {
+            Map<String, Function<Object[], Object>> answers = snowflakeAnswers(id);
+            answers.put("getJDA", args -> jda);
+            answers.put("getName", args -> "User " + id);
+            answers.put("getAsMention", args -> "<@" + Long.toUnsignedString(id) + ">");
+            return proxy(User.class, answers);
+        });
+    }
+
+    public Member member(User user, Guild guild) {
+        Map<Long, Member> guildMembers = members.computeIfAbsent(guild.getIdLong(), id -> new ConcurrentHashMap<>());
+        return guildMembers.computeIfAbsent(user.getIdLong(), id -> {
+            Map<String, Function<Object[], Object>> answers = snowflakeAnswers(user.getIdLong());
+            answers.put("getJDA", args -> jda);
+            answers.put("getUser", args -> user);
+            answers.put("getGuild", args -> guild);
+            answers.put("getAsMention", args -> user.getAsMention());
+            answers.put("getRoles", args -> Collections.emptyList());
+            answers.put("isOwner", args -> true);
+            return proxy(Member.class, answers);
+        });
+    }
+
+    /**
+     * @return event of the message written by the member in the guild channel
+     */
+    public MessageReceivedEvent guildMessage(String content, Member member, TextChannel channel) {
+        return messageEvent(content, member.getUser(), member, channel);
+    }
+
+    /**
+     * @return event of the message written by the user in direct messages
+     */
+    public MessageReceivedEvent privateMessage(String content, User user) {
+        return messageEvent(content, user, null, privateChannel(user));
+    }
+
+    private MessageReceivedEvent messageEvent(String content, User author, Member member, MessageChannel channel) {
+        long id = messageIds.incrementAndGet();
+        boolean fromGuild = channel instanceof TextChannel;
+        Map<String, Function<Object[], Object>> answers = snowflakeAnswers(id);
+        answers.put("getJDA", args -> jda);
+        answers.put("getContentRaw", args -> content);
+        answers.put("getContentDisplay", args -> content);
+        answers.put("getAuthor", args -> author);
+        answers.put("getMember", args -> member);
+        answers.put("getChannel", args -> channel);
+        answers.put("getChannelType", args -> channel.getType());
+        answers.put("isFromGuild", args -> fromGuild);
+        answers.put("getTextChannel", args -> fromGuild ? channel : null);
+        answers.put("getPrivateChannel", args -> fromGuild ? null : channel);
+        answers.put("getGuild", args -> fromGuild ? ((TextChannel) channel).getGuild() : null);
+        return new MessageReceivedEvent(jda, id, proxy(Message.class, answers));
+    }
+
+    /**
+     * @return the recorded messages, oldest first, up to the record limit
+     */
+    public List<RecordedMessage> getSentMessages() {
+        return new ArrayList<>(sentMessages);
+    }
+
+    /**
+     * @return amount of all the sent messages, including ones above the record limit
+     */
+    public long getSentMessageCount() {
+        return sentMessageCount.sum();
+    }
+
+    public void clearSentMessages() {
+        sentMessages.clear();
+        recorded.set(0);
+        sentMessageCount.reset();
+    }
+
+    private void record(RecordedMessage message) {
+        sentMessageCount.increment();
+        if (recorded.get() < recordLimit && recorded.incrementAndGet() <= recordLimit)
+            sentMessages.add(message);
+    }
+
+    private Map<String, Function<Object[], Object>> channelAnswers(long id, ChannelType type) {
+        Map<String, Function<Object[], Object>> answers = snowflakeAnswers(id);
+        answers.put("getJDA", args -> jda);
+        answers.put("getType", args -> type);
+        answers.put("getName", args -> "channel-" + id);
+        answers.put("sendMessage", args -> {
+            Object content = args[0];
+            return content instanceof MessageEmbed
+                    ? messageAction(new RecordedMessage(id, null, (MessageEmbed) content, 0))
+                    : messageAction(new RecordedMessage(id, String.valueOf(content), null, 0));
+        });
+        return answers;
+    }
+
+    private MessageAction messageAction(RecordedMessage draft) {
+        return (MessageAction) Proxy.newProxyInstance(FakeDiscord.class.getClassLoader(),
+                new Class<?>[]{MessageAction.class}, new MessageActionHandler(draft));
+    }
+
+    private static Map<String, Function<Object[], Object>> snowflakeAnswers(long id) {
+        Map<String, Function<Object[], Object>> answers = new HashMap<>();
+        answers.put("getIdLong", args -> id);
+        answers.put("getId", args -> Long.toUnsignedString(id));
+        return answers;
+    }
+
+    /**
+     * @return proxy answering with given functions by method name, with default values otherwise
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> anInterface, Map<String, Function<Object[], Object>> answers) {
+        return (T) Proxy.newProxyInstance(FakeDiscord.class.getClassLoader(), new Class<?>[]{anInterface},
+                (proxy, method, args) -> {
+                    Function<Object[], Object> answer = answers.get(method.getName());
+                    if (answer != null)
+                        return answer.apply(args);
+                    return defaultValue(proxy, method, args);
+                });
+    }
+
+    private static Object defaultValue(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Fake" + proxy.getClass().getInterfaces()[0].getSimpleName();
+        }
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) return false;
+        if (type == long.class) return 0L;
+        if (type == int.class) return 0;
+        if (type == double.class) return 0d;
+        if (type == float.class) return 0f;
+        if (type == short.class) return (short) 0;
+        if (type == byte.class) return (byte) 0;
+        if (type == char.class) return (char) 0;
+        //fluent rest actions return themselves
+        if (type.isInstance(proxy)) return proxy;
+        return null;
+    }
+
+    /**
+     * Records the message once the action is queued, submitted or completed.
+     */
+    private final class MessageActionHandler implements InvocationHandler {
+        private final RecordedMessage draft;
+
+        private MessageActionHandler(RecordedMessage draft) {
+            this.draft = draft;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "queue":
+                    record(sent());
+                    return null;
+                case "submit":
+                    record(sent());
+                    return CompletableFuture.completedFuture(null);
+                case "complete":
+                    record(sent());
+                    return null;
+                default:
+                    return defaultValue(proxy, method, args);
+            }
+        }
+
+        private RecordedMessage sent() {
+            return new RecordedMessage(draft.getChannelId(), draft.getContent(), draft.getEmbed(), System.nanoTime());
+        }
+    }
+}
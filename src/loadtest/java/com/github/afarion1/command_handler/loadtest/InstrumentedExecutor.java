@@ -0,0 +1,152 @@
+package com.github.afarion1.command_handler.loadtest;
+
+import com.github.afarion1.command_handler.dispatch.GuildTask;
+import com.github.afarion1.command_handler.metrics.LatencyHistogram;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decorator measuring how long tasks wait before they start and how long they take overall. Queue depth,
+ * the amount of submitted but not started tasks, is sampled on every submission. {@link GuildTask}s stay
+ * guild tasks after decoration, so per guild scheduling still works.
+ */
+final class InstrumentedExecutor extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder queueDepthSum = new LongAdder();
+    private final LongAccumulator maxQueueDepth = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator lastCompletedAt = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+    InstrumentedExecutor(ExecutorService delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        long enqueuedAt = System.nanoTime();
+        long depth = Math.max(0, submitted.sum() - started.sum());
+        Runnable measured = command instanceof GuildTask
+                ? new MeasuredGuildTask((GuildTask) command, enqueuedAt)
+                : new Measured(command, enqueuedAt);
+        try {
+            delegate.execute(measured);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+        submitted.increment();
+        queueDepthSum.add(depth);
+        maxQueueDepth.accumulate(depth);
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    long getSubmitted() {
+        return submitted.sum();
+    }
+
+    long getCompleted() {
+        return completed.sum();
+    }
+
+    long getRejected() {
+        return rejected.sum();
+    }
+
+    long getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    double getMeanQueueDepth() {
+        long count = submitted.sum();
+        return count == 0 ? 0 : (double) queueDepthSum.sum() / count;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} of the last completed task, {@link Long#MIN_VALUE} if none completed
+     */
+    long getLastCompletedAt() {
+        return lastCompletedAt.get();
+    }
+
+    private class Measured implements Runnable {
+        private final Runnable task;
+        private final long enqueuedAt;
+
+        private Measured(Runnable task, long enqueuedAt) {
+            this.task = task;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        @Override
+        public void run() {
+            started.increment();
+            queueWait.record(System.nanoTime() - enqueuedAt);
+            try {
+                task.run();
+            } finally {
+                long now = System.nanoTime();
+                latency.record(now - enqueuedAt);
+                lastCompletedAt.accumulate(now);
+                completed.increment();
+            }
+        }
+    }
+
+    private final class MeasuredGuildTask extends Measured implements GuildTask {
+        private final long guildId;
+
+        private MeasuredGuildTask(GuildTask task, long enqueuedAt) {
+            super(task, enqueuedAt);
+            this.guildId = task.getGuildId();
+        }
+
+        @Override
+        public long getGuildId() {
+            return guildId;
+        }
+    }
+}
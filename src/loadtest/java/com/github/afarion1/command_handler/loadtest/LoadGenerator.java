@@ -0,0 +1,281 @@
+package com.github.afarion1.command_handler.loadtest;
+
+import com.github.afarion1.command_handler.command.CommandHandler;
+import com.github.afarion1.command_handler.command.CommandHandlerBuilder;
+import com.github.afarion1.command_handler.cooldown.MappedCooldownStore;
+import com.github.afarion1.command_handler.utils.NamedThreadFactory;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Replays a weighted mix of command messages from fake users and guilds through a {@link CommandHandler}
+ * at a target rate, without connecting to Discord. <br>
+ * Messages are sent open-loop: the schedule doesn't slow down if the handler falls behind, so the queue
+ * grows instead, like it would with real traffic. <br>
+ * Cooldowns are kept in a temporary {@link MappedCooldownStore} unless the handler is configured with another store.
+ * <pre>{@code
+ * LoadTestReport report = new LoadGenerator()
+ *         .configureHandler(builder -> builder.setCommandPrefix("~"))
+ *         .addMessage("~calc 2 + 2", 10)
+ *         .addMessage("~help", 1)
+ *         .setRate(5000)
+ *         .setDuration(Duration.ofSeconds(30))
+ *         .run();
+ * }</pre>
+ */
+public final class LoadGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadGenerator.class);
+    private static final long GUILD_ID_BASE = 100_000_000L;
+    private static final long CHANNEL_ID_BASE = 200_000_000L;
+    private static final long USER_ID_BASE = 300_000_000L;
+
+    private final List<String> messages = new ArrayList<>();
+    private final IntList cumulativeWeights = new IntArrayList();
+    private int totalWeight = 0;
+    private int users = 1000;
+    private int guilds = 10;
+    private double directMessageShare = 0;
+    private int rate = 1000;
+    private Duration duration = Duration.ofSeconds(10);
+    private Duration drainTimeout = Duration.ofSeconds(30);
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long seed = 42;
+    private ExecutorService executor = null;
+    private Consumer<CommandHandlerBuilder> handlerConfigurer = builder -> {
+    };
+    private Consumer<CommandHandler> commandRegistrar = handler -> {
+    };
+
+    /**
+     * Adds a message to the mix.
+     * @param content raw content of the message, usually a command call with the prefix
+     * @param weight relative frequency of the message in the mix
+     * @return instance of {@link LoadGenerator}. Useful for chaining
+     */
+    public LoadGenerator addMessage(String content, int weight) {
+        if (weight <= 0)
+            throw new IllegalArgumentException("Weight must be positive");
+        messages.add(content);
+        totalWeight += weight;
+        cumulativeWeights.add(totalWeight);
+        return this;
+    }
+
+    /**
+     * @param users amount of distinct message authors, 1000 by default
+     * @return instance of {@link LoadGenerator}. Useful for chaining
+     */
+    public LoadGenerator setUsers(int users) {
+        if (users <= 0)
+            throw new IllegalArgumentException("Amount of users must be positive");
+        this.users = users;
+        return this;
+    }
+
+    /**
+     * @param guilds amount of distinct guilds, each one has a single text channel. 10 by default
+     * @return instance of {@link LoadGenerator}. Useful for chaining
+     */
+    public LoadGenerator setGuilds(int guilds) {
+        if (guilds <= 0)
+            throw new IllegalArgumentException("Amount of guilds must be positive");
+        this.guilds = guilds;
+        return this;
+    }
+
+    /**
+     * @param share part of messages sent in direct messages, from 0 to 1. 0 by default
+     * @return instance of {@link LoadGenerator}. Useful for chaining
+     */
+    public LoadGenerator setDirectMessageShare(double share) {
+        if (share < 0 || share > 1)
+            throw new IllegalArgumentException("Share must be in range from 0 to 1");
+        this.directMessageShare = share;
+        return this;
+    }
+
+    /**
+     * @param messagesPerSecond target rate of messages, 1000 by default
+     * @return instance of {@link LoadGenerator}. Useful for chaining
+     */
+    public LoadGenerator setRate(int messagesPerSecond) {
+        if (messagesPerSecond <= 0)
+            throw new IllegalArgumentException("Rate must be positive");
+        this.rate = messagesPerSecond;
+        return this;
+    }
+
+    /**
+     * @param duration for how long messages are sent, 10 seconds by default
+     * @return instance of {@link LoadGenerator}. Useful for chaining
+     */
+    public LoadGenerator setDuration(Duration duration) {
+        this.duration = duration;
+        return this;
+    }
+
+    /**
+     * @param drainTimeout how long to wait for queued commands after the last message, 30 seconds by default
+     * @return instance of {@link LoadGenerator}. Useful for chaining
+     */
+    public LoadGenerator setDrainTimeout(Duration drainTimeout) {
+        this.drainTimeout = drainTimeout;
+        return this;
+    }
+
+    /**
+     * @param threads amount of threads executing commands, amount of processors by default. Ignored if
+     *                an executor is set
+     * @return instance of {@link LoadGenerator}. Useful for chaining
+     */
+    public LoadGenerator setThreads(int threads) {
+        if (threads <= 0)
+            throw new IllegalArgumentException("Amount of threads must be positive");
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Runs commands on the given executor instead of a fixed thread pool, for example to compare dispatch modes.
+     * The executor is shut down at the end of the run.
+     * @return instance of {@link LoadGenerator}. Useful for chaining
+     */
+    public LoadGenerator setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * @param seed seed of the random choice of messages, users and guilds
+     * @return instance of {@link LoadGenerator}. Useful for chaining
+     */
+    public LoadGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * @param configurer customizes the handler, JDA and executor are set by the generator and shouldn't be changed
+     * @return instance of {@link LoadGenerator}. Useful for chaining
+     */
+    public LoadGenerator configureHandler(Consumer<CommandHandlerBuilder> configurer) {
+        this.handlerConfigurer = configurer;
+        return this;
+    }
+
+    /**
+     * @param registrar registers commands before the handler starts, annotated commands are registered anyway
+     * @return instance of {@link LoadGenerator}. Useful for chaining
+     */
+    public LoadGenerator registerCommands(Consumer<CommandHandler> registrar) {
+        this.commandRegistrar = registrar;
+        return this;
+    }
+
+    /**
+     * Builds and starts a handler on a fake JDA, sends the messages and waits for queued commands.
+     * Blocks the calling thread for the duration of the test.
+     */
+    public LoadTestReport run() {
+        if (messages.isEmpty())
+            throw new IllegalStateException("No messages to send, add them with addMessage()");
+
+        FakeDiscord discord = new FakeDiscord();
+        InstrumentedExecutor executor = new InstrumentedExecutor(this.executor != null
+                ? this.executor
+                : Executors.newFixedThreadPool(threads, new NamedThreadFactory("Load test worker")));
+        Path cooldownFile;
+        try {
+            cooldownFile = Files.createTempFile("load-test-cooldowns", ".log");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create cooldown log of the load test", e);
+        }
+        cooldownFile.toFile().deleteOnExit();
+        MappedCooldownStore cooldownStore = new MappedCooldownStore(cooldownFile);
+        CommandHandlerBuilder builder = new CommandHandlerBuilder().setCooldownStore(cooldownStore);
+        handlerConfigurer.accept(builder);
+        CommandHandler handler = builder
+                .setJda(discord.getJda())
+                .setExecutorService(executor)
+                .build();
+        commandRegistrar.accept(handler);
+        handler.start();
+
+        log.info("Sending {} messages per second for {}", rate, duration);
+        Random random = new Random(seed);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        long sent = 0;
+        long maxLag = 0;
+        for (long scheduled = start; scheduled - end < 0; scheduled = start + sent * intervalNanos) {
+            long now = System.nanoTime();
+            while (scheduled - now > 0) {
+                LockSupport.parkNanos(scheduled - now);
+                now = System.nanoTime();
+            }
+            maxLag = Math.max(maxLag, now - scheduled);
+            discord.dispatch(nextMessage(discord, random));
+            sent++;
+        }
+        long generationEnd = System.nanoTime();
+
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(drainTimeout.toNanos(), TimeUnit.NANOSECONDS))
+                log.warn("Queued commands weren't processed in {}, {} are left", drainTimeout,
+                        executor.getSubmitted() - executor.getCompleted());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while waiting for queued commands");
+        }
+        executor.shutdownNow();
+        //flushes batched cooldowns, stops the pipeline and closes the store
+        handler.shutdown(drainTimeout);
+
+        long lastCompletedAt = executor.getLastCompletedAt();
+        long elapsed = (lastCompletedAt == Long.MIN_VALUE ? generationEnd : Math.max(lastCompletedAt, generationEnd))
+                - start;
+        return new LoadTestReport(sent, executor.getSubmitted(), executor.getRejected(), executor.getCompleted(),
+                discord.getSentMessageCount(), elapsed, maxLag, executor.getLatency().snapshot(),
+                executor.getQueueWait().snapshot(), executor.getMaxQueueDepth(), executor.getMeanQueueDepth(),
+                handler.getMetrics());
+    }
+
+    private MessageReceivedEvent nextMessage(FakeDiscord discord, Random random) {
+        int target = random.nextInt(totalWeight);
+        int index = 0;
+        while (cumulativeWeights.getInt(index) <= target)
+            index++;
+        String content = messages.get(index);
+
+        User user = discord.user(USER_ID_BASE + random.nextInt(users));
+        if (directMessageShare > 0 && random.nextDouble() < directMessageShare)
+            return discord.privateMessage(content, user);
+
+        int guildIndex = random.nextInt(guilds);
+        Guild guild = discord.guild(GUILD_ID_BASE + guildIndex);
+        return discord.guildMessage(content, discord.member(user, guild),
+                discord.textChannel(CHANNEL_ID_BASE + guildIndex, guild));
+    }
+}
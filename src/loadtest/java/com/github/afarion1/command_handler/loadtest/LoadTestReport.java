@@ -0,0 +1,144 @@
+package com.github.afarion1.command_handler.loadtest;
+
+import com.github.afarion1.command_handler.metrics.HistogramSnapshot;
+import com.github.afarion1.command_handler.metrics.MetricsSnapshot;
+
+import java.util.Locale;
+
+/**
+ * Results of a {@link LoadGenerator} run. Latency is measured from submission of a command to the executor
+ * till the end of its processing, so it includes the time spent waiting in the queue.
+ */
+public final class LoadTestReport {
+
+    private final long messagesSent;
+    private final long commandsSubmitted;
+    private final long commandsRejected;
+    private final long commandsCompleted;
+    private final long repliesSent;
+    private final long elapsedNanos;
+    private final long maxGeneratorLagNanos;
+    private final HistogramSnapshot latency;
+    private final HistogramSnapshot queueWait;
+    private final long maxQueueDepth;
+    private final double meanQueueDepth;
+    private final MetricsSnapshot handlerMetrics;
+
+    LoadTestReport(long messagesSent, long commandsSubmitted, long commandsRejected, long commandsCompleted,
+                   long repliesSent, long elapsedNanos, long maxGeneratorLagNanos, HistogramSnapshot latency,
+                   HistogramSnapshot queueWait, long maxQueueDepth, double meanQueueDepth,
+                   MetricsSnapshot handlerMetrics) {
+        this.messagesSent = messagesSent;
+        this.commandsSubmitted = commandsSubmitted;
+        this.commandsRejected = commandsRejected;
+        this.commandsCompleted = commandsCompleted;
+        this.repliesSent = repliesSent;
+        this.elapsedNanos = elapsedNanos;
+        this.maxGeneratorLagNanos = maxGeneratorLagNanos;
+        this.latency = latency;
+        this.queueWait = queueWait;
+        this.maxQueueDepth = maxQueueDepth;
+        this.meanQueueDepth = meanQueueDepth;
+        this.handlerMetrics = handlerMetrics;
+    }
+
+    /**
+     * @return amount of messages delivered to the handler
+     */
+    public long getMessagesSent() {
+        return messagesSent;
+    }
+
+    /**
+     * @return amount of messages with the prefix, passed to the executor
+     */
+    public long getCommandsSubmitted() {
+        return commandsSubmitted;
+    }
+
+    /**
+     * @return amount of messages with the prefix which the executor refused to take
+     */
+    public long getCommandsRejected() {
+        return commandsRejected;
+    }
+
+    public long getCommandsCompleted() {
+        return commandsCompleted;
+    }
+
+    /**
+     * @return amount of messages sent by the handler and the commands
+     */
+    public long getRepliesSent() {
+        return repliesSent;
+    }
+
+    /**
+     * @return time from the first message till the last processed command
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return completed commands per second
+     */
+    public double getThroughput() {
+        return elapsedNanos <= 0 ? 0 : commandsCompleted * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * @return the longest delay of a message behind its schedule, big values mean the generator couldn't
+     * keep up with the target rate
+     */
+    public long getMaxGeneratorLagNanos() {
+        return maxGeneratorLagNanos;
+    }
+
+    public HistogramSnapshot getLatency() {
+        return latency;
+    }
+
+    public HistogramSnapshot getQueueWait() {
+        return queueWait;
+    }
+
+    public long getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * @return mean amount of queued commands seen by submissions
+     */
+    public double getMeanQueueDepth() {
+        return meanQueueDepth;
+    }
+
+    /**
+     * @return metrics of the handler, including rejections of commands
+     */
+    public MetricsSnapshot getHandlerMetrics() {
+        return handlerMetrics;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "Sent %d messages, completed %d of %d commands (%d rejected) in %.3f s, %d replies%n" +
+                        "Throughput: %.1f commands/s, max generator lag %.3f ms%n" +
+                        "Latency ms: p50 %.3f, p90 %.3f, p99 %.3f, p99.9 %.3f, max %.3f%n" +
+                        "Queue wait ms: p50 %.3f, p99 %.3f, max %.3f%n" +
+                        "Queue depth: mean %.1f, max %d",
+                messagesSent, commandsCompleted, commandsSubmitted, commandsRejected, elapsedNanos / 1e9, repliesSent,
+                getThroughput(), maxGeneratorLagNanos / 1e6,
+                millis(latency, 50), millis(latency, 90), millis(latency, 99), millis(latency, 99.9),
+                latency.getMaxNanos() / 1e6,
+                millis(queueWait, 50), millis(queueWait, 99), queueWait.getMaxNanos() / 1e6,
+                meanQueueDepth, maxQueueDepth);
+    }
+
+    private static double millis(HistogramSnapshot histogram, double percentile) {
+        return histogram.getPercentileNanos(percentile) / 1e6;
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.afarion1.command_handler.loadtest;
+
+import net.dv8tion.jda.api.entities.MessageEmbed;
+
+/**
+ * A message "sent" to a fake channel of {@link FakeDiscord}.
+ */
+public final class RecordedMessage {
+
+    private final long channelId;
+    private final String content;
+    private final MessageEmbed embed;
+    private final long sentAtNanos;
+
+    RecordedMessage(long channelId, String content, MessageEmbed embed, long sentAtNanos) {
+        this.channelId = channelId;
+        this.content = content;
+        this.embed = embed;
+        this.sentAtNanos = sentAtNanos;
+    }
+
+    public long getChannelId() {
+        return channelId;
+    }
+
+    /**
+     * @return text of the message or null if an embed was sent
+     */
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * @return the embed or null if a text message was sent
+     */
+    public MessageEmbed getEmbed() {
+        return embed;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when the message was queued
+     */
+    public long getSentAtNanos() {
+        return sentAtNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "RecordedMessage{channelId=" + channelId + ", " +
+                (embed == null ? "content=" + content : "embed=" + embed.getTitle()) + '}';
+    }
+}
@@ -7,20 +7,19 @@ import com.github.afarion1.command_handler.command.config.CommandConfig;
 import com.github.afarion1.command_handler.command.config.CommandListType;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
-import net.dv8tion.jda.internal.utils.PermissionUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @SuppressWarnings({"WeakerAccess", "unused"})
 public abstract class AbstractCommand {
 
     public static final String argumentsSeparator = " ";
     private static final Logger log = LoggerFactory.getLogger(AbstractCommand.class);
+    private static final long ADMINISTRATOR_RAW = Permission.ADMINISTRATOR.getRawValue();
 
     private CommandConfig config;
     private CommandHandler handler;
@@ -179,10 +178,27 @@ public abstract class AbstractCommand {
 
     abstract public void execute(MessageReceivedEvent event, CommandArguments args);
 
-    List<Permission> getUnsatisfiedPermissions(MessageReceivedEvent event) {
-        return getRequiredDiscordPerms(event).stream()
-                .filter(perm -> !PermissionUtil.checkPermission(event.getTextChannel(), event.getMember(), perm))
-                .collect(Collectors.toList());
+    /**
+     * Computes effective permissions of the author once and compares them with the required ones.
+     * @return raw mask of required permissions the author doesn't have, 0 if all of them are satisfied
+     */
+    long getUnsatisfiedPermissionsRaw(MessageReceivedEvent event) {
+        long required = getRequiredDiscordPermsRaw(event);
+        if (required == 0)
+            return 0;
+
+        long effective = handler.getEffectivePermission(event.getTextChannel(), event.getMember());
+        if ((effective & ADMINISTRATOR_RAW) != 0)
+            return 0;
+        return required & ~effective;
+    }
+
+    private long getRequiredDiscordPermsRaw(MessageReceivedEvent event) {
+        List<Permission> perms = getRequiredDiscordPerms(event);
+        //the same list means the method isn't overridden, so the mask precomputed by config could be used
+        if (perms == config.getDiscordPerms())
+            return config.getDiscordPermsRaw();
+        return Permission.getRaw(perms);
     }
 
 }
@@ -44,7 +44,10 @@ public final class CommandArguments {
         return strArgValues.get(argId) != null;
     }
 
-    boolean areValid() {
+    /**
+     * @return false if some arguments couldn't be parsed, commands never receive such arguments
+     */
+    public boolean areValid() {
         if (wrongArgsIds == null) return true;
         return wrongArgsIds.isEmpty();
     }
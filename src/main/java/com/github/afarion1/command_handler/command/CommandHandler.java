@@ -2,38 +2,51 @@ package com.github.afarion1.command_handler.command;
 
 import com.github.afarion1.command_handler.annotations.Command;
 import com.github.afarion1.command_handler.annotations.Config;
-import com.github.afarion1.command_handler.command.config.CommandArgumentConfig;
 import com.github.afarion1.command_handler.command.config.CommandConfig;
 import com.github.afarion1.command_handler.command.config.CommandConfigBuilder;
 import com.github.afarion1.command_handler.command.config.CommandListType;
+import com.github.afarion1.command_handler.cooldown.CooldownScope;
+import com.github.afarion1.command_handler.cooldown.CooldownStore;
+import com.github.afarion1.command_handler.cooldown.CooldownStoreException;
 import com.github.afarion1.command_handler.internal_commands.CmdCommandList;
 import com.github.afarion1.command_handler.internal_commands.CmdInspectCommand;
-import it.unimi.dsi.fastutil.ints.IntList;
-import net.dv8tion.jda.api.EmbedBuilder;
+import com.github.afarion1.command_handler.metrics.CommandMetrics;
+import com.github.afarion1.command_handler.metrics.MetricsRegistry;
+import com.github.afarion1.command_handler.metrics.MetricsSnapshot;
+import com.github.afarion1.command_handler.metrics.PrometheusExporter;
+import com.github.afarion1.command_handler.metrics.Rejection;
+import com.github.afarion1.command_handler.metrics.Stage;
+import com.github.afarion1.command_handler.utils.NamedThreadFactory;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.GuildChannel;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
-import org.apache.commons.lang3.time.DurationFormatUtils;
+import net.dv8tion.jda.api.sharding.ShardManager;
+import net.dv8tion.jda.internal.utils.PermissionUtil;
 import org.jetbrains.annotations.NotNull;
-import org.reflections.Reflections;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.awt.*;
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.sql.SQLException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 /**
- * Represents CommandHandler entity. Note that running several CommandHandlers in one
- * project is not yet supported (they would share config files and cooldown tables in
- * database).
+ * Represents CommandHandler entity. Several CommandHandlers could run in one project if each of them has its own
+ * namespace, see {@link CommandHandlerBuilder#CommandHandlerBuilder(String)}. They could share an executor, a
+ * cooldown store and a {@link CommandScan}. A sharded bot should use one handler for all of its shards, see
+ * {@link CommandHandlerBuilder#setShardManager(ShardManager)}.
  */
 @SuppressWarnings("WeakerAccess")
 public final class CommandHandler {
@@ -44,10 +57,16 @@ public final class CommandHandler {
     private final Map<Class<? extends AbstractCommand>, Function<CommandHandler,? extends AbstractCommand>>
             commandSupplierMap = new HashMap<>();
     private final Map<String, Class<? extends AbstractCommand>> commandAliasesMap = new HashMap<>();
+    private final Map<Class<? extends AbstractCommand>, ResponseTemplates> responseTemplatesMap = new HashMap<>();
+    private final Map<Class<? extends AbstractCommand>, ReplyThrottle> replyThrottleMap = new HashMap<>();
+    private final Map<Class<? extends AbstractCommand>, CommandMetrics> commandMetricsMap = new HashMap<>();
+    private final MetricsRegistry metrics = new MetricsRegistry();
     private final List<CommandConfig> visibleCommandConfigList = new ArrayList<>();
 
     private final JDA jda;
+    private final ShardManager shardManager;
     private final ExecutorService executor;
+    private final List<ShardLane> shardLanes;
     private final String commandsPrefix;
     private final Color helpColor;
     private final Color errorColor;
@@ -55,11 +74,29 @@ public final class CommandHandler {
     private final boolean enableCommandList;
     private final boolean enableInspectCommand;
     private final boolean cleanDbOnStartup;
+    private final PermissionCache permissionCache;
+    private final long rejectionReplyWindowMillis;
+    private final StageListeners stageListeners;
+    private final SlowInvocationMonitor slowInvocationMonitor;
+    private final StagedPipeline pipeline;
+    private final CooldownBatcher cooldownBatcher;
+    private final CooldownStore cooldownStore;
+    private final CommandScan commandScan;
+    private final String namespace;
+    private final boolean ownsExecutor;
+    private final Path snapshotFile;
+    private final int warmUpIterations;
+    private final Duration warmUpMaxDuration;
 
     private boolean started = false;
+    private boolean shutDown = false;
+    private Object messageListener = null;
+    private volatile WarmUpReport warmUpReport = null;
+    private Map<String, MessageEmbed> inspectEmbeds = null;
 
     CommandHandler(CommandHandlerBuilder cfg) {
         this.jda = cfg.jda;
+        this.shardManager = cfg.shardManager;
         this.executor = cfg.executor;
         this.commandsPrefix = cfg.commandsPrefix;
         this.helpColor = cfg.commandListColor;
@@ -68,6 +105,49 @@ public final class CommandHandler {
         this.enableCommandList = cfg.enableCommandList;
         this.enableInspectCommand = cfg.enableInspectCommand;
         this.cleanDbOnStartup = cfg.cleanDbOnStartup;
+        this.permissionCache = cfg.permissionCacheSize > 0
+                ? new PermissionCache(cfg.permissionCacheSize, cfg.permissionCacheTtl)
+                : null;
+        this.rejectionReplyWindowMillis = cfg.rejectionReplyWindow.toMillis();
+        this.slowInvocationMonitor = cfg.slowInvocationHistorySize > 0
+                ? new SlowInvocationMonitor(cfg.slowInvocationThreshold, cfg.slowInvocationSampleInterval,
+                cfg.slowInvocationHistorySize)
+                : null;
+        List<CommandStageListener> listeners = new ArrayList<>(cfg.stageListeners);
+        if (slowInvocationMonitor != null)
+            listeners.add(slowInvocationMonitor);
+        this.stageListeners = listeners.isEmpty() ? null : new StageListeners(listeners);
+        this.pipeline = cfg.pipelineQueueCapacity > 0
+                ? new StagedPipeline(this, cfg.pipelineParseThreads, cfg.pipelineCooldownThreads,
+                cfg.pipelineExecutionThreads, cfg.pipelineQueueCapacity)
+                : null;
+        this.cooldownStore = cfg.cooldownStore;
+        this.commandScan = cfg.commandScan;
+        this.namespace = cfg.namespace;
+        this.ownsExecutor = cfg.ownsExecutor;
+        this.snapshotFile = cfg.snapshotFile;
+        this.warmUpIterations = cfg.warmUpIterations;
+        this.warmUpMaxDuration = cfg.warmUpMaxDuration;
+        this.cooldownBatcher = cfg.cooldownBatchSize > 0
+                ? new CooldownBatcher(cooldownStore, cfg.cooldownBatchWindow, cfg.cooldownBatchSize)
+                : null;
+        this.shardLanes = createShardLanes(cfg.threadsPerShard);
+    }
+
+    private List<ShardLane> createShardLanes(int threadsPerShard) {
+        ExecutorService shared = pipeline == null ? executor : null;
+        if (shardManager == null)
+            return Collections.singletonList(new ShardLane(0, shared, false));
+        int shards = Math.max(1, shardManager.getShardsTotal());
+        List<ShardLane> lanes = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            if (shared != null || pipeline != null)
+                lanes.add(new ShardLane(i, shared, false));
+            else
+                lanes.add(new ShardLane(i, Executors.newFixedThreadPool(threadsPerShard,
+                        new NamedThreadFactory("Command handling shard " + i + " thread")), true));
+        }
+        return Collections.unmodifiableList(lanes);
     }
 
 
@@ -77,10 +157,12 @@ public final class CommandHandler {
      * @see #registerCommand(Class, Function, CommandConfig)
      * @see Command
      */
-    public void start() {
+    public synchronized void start() {
         if(started){
             throw new IllegalStateException("The handler has already started");
         }
+        if (shutDown)
+            throw new IllegalStateException("The handler has been shut down");
 
         if (isCommandListEnabled()) {
             log.info("Command list is enabled, registering the command");
@@ -91,20 +173,179 @@ public final class CommandHandler {
 
         if (isInspectCommandEnabled()) {
             log.info("Inspect command is enabled, registering the command");
-            registerCommand(CmdInspectCommand.class);
+            //embeds are built once all the commands are registered
+            registerCommand(CmdInspectCommand.class, ch -> new CmdInspectCommand(ch, inspectEmbeds));
         } else {
             log.info("Inspect command is disabled");
         }
 
         registerAnnotatedCommands();
 
-        Database.init();
-        if (cleanDbOnStartup) Database.deleteOutdatedEntries(this);
+        if (isInspectCommandEnabled())
+            inspectEmbeds = CmdInspectCommand.setupEmbeds(this);
+
+        try {
+            cooldownStore.open();
+        } catch (CooldownStoreException e) {
+            log.error("Unable to open cooldown store", e);
+        }
+        if (cleanDbOnStartup && cooldownStore.isAvailable()) deleteOutdatedCooldowns();
+
+        if (snapshotFile != null)
+            restoreSnapshot();
+
+        if (warmUpIterations > 0) {
+            warmUpReport = WarmUp.run(this, warmUpIterations, warmUpMaxDuration);
+            //the fake guild's permissions shouldn't take room of the real ones
+            if (permissionCache != null)
+                permissionCache.invalidateGuild(WarmUp.GUILD_ID);
+            log.info("Warmed up the dispatch path: {}", warmUpReport);
+        }
 
-        jda.addEventListener(new MessageListener(this));
+        if (permissionCache != null) {
+            log.info("Permission cache is enabled");
+            if (shardManager != null)
+                shardManager.addEventListener(permissionCache);
+            else
+                jda.addEventListener(permissionCache);
+        }
+        if (slowInvocationMonitor != null) {
+            log.info("Slow invocation monitor is enabled");
+            slowInvocationMonitor.start();
+        }
+        if (cooldownBatcher != null) {
+            log.info("Cooldown batching is enabled");
+            cooldownBatcher.start();
+        }
+        if (pipeline != null) {
+            log.info("Staged pipeline is enabled");
+            pipeline.start();
+        }
+        if (shardManager != null) {
+            MessageListener[] listeners = new MessageListener[shardLanes.size()];
+            for (ShardLane lane : shardLanes)
+                listeners[lane.getShardId()] = new MessageListener(this, lane);
+            log.info("Listening to {} shards", listeners.length);
+            messageListener = new ShardRouter(listeners);
+            shardManager.addEventListener(messageListener);
+        } else {
+            messageListener = new MessageListener(this, shardLanes.get(0));
+            jda.addEventListener(messageListener);
+        }
         started = true;
     }
 
+    /**
+     * Equivalent of {@link #shutdown(Duration)} with 30 seconds timeout.
+     */
+    public void shutdown() {
+        shutdown(Duration.ofSeconds(30));
+    }
+
+    /**
+     * Stops listening for messages, waits for the commands in progress, flushes batched cooldown writes and writes the
+     * warm restart snapshot if it's enabled. Executors and the cooldown store created by the handler are shut down
+     * and closed. The ones set by {@link CommandHandlerBuilder#setExecutorService(ExecutorService)} and
+     * {@link CommandHandlerBuilder#setCooldownStore(CooldownStore)} are left running, so they could be shared. Close
+     * such a store once its handlers are shut down, so it can flush its state, for example a circuit breaker's buffered
+     * cooldowns or a mapped log. The handler can't be started again.
+     * @param timeout how long to wait for the commands in progress and the cooldown writes
+     * @see CommandHandlerBuilder#enableWarmRestart(Path)
+     */
+    public synchronized void shutdown(Duration timeout) {
+        if (!started)
+            throw new IllegalStateException("The handler hasn't started");
+        if (shutDown)
+            return;
+        shutDown = true;
+        long deadline = System.nanoTime() + timeout.toNanos();
+        log.info("Shutting down the handler");
+
+        if (shardManager != null) {
+            shardManager.removeEventListener(messageListener);
+            if (permissionCache != null)
+                shardManager.removeEventListener(permissionCache);
+        } else {
+            jda.removeEventListener(messageListener);
+            if (permissionCache != null)
+                jda.removeEventListener(permissionCache);
+        }
+
+        boolean interrupted = false;
+        try {
+            if (!awaitCommands(deadline))
+                log.warn("Commands in progress didn't finish within {}", timeout);
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        if (pipeline != null)
+            pipeline.stop();
+        for (ShardLane lane : shardLanes) {
+            if (lane.ownsExecutor())
+                lane.getExecutor().shutdown();
+        }
+        if (ownsExecutor)
+            executor.shutdown();
+        if (slowInvocationMonitor != null)
+            slowInvocationMonitor.stop();
+        if (cooldownBatcher != null) {
+            try {
+                if (!cooldownBatcher.stop(Math.max(0, deadline - System.nanoTime())))
+                    log.warn("Batched cooldown writes didn't finish within {}", timeout);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (snapshotFile != null) {
+            try {
+                HandlerSnapshot.write(snapshotFile, permissionCache, getReplyThrottlesByName());
+            } catch (IOException | RuntimeException e) {
+                log.error("Unable to write warm restart snapshot {}", snapshotFile, e);
+            }
+        }
+        cooldownStore.close();
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        log.info("The handler is shut down");
+    }
+
+    /**
+     * @return false if the deadline passed first
+     */
+    private boolean awaitCommands(long deadlineNanos) throws InterruptedException {
+        if (pipeline != null)
+            return pipeline.awaitDrained(deadlineNanos);
+        while (true) {
+            long inFlight = 0;
+            for (ShardLane lane : shardLanes)
+                inFlight += lane.getInFlight();
+            if (inFlight <= 0)
+                return true;
+            if (System.nanoTime() - deadlineNanos >= 0)
+                return false;
+            Thread.sleep(10);
+        }
+    }
+
+    private void restoreSnapshot() {
+        try {
+            HandlerSnapshot.read(snapshotFile, permissionCache, getReplyThrottlesByName());
+        } catch (IOException | RuntimeException e) {
+            log.error("Unable to restore warm restart snapshot {}, starting cold", snapshotFile, e);
+        }
+    }
+
+    /**
+     * @return command name -> reply throttle of the commands having one
+     */
+    private Map<String, ReplyThrottle> getReplyThrottlesByName() {
+        Map<String, ReplyThrottle> throttles = new HashMap<>();
+        for (Map.Entry<Class<? extends AbstractCommand>, ReplyThrottle> entry : replyThrottleMap.entrySet())
+            throttles.put(commandConfigMap.get(entry.getKey()).getName(), entry.getValue());
+        return throttles;
+    }
+
     /**
      * Registers a command to be handled.<br>
      * {@link Command} annotation could be used alternatively, it is usually more convenient.<br>
@@ -147,6 +388,10 @@ public final class CommandHandler {
 
         commandConfigMap.put(aClass, config);
         commandSupplierMap.put(aClass, function);
+        responseTemplatesMap.put(aClass, new ResponseTemplates(config, errorColor));
+        if (rejectionReplyWindowMillis > 0)
+            replyThrottleMap.put(aClass, new ReplyThrottle(rejectionReplyWindowMillis));
+        commandMetricsMap.put(aClass, metrics.getCommandMetrics(config.getName()));
         for (String alias : config.getNameAndAliases()) {
             commandAliasesMap.put(alias, aClass);
         }
@@ -214,12 +459,26 @@ public final class CommandHandler {
     }
 
     /**
-     * @return JDA that is used to listen to messages
+     * @return JDA that is used to listen to messages, null if a ShardManager is used
      */
     public JDA getJda() {
         return jda;
     }
 
+    /**
+     * @return ShardManager whose shards are listened to, null if a single JDA is used
+     */
+    public ShardManager getShardManager() {
+        return shardManager;
+    }
+
+    /**
+     * @return namespace of the configuration file and cooldowns, empty for the default one
+     */
+    public String getNamespace() {
+        return namespace;
+    }
+
     /**
      * @return default prefix for command call recognition
      */
@@ -262,6 +521,58 @@ public final class CommandHandler {
         return enableInspectCommand;
     }
 
+    /**
+     * @return statistics of effective permissions cache or null if the cache isn't enabled
+     * @see CommandHandlerBuilder#enablePermissionCache(int, java.time.Duration)
+     */
+    public PermissionCacheStats getPermissionCacheStats() {
+        return permissionCache == null ? null : permissionCache.getStats();
+    }
+
+    /**
+     * @return recent calls of commands which ran past their threshold, the latest first. Empty if the slow
+     * invocation monitor isn't enabled
+     * @see CommandHandlerBuilder#enableSlowInvocationMonitor(java.time.Duration, java.time.Duration, int)
+     */
+    public List<SlowInvocation> getSlowInvocations() {
+        return slowInvocationMonitor == null ? Collections.emptyList() : slowInvocationMonitor.getHistory();
+    }
+
+    /**
+     * @return load of parse, cooldown and execution stages, empty if the staged pipeline isn't enabled
+     * @see CommandHandlerBuilder#enableStagedPipeline(int, int, int, int)
+     */
+    public List<PipelineStageStats> getPipelineStats() {
+        return pipeline == null ? Collections.emptyList() : pipeline.getStats();
+    }
+
+    /**
+     * @return load of each shard's dispatch lane, ordered by shard id. A single JDA is reported as shard 0
+     * @see CommandHandlerBuilder#setShardManager(ShardManager)
+     */
+    public List<ShardStats> getShardStats() {
+        List<ShardStats> stats = new ArrayList<>(shardLanes.size());
+        for (ShardLane lane : shardLanes)
+            stats.add(lane.getStats());
+        return stats;
+    }
+
+    /**
+     * @return result of the startup warm-up, null if it isn't enabled or the handler hasn't started
+     * @see CommandHandlerBuilder#enableWarmUp(int, Duration)
+     */
+    public WarmUpReport getWarmUpReport() {
+        return warmUpReport;
+    }
+
+    /**
+     * @return snapshot of per command invocation, rejection and error counters and latencies of processing stages
+     * @see PrometheusExporter
+     */
+    public MetricsSnapshot getMetrics() {
+        return metrics.snapshot();
+    }
+
     /**
      * @return a config or null if the config wasn't found
      */
@@ -276,24 +587,55 @@ public final class CommandHandler {
         return Collections.unmodifiableCollection(commandConfigMap.values());
     }
 
+    private void deleteOutdatedCooldowns() {
+        int deletedTotal = 0;
+        for (CommandConfig config : getCommandConfigList()) {
+            if (!config.shouldCleanCooldownRecords())
+                continue;
+            try {
+                if (!config.getUserCooldown().equals(Duration.ZERO))
+                    deletedTotal += cooldownStore.deleteOutdated(CooldownScope.USER, config.getName(),
+                            System.currentTimeMillis());
+                if (!config.getGuildCooldown().equals(Duration.ZERO))
+                    deletedTotal += cooldownStore.deleteOutdated(CooldownScope.GUILD, config.getName(),
+                            System.currentTimeMillis());
+            } catch (CooldownStoreException e) {
+                log.error("Unable to delete outdated cooldown records of {}", config.getName(), e);
+            }
+        }
+        log.info("Cleared DB from outdated cooldown records, {} rows affected", deletedTotal);
+    }
+
     /**
-     * @return executor that is used to process commands
+     * @return effective permissions of the member in the channel, cached if permission cache is enabled
+     */
+    long getEffectivePermission(GuildChannel channel, Member member) {
+        if (permissionCache == null)
+            return PermissionUtil.getEffectivePermission(channel, member);
+        return permissionCache.getEffectivePermission(channel, member);
+    }
+
+    /**
+     * @return executor that is used to process commands, null if the staged pipeline is used instead
      */
     ExecutorService getExecutor() {
-        return executor;
+        return pipeline == null ? executor : null;
     }
 
-    private void registerAnnotatedCommands() {
-        Reflections refl = new Reflections("");
+    /**
+     * @return null if the staged pipeline isn't enabled
+     */
+    StagedPipeline getPipeline() {
+        return pipeline;
+    }
 
-        Set<Class<?>> annotated = refl.getTypesAnnotatedWith(Command.class);
-        @SuppressWarnings("unchecked")
-        List<Class<? extends AbstractCommand>> commands = annotated.stream()
-                .filter(t -> t.getSuperclass() == AbstractCommand.class)
-                .map(t -> (Class<? extends AbstractCommand>) t)
-                .collect(Collectors.toList());
+    CooldownStore getCooldownStore() {
+        return cooldownStore;
+    }
 
-        for (Class<? extends AbstractCommand> cmd : commands) {
+    private void registerAnnotatedCommands() {
+        CommandScan scan = commandScan != null ? commandScan : CommandScan.scan();
+        for (Class<? extends AbstractCommand> cmd : scan.getCommands()) {
             registerCommand(cmd);
         }
     }
@@ -390,148 +732,266 @@ public final class CommandHandler {
     }
 
     void processCommand(MessageReceivedEvent event) {
+        long receivedAt = System.nanoTime();
+        //null if there are no stage listeners, so they cost nothing
+        InvocationContext ctx = stageListeners == null ? null : stageListeners.begin(event, receivedAt);
+        try {
+            processCommand(event, receivedAt, ctx);
+        } finally {
+            if (ctx != null)
+                stageListeners.finish(ctx);
+        }
+    }
+
+    private void processCommand(MessageReceivedEvent event, long receivedAt, InvocationContext ctx) {
+        FindCommand findCommand = matchCommand(event, receivedAt, ctx);
+        if (findCommand == null)
+            return;
+        AbstractCommand command = findCommand.getCommand();
+        CommandMetrics cmdMetrics = getCommandMetrics(command);
+        try {
+            processFoundCommand(event, command, findCommand.getArgumentString(), cmdMetrics, ctx);
+        } finally {
+            cmdMetrics.recordLatency(Stage.TOTAL, System.nanoTime() - receivedAt);
+        }
+    }
+
+    /**
+     * Finds the called command and records its invocation.
+     * @return null if nothing matched
+     */
+    FindCommand matchCommand(MessageReceivedEvent event, long receivedAt, InvocationContext ctx) {
         //remove prefix
         String commandString = event.getMessage().getContentRaw().substring(commandsPrefix.length()).trim();
         if (commandString.length() < 1) {
             log.trace("Nothing after prefix");
-            return;
+            return null;
         }
 
         //find longest cmd name or alias match
         log.trace("Finding cmd name in the message");
         FindCommand findCommand = new FindCommand(commandString).invoke();
         AbstractCommand command = findCommand.getCommand();
-        String cmdNameFoundBy = findCommand.getCmdFoundBy();
-        if (command == null) return;
-        log.trace("Found command {} by name {}", command.getName(), cmdNameFoundBy);
+        if (command == null) {
+            metrics.recordUnmatched();
+            return null;
+        }
+        log.trace("Found command {} by name {}", command.getName(), findCommand.getCmdFoundBy());
+
+        CommandMetrics cmdMetrics = getCommandMetrics(command);
+        cmdMetrics.recordInvocation();
+        long matchedAt = System.nanoTime();
+        cmdMetrics.recordLatency(Stage.LOOKUP, matchedAt - receivedAt);
+        if (ctx != null) {
+            ctx.setCommand(command, matchedAt);
+            stageListeners.fire(StageListeners.Hook.MATCHED, ctx);
+        }
+        return findCommand;
+    }
+
+    /**
+     * Runs a call through lookup, argument parsing, validation, permission and cooldown checks without executing it.
+     * Metrics go to the scratch registry and cooldowns to the given store, so the handler's own are left untouched.
+     */
+    void dryRun(MessageReceivedEvent event, MetricsRegistry scratchMetrics, CooldownStore scratchStore) {
+        String commandString = event.getMessage().getContentRaw().substring(commandsPrefix.length()).trim();
+        FindCommand findCommand = new FindCommand(commandString).invoke();
+        AbstractCommand command = findCommand.getCommand();
+        if (command == null)
+            return;
+        CommandMetrics cmdMetrics = scratchMetrics.getCommandMetrics(command.getName());
+        CommandArguments cmdArgs = checkCall(event, command, findCommand.getArgumentString(), cmdMetrics, null);
+        if (cmdArgs == null)
+            return;
+        acquireCooldowns(event, command, scratchStore, null, command.shouldExecuteIfCantCheckOrSaveCooldown(event),
+                cmdMetrics, null);
+    }
 
+    private void processFoundCommand(MessageReceivedEvent event, AbstractCommand command, String argumentString,
+                                     CommandMetrics cmdMetrics, InvocationContext ctx) {
+        CommandArguments cmdArgs = checkCall(event, command, argumentString, cmdMetrics, ctx);
+        if (cmdArgs == null)
+            return;
+
+        boolean shouldExecuteIfCantCheckOrSaveCooldown = command.shouldExecuteIfCantCheckOrSaveCooldown(event);
+        long cooldownStart = System.nanoTime();
+        boolean passedCooldown = checkAndSaveCooldowns(event, command, shouldExecuteIfCantCheckOrSaveCooldown,
+                cmdMetrics, ctx);
+        long cooldownCheckedAt = System.nanoTime();
+        cmdMetrics.recordLatency(Stage.COOLDOWN, cooldownCheckedAt - cooldownStart);
+        if (ctx != null) {
+            ctx.setCooldownCheckedNanos(cooldownCheckedAt);
+            stageListeners.fire(StageListeners.Hook.COOLDOWN_CHECKED, ctx);
+        }
+        if (!passedCooldown)
+            return;
 
+        executeCommand(event, command, cmdArgs, cmdMetrics, ctx);
+    }
+
+    /**
+     * Checks everything but cooldowns: where the command is called, DB connection, arguments and permissions.
+     * Replies to the author if the call is rejected.
+     * @return parsed arguments or null if the call is rejected
+     */
+    CommandArguments checkCall(MessageReceivedEvent event, AbstractCommand command, String argumentString,
+                               CommandMetrics cmdMetrics, InvocationContext ctx) {
         if (command.isExecuteInGuildOnly(event) && event.getGuild() == null) {
             log.trace("The command could be executed only in server chat, aborting");
-            event.getChannel().sendMessage("This command could be executed only in server chat.").queue();
-            return;
+            recordRejection(cmdMetrics, ctx, Rejection.GUILD_ONLY);
+            if (shouldReplyToRejection(event, command))
+                event.getChannel().sendMessage(ResponseTemplates.GUILD_ONLY_MESSAGE).queue();
+            return null;
         }
 
         boolean shouldExecuteIfCantCheckOrSaveCooldown = command.shouldExecuteIfCantCheckOrSaveCooldown(event);
-        if (Database.noConnection() && command.hasAnyCooldown(event) && !shouldExecuteIfCantCheckOrSaveCooldown) {
+        if (!cooldownStore.isAvailable() && command.hasAnyCooldown(event) && !shouldExecuteIfCantCheckOrSaveCooldown) {
             log.debug("Unable to execute the command due to DB issues.");
-            event.getChannel().sendMessage("Unable to execute the command due to DB issues").queue();
-            return;
+            recordRejection(cmdMetrics, ctx, Rejection.DATABASE);
+            if (shouldReplyToRejection(event, command))
+                event.getChannel().sendMessage(ResponseTemplates.DB_ISSUES_MESSAGE).queue();
+            return null;
         }
 
-        //separate args
-        String argumentString = commandString.substring(cmdNameFoundBy.length());
         //process args
         log.trace("Processing arguments");
+        long parsingStart = System.nanoTime();
         CommandArguments cmdArgs;
         if (command.isRawArgs())
             cmdArgs = CommandArgumentsFactory.processRawArguments(argumentString);
         else
             cmdArgs = CommandArgumentsFactory.processArguments(command, argumentString, event);
+        long parsedAt = System.nanoTime();
+        cmdMetrics.recordLatency(Stage.ARGUMENT_PARSING, parsedAt - parsingStart);
+        if (ctx != null) {
+            ctx.setArguments(cmdArgs, parsedAt);
+            stageListeners.fire(StageListeners.Hook.ARGUMENTS_PARSED, ctx);
+        }
 
         if (!cmdArgs.areValid()) {
             log.trace("Arguments are invalid");
+            recordRejection(cmdMetrics, ctx, Rejection.ARGUMENTS);
             sendErrorMessage(event, command, cmdArgs);
-            return;
+            return null;
         }
         log.trace("Arguments are valid");
 
-        List<Permission> unsatisfiedPermissions = command.getUnsatisfiedPermissions(event);
-        if (!unsatisfiedPermissions.isEmpty()) {
-            sendNotEnoughPermsMessage(event, unsatisfiedPermissions);
-            return;
+        long unsatisfiedPermissions = command.getUnsatisfiedPermissionsRaw(event);
+        if (ctx != null) {
+            ctx.setPermissionsCheckedNanos(System.nanoTime());
+            stageListeners.fire(StageListeners.Hook.PERMISSIONS_CHECKED, ctx);
         }
-        log.trace("Enough discord permissions");
-
-        try{
-            if(command.hasUserCooldown(event)){
-                long cooledDownAfter = Database.getUserCooledDownDate(event.getAuthor().getIdLong(), command.getName());
-                if(System.currentTimeMillis() < cooledDownAfter){
-                    event.getChannel().sendMessage("The command is on cooldown: "
-                            + DurationFormatUtils.formatDurationWords(
-                            cooledDownAfter - System.currentTimeMillis(),
-                            true, true)).queue();
-                    log.debug("{} is on per user cooldown.", command.getName());
-                    return;
-                }
-            }
-        } catch (SQLException e) {
-            handleCooldownSQLException(event, e);
-            if(!shouldExecuteIfCantCheckOrSaveCooldown)
-                return;
+        if (unsatisfiedPermissions != 0) {
+            recordRejection(cmdMetrics, ctx, Rejection.PERMISSIONS);
+            if (shouldReplyToRejection(event, command))
+                event.getChannel().sendMessage(ResponseTemplates.getNotEnoughPermsMessage(unsatisfiedPermissions)).queue();
+            if (log.isDebugEnabled())
+                log.debug("Not enough discord permissions: {}", Permission.getPermissions(unsatisfiedPermissions));
+            return null;
         }
+        log.trace("Enough discord permissions");
+        return cmdArgs;
+    }
 
-        try{
-            if(command.hasGuildCooldown(event)){
-                long cooledDownAfter = Database.getGuildCooledDownDate(event.getGuild().getIdLong(), command.getName());
-                if(System.currentTimeMillis() < cooledDownAfter){
-                    event.getChannel().sendMessage("The command is on cooldown: "
-                            + DurationFormatUtils.formatDurationWords(
-                            cooledDownAfter - System.currentTimeMillis(),
-                            true, true)).queue();
-                    log.debug("{} is on per user cooldown.", command.getName());
-                    return;
-                }
-            }
-        } catch (SQLException e) {
-            handleCooldownSQLException(event, e);
-            if(!shouldExecuteIfCantCheckOrSaveCooldown)
-                return;
-        }
+    static void recordRejection(CommandMetrics cmdMetrics, InvocationContext ctx, Rejection rejection) {
+        cmdMetrics.recordRejection(rejection);
+        if (ctx != null)
+            ctx.setRejection(rejection);
+    }
 
+    /**
+     * @return true if the command should be executed
+     */
+    private boolean checkAndSaveCooldowns(MessageReceivedEvent event, AbstractCommand command,
+                                          boolean shouldExecuteIfCantCheckOrSaveCooldown, CommandMetrics cmdMetrics,
+                                          InvocationContext ctx) {
+        return acquireCooldowns(event, command, cooldownStore, cooldownBatcher, shouldExecuteIfCantCheckOrSaveCooldown,
+                cmdMetrics, ctx);
+    }
 
+    /**
+     * @param batcher null to acquire the cooldowns directly from the store
+     * @return true if the command should be executed
+     */
+    private boolean acquireCooldowns(MessageReceivedEvent event, AbstractCommand command, CooldownStore store,
+                                     CooldownBatcher batcher, boolean shouldExecuteIfCantCheckOrSaveCooldown,
+                                     CommandMetrics cmdMetrics, InvocationContext ctx) {
+        //commands without cooldowns don't touch the store
+        if (!command.hasAnyCooldown(event))
+            return true;
+        long now = System.currentTimeMillis();
+        long userCooledDownAfter = command.hasUserCooldown(event)
+                ? now + command.getUserCooldown(event).toMillis()
+                : -1;
+        long guildCooledDownAfter = event.getGuild() != null && command.hasGuildCooldown(event)
+                ? now + command.getGuildCooldown(event).toMillis()
+                : -1;
+        //only a guild cooldown, but it's a direct message
+        if (userCooledDownAfter == -1 && guildCooledDownAfter == -1)
+            return true;
+        long guildId = guildCooledDownAfter == -1 ? 0 : event.getGuild().getIdLong();
         try {
-            if (command.hasUserCooldown(event)) {
-                long cooledDownAfter = System.currentTimeMillis() + command.getUserCooldown(event).toMillis();
-                Database.saveCommandUserCooldown(event.getAuthor().getIdLong(), command.getName(), cooledDownAfter);
-            }
-            if(command.hasGuildCooldown(event)) {
-                long cooledDownAfter = System.currentTimeMillis() + command.getGuildCooldown(event).toMillis();
-                Database.saveCommandGuildCooldown(event.getGuild().getIdLong(), command.getName(), cooledDownAfter);
+            //check and save in one go, so concurrent calls of the same user can't both pass
+            long remaining = batcher != null
+                    ? batcher.tryAcquire(command.getName(), event.getAuthor().getIdLong(), userCooledDownAfter,
+                            guildId, guildCooledDownAfter)
+                    : store.tryAcquire(command.getName(), event.getAuthor().getIdLong(), userCooledDownAfter,
+                            guildId, guildCooledDownAfter, now);
+            if (remaining > 0) {
+                recordRejection(cmdMetrics, ctx, Rejection.COOLDOWN);
+                if (shouldReplyToRejection(event, command))
+                    event.getChannel().sendMessage(getResponseTemplates(command).getCooldownMessage(remaining)).queue();
+                log.debug("{} is on cooldown.", command.getName());
+                return false;
             }
-        } catch (SQLException e) {
-            handleCooldownSQLException(event, e);
-            if(!shouldExecuteIfCantCheckOrSaveCooldown)
-                return;
+        } catch (CooldownStoreException e) {
+            handleCooldownStoreException(event, e, cmdMetrics, ctx);
+            return shouldExecuteIfCantCheckOrSaveCooldown;
         }
-
-        executeCommand(event, command, cmdArgs);
-
+        return true;
     }
 
-    private void handleCooldownSQLException(MessageReceivedEvent event, SQLException e) {
+    void handleCooldownStoreException(MessageReceivedEvent event, CooldownStoreException e, CommandMetrics cmdMetrics,
+                                            InvocationContext ctx) {
         log.error("Error while managing command's cooldown.", e);
+        cmdMetrics.recordError();
+        if (ctx != null) {
+            ctx.setFailure(e);
+            stageListeners.fire(StageListeners.Hook.FAILED, ctx);
+        }
         event.getChannel().sendMessage("Something went wrong while trying to manage cooldown of the command." +
                 " Aborting execution.").queue();
     }
 
-    private void sendNotEnoughPermsMessage(MessageReceivedEvent event, List<Permission> unsatisfiedPermissions) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("You don't have ");
-        sb.append(unsatisfiedPermissions.get(0).getName());
-        for (int i = 1; i < unsatisfiedPermissions.size(); i++) {
-            sb.append(", ");
-            sb.append(unsatisfiedPermissions.get(i).getName());
-        }
-        sb.append(" permission");
-        if (unsatisfiedPermissions.size() > 1)
-            sb.append("s");
-        sb.append("in order to execute this command.");
-        event.getChannel().sendMessage(sb.toString()).queue();
+    private void sendErrorMessage(MessageReceivedEvent event, AbstractCommand command, CommandArguments cmdArgs) {
+        MessageEmbed embed = getResponseTemplates(command).getErrorEmbed(cmdArgs.getWrongArgsIds());
+        event.getChannel().sendMessage(embed).queue();
+    }
 
-        log.debug("Not enough discord permissions: {}", unsatisfiedPermissions);
+    CommandMetrics getCommandMetrics(AbstractCommand command) {
+        return commandMetricsMap.get(command.getClass());
     }
 
-    private void sendErrorMessage(MessageReceivedEvent event, AbstractCommand command, CommandArguments cmdArgs) {
-        EmbedBuilder eb = new EmbedBuilder();
-        eb.setTitle("Wrong command usage");
-        eb.setColor(getErrorColor());
-        eb.setDescription(command.getCmdWithArgsSignature() + "\n\nWrong arguments:");
-        appendWrongArgs(command, cmdArgs, eb);
-        event.getChannel().sendMessage(eb.build()).queue();
+    ResponseTemplates getResponseTemplates(AbstractCommand command) {
+        return responseTemplatesMap.get(command.getClass());
+    }
+
+    /**
+     * @return false if the author was already replied to about a rejected call of the command within the window
+     * @see CommandHandlerBuilder#setRejectionReplyWindow(java.time.Duration)
+     */
+    boolean shouldReplyToRejection(MessageReceivedEvent event, AbstractCommand command) {
+        ReplyThrottle throttle = replyThrottleMap.get(command.getClass());
+        if (throttle == null || throttle.tryAcquire(event.getAuthor().getIdLong(), System.currentTimeMillis()))
+            return true;
+        log.trace("Suppressed rejection reply to user {} for command {}", event.getAuthor().getId(), command.getName());
+        return false;
     }
 
-    private void executeCommand(MessageReceivedEvent event, AbstractCommand command, CommandArguments cmdArgs) {
+    void executeCommand(MessageReceivedEvent event, AbstractCommand command, CommandArguments cmdArgs,
+                                CommandMetrics cmdMetrics, InvocationContext ctx) {
+        long executionStart = System.nanoTime();
+        Exception failure = null;
         try {
             log.debug("Executing command {} sent by {} in channel id {}", command.getName(),
                     event.getAuthor().getAsMention(), event.getChannel().getId());
@@ -539,43 +999,47 @@ public final class CommandHandler {
             log.debug("Finished execution of command {} sent by {} in channel id {}", command.getName(),
                     event.getAuthor().getAsMention(), event.getChannel().getId());
         }  catch (Exception e) {
+            failure = e;
             log.error("Error while executing command", e);
+            cmdMetrics.recordError();
             event.getChannel().sendMessage("Something went wrong while executing the command").queue();
-        }
-    }
-
-    private static void appendWrongArgs(AbstractCommand cmd, CommandArguments args, EmbedBuilder eb) {
-        IntList wrongArgsIds = args.getWrongArgsIds();
-
-        for (CommandArgumentConfig arg : cmd.getCommandArguments()) {
-            if (wrongArgsIds.contains(arg.getId())) {
-
-                String fieldName = arg.getArgumentName().toLowerCase();
-                String errorMsg = arg.getErrorMsg().length() > 0 ? arg.getErrorMsg() : arg.getArgumentDesc();
-                eb.addField(fieldName, errorMsg, true);
-
+        } finally {
+            long executedAt = System.nanoTime();
+            cmdMetrics.recordLatency(Stage.EXECUTION, executedAt - executionStart);
+            if (ctx != null) {
+                ctx.setExecutedNanos(executedAt);
+                ctx.setFailure(failure);
             }
         }
+        if (ctx != null)
+            stageListeners.fire(failure == null ? StageListeners.Hook.EXECUTED : StageListeners.Hook.FAILED, ctx);
     }
 
-    private class FindCommand {
+    class FindCommand {
         private final String msg;
         private AbstractCommand command = null;
         private String cmdFoundBy = null;
 
-        private FindCommand(String msg) {
+        FindCommand(String msg) {
             this.msg = msg;
         }
 
-        private AbstractCommand getCommand() {
+        AbstractCommand getCommand() {
             return command;
         }
 
-        private String getCmdFoundBy() {
+        String getCmdFoundBy() {
             return cmdFoundBy;
         }
 
-        private FindCommand invoke() {
+        /**
+         * @return the message after the command name or alias
+         */
+        String getArgumentString() {
+            return msg.substring(cmdFoundBy.length());
+        }
+
+        FindCommand invoke() {
             //choose longest option to avoid excessive arguments bug
             log.trace("All commands names and aliases: {}", getAllCommandNamesAndAliases());
             Optional<String> commandName = getAllCommandNamesAndAliases().stream()
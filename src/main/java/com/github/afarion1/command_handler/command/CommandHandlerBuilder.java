@@ -1,7 +1,12 @@
 package com.github.afarion1.command_handler.command;
 
+import com.github.afarion1.command_handler.cooldown.CooldownStore;
+import com.github.afarion1.command_handler.cooldown.MappedCooldownStore;
+import com.github.afarion1.command_handler.cooldown.SqliteCooldownStore;
+import com.github.afarion1.command_handler.jfr.FlightRecorderEvents;
 import com.github.afarion1.command_handler.utils.NamedThreadFactory;
 import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.sharding.ShardManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,6 +15,10 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -26,9 +35,12 @@ public final class CommandHandlerBuilder {
 
     private static final Logger log = LoggerFactory.getLogger(CommandHandlerBuilder.class);
 
-    private final String fileName = "command_handler.properties";
+    private final String fileName;
 
+    final String namespace;
     JDA jda = null;
+    ShardManager shardManager = null;
+    int threadsPerShard = 0;
     String commandsPrefix = "~";
     boolean enableCommandList = true;
     boolean enableInspectCommand = true;
@@ -37,6 +49,26 @@ public final class CommandHandlerBuilder {
     Color inspectCommandColor = Color.yellow;
     Color errorColor = Color.red;
     ExecutorService executor = null;
+    //the default executor is shut down with the handler, a set one could be shared
+    boolean ownsExecutor = false;
+    int permissionCacheSize = 0;
+    Duration permissionCacheTtl = Duration.ZERO;
+    Duration rejectionReplyWindow = Duration.ZERO;
+    final List<CommandStageListener> stageListeners = new ArrayList<>();
+    Duration slowInvocationThreshold = Duration.ZERO;
+    Duration slowInvocationSampleInterval = Duration.ZERO;
+    int slowInvocationHistorySize = 0;
+    int pipelineParseThreads = 0;
+    int pipelineCooldownThreads = 0;
+    int pipelineExecutionThreads = 0;
+    int pipelineQueueCapacity = 0;
+    Duration cooldownBatchWindow = Duration.ZERO;
+    int cooldownBatchSize = 0;
+    CooldownStore cooldownStore = null;
+    CommandScan commandScan = null;
+    Path snapshotFile = null;
+    int warmUpIterations = 0;
+    Duration warmUpMaxDuration = Duration.ZERO;
 
 
     /**
@@ -46,7 +78,7 @@ public final class CommandHandlerBuilder {
      * false. CommandHandler's parameters from the configuration are overridden by parameters set using methods of
      * the {@link CommandHandlerBuilder}.<br>
      * Before calling {@link #build()} to create {@link CommandHandler} instance, JDA should be set using
-     * {@link #setJda(JDA)} <br>
+     * {@link #setJda(JDA)} or {@link #setShardManager(ShardManager)} <br>
      * Default values:
      * <ul>
      *     <li>Command prefix is ~</li>
@@ -64,13 +96,26 @@ public final class CommandHandlerBuilder {
         this(true);
     }
 
+    /**
+     * Creates fluent configuration object for a CommandHandler running alongside other handlers in one process.
+     * The handler reads command_handler_&lt;namespace&gt;.properties instead of command_handler.properties and keeps
+     * cooldowns apart from the other handlers: in its own tables of command_handler.db by default, or in a
+     * namespace of the store set with {@link #setCooldownStore(CooldownStore)}, so handlers could share one store.
+     * Otherwise it's the same as {@link #CommandHandlerBuilder()}.
+     * @param namespace letters, digits and underscores not starting with a digit, unique for each handler of the
+     *                  process
+     */
+    public CommandHandlerBuilder(String namespace) {
+        this(namespace, true);
+    }
+
     /**
      * Creates fluent configuration object for CommandHandler instance creation.<br>
      * The single parameter determines whether a configuration file should be created in root directory.
      * CommandHandler's parameters from the configuration are overridden by parameters set using methods of
      * the {@link CommandHandlerBuilder}.<br>
      * Before calling {@link #build()} to create {@link CommandHandler} instance, JDA should be set using
-     * {@link #setJda(JDA)} <br>
+     * {@link #setJda(JDA)} or {@link #setShardManager(ShardManager)} <br>
      * Default values:
      * <ul>
      *     <li>Command prefix is ~</li>
@@ -85,6 +130,17 @@ public final class CommandHandlerBuilder {
      *  processors will be used.
      */
     private CommandHandlerBuilder(boolean createConfigIfAbsent) {
+        this("", createConfigIfAbsent);
+    }
+
+    private CommandHandlerBuilder(String namespace, boolean createConfigIfAbsent) {
+        if (!namespace.matches("([A-Za-z_]\\w*)?"))
+            throw new IllegalArgumentException("Namespace should start with a letter or underscore and only contain " +
+                    "letters, digits and underscores");
+        this.namespace = namespace;
+        this.fileName = namespace.isEmpty()
+                ? "command_handler.properties"
+                : "command_handler_" + namespace + ".properties";
         Properties prop;
         try {
             FileInputStream in = new FileInputStream(fileName);
@@ -150,6 +206,32 @@ public final class CommandHandlerBuilder {
         return this;
     }
 
+    /**
+     * Handles messages of all the shards of the manager instead of a single JDA. Each shard gets its own dispatch
+     * lane with its own thread pool and metrics, see {@link CommandHandler#getShardStats()}. Commands, caches and
+     * the cooldown store are shared by the shards. <br>
+     * If an executor is set with {@link #setExecutorService(ExecutorService)}, it's shared by the lanes instead.
+     * @param shardManager the manager whose shards the {@link CommandHandler} will be handling messages from
+     * @return instance of {@link CommandHandlerBuilder}. Useful for chaining
+     * @see #setThreadsPerShard(int)
+     */
+    public CommandHandlerBuilder setShardManager(ShardManager shardManager) {
+        this.shardManager = shardManager;
+        return this;
+    }
+
+    /**
+     * Amount of available processors divided by amount of shards, but at least one, by default.
+     * @param threadsPerShard size of each shard's thread pool, used only with a ShardManager and no executor set
+     * @return instance of {@link CommandHandlerBuilder}. Useful for chaining
+     */
+    public CommandHandlerBuilder setThreadsPerShard(int threadsPerShard) {
+        if (threadsPerShard <= 0)
+            throw new IllegalArgumentException("Threads per shard should be positive");
+        this.threadsPerShard = threadsPerShard;
+        return this;
+    }
+
 
     /**
      * Setting to false will prevent outdated cooldown entries from being deleted from the DB. <br>
@@ -163,7 +245,8 @@ public final class CommandHandlerBuilder {
 
 
     /**
-     * A thread pool with size of available processors amount is used by default.
+     * A thread pool with size of available processors amount is used by default. The executor could be shared by
+     * several handlers.
      * @param executor the executor will be used for commands processing.
      * @return instance of {@link CommandHandlerBuilder}. Useful for chaining
      */
@@ -172,6 +255,196 @@ public final class CommandHandlerBuilder {
         return this;
     }
 
+    /**
+     * Registers commands annotated with {@link com.github.afarion1.command_handler.annotations.Command} found by the
+     * scan instead of scanning the whole classpath on start. A scan could be shared by several handlers.
+     * @return instance of {@link CommandHandlerBuilder}. Useful for chaining
+     */
+    public CommandHandlerBuilder setCommandScan(CommandScan commandScan) {
+        this.commandScan = commandScan;
+        return this;
+    }
+
+    /**
+     * Enables caching of members' effective permissions per channel, so commands requiring discord permissions
+     * don't recompute them on every call. Cached permissions are invalidated by role, member, text channel and
+     * category events, the TTL is a safety net in case an event is missed. Disabled by default.
+     * @param maxSize maximal amount of cached (guild, channel, member) entries
+     * @param ttl time after which an entry is considered outdated
+     * @return instance of {@link CommandHandlerBuilder}. Useful for chaining
+     */
+    public CommandHandlerBuilder enablePermissionCache(int maxSize, Duration ttl) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("Permission cache size should be positive");
+        if (ttl == null || ttl.isNegative() || ttl.isZero())
+            throw new IllegalArgumentException("Permission cache TTL should be positive");
+        this.permissionCacheSize = maxSize;
+        this.permissionCacheTtl = ttl;
+        return this;
+    }
+
+    /**
+     * Limits replies to rejected calls (cooldown, missing permissions, guild only command, DB issues) to one per
+     * user and command within the window, the following rejections are dropped silently. Saves discord rate limit
+     * budget when users spam commands. Disabled by default.
+     * @param window duration of the window, zero or null disables the limitation
+     * @return instance of {@link CommandHandlerBuilder}. Useful for chaining
+     */
+    public CommandHandlerBuilder setRejectionReplyWindow(Duration window) {
+        if (window != null && window.isNegative())
+            throw new IllegalArgumentException("Rejection reply window should not be negative");
+        this.rejectionReplyWindow = window == null ? Duration.ZERO : window;
+        return this;
+    }
+
+    /**
+     * Adds a listener notified about every stage of command processing, for example to trace commands.
+     * Listeners are called in the order they were added. When no listeners are added, the notifications
+     * cost nothing.
+     * @return instance of {@link CommandHandlerBuilder}. Useful for chaining
+     */
+    public CommandHandlerBuilder addStageListener(CommandStageListener listener) {
+        if (listener == null)
+            throw new IllegalArgumentException("Stage listener should not be null");
+        stageListeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Enables detection of slow command calls. When cooldown check or execution of a command runs past the threshold,
+     * the stack of its thread is captured periodically until the command finishes, then a report with timing
+     * breakdown and summarized stacks is logged. All the handlers share one sampler thread. Disabled by default.
+     * @param threshold default threshold, could be overridden per command by
+     *                  {@link com.github.afarion1.command_handler.command.config.CommandConfigBuilder#setSlowInvocationThreshold(Duration)}
+     * @param sampleInterval interval between captures of stacks
+     * @param historySize amount of recent slow invocations kept, see {@link CommandHandler#getSlowInvocations()}
+     * @return instance of {@link CommandHandlerBuilder}. Useful for chaining
+     */
+    public CommandHandlerBuilder enableSlowInvocationMonitor(Duration threshold, Duration sampleInterval,
+                                                             int historySize) {
+        if (threshold == null || threshold.isNegative() || threshold.isZero())
+            throw new IllegalArgumentException("Slow invocation threshold should be positive");
+        if (sampleInterval == null || sampleInterval.isNegative() || sampleInterval.isZero())
+            throw new IllegalArgumentException("Sample interval should be positive");
+        if (historySize < 1)
+            throw new IllegalArgumentException("History size should be positive");
+        this.slowInvocationThreshold = threshold;
+        this.slowInvocationSampleInterval = sampleInterval;
+        this.slowInvocationHistorySize = historySize;
+        return this;
+    }
+
+    /**
+     * Processes commands in a staged pipeline instead of the executor: parsing (matching, arguments, permissions),
+     * cooldown check and save, and execution run on separate threads with bounded queues between the stages, so
+     * a slow database doesn't hold threads needed for parsing and execution. The cooldown stage checks all the calls
+     * waiting in its queue together, with a query per command. Messages are rejected when the parse stage's queue is
+     * full, the other stages make the previous one wait. Load of the stages could be monitored by
+     * {@link CommandHandler#getPipelineStats()}. <br>
+     * The executor is not used by the pipeline. Stage listeners and the slow invocation monitor are not supported,
+     * as a command is processed by several threads. Disabled by default.
+     * @param parseThreads amount of threads of the parse stage, CPU bound
+     * @param cooldownThreads amount of threads of the cooldown stage, a single one is usually enough for SQLite
+     * @param executionThreads amount of threads executing commands
+     * @param queueCapacity capacity of the queue of each stage
+     * @return instance of {@link CommandHandlerBuilder}. Useful for chaining
+     */
+    public CommandHandlerBuilder enableStagedPipeline(int parseThreads, int cooldownThreads, int executionThreads,
+                                                      int queueCapacity) {
+        if (parseThreads < 1 || cooldownThreads < 1 || executionThreads < 1)
+            throw new IllegalArgumentException("Amount of threads of each stage should be positive");
+        if (queueCapacity < 1)
+            throw new IllegalArgumentException("Queue capacity should be positive");
+        this.pipelineParseThreads = parseThreads;
+        this.pipelineCooldownThreads = cooldownThreads;
+        this.pipelineExecutionThreads = executionThreads;
+        this.pipelineQueueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * Batches cooldown checks and saves of concurrent command calls: they are collected for the window, or until
+     * the batch size is reached, and acquired with {@link CooldownStore#tryAcquireAll} per command instead of a
+     * query per call. Useful when many users call the same command at once, for example a giveaway. Each call waits
+     * for its batch, so a call could take up to the window longer. Disabled by default.
+     * @param window maximal time a lookup waits for other ones, a few milliseconds are usually enough
+     * @param maxBatchSize amount of keys after which the batch is run without waiting for the window
+     * @return instance of {@link CommandHandlerBuilder}. Useful for chaining
+     */
+    public CommandHandlerBuilder enableCooldownBatching(Duration window, int maxBatchSize) {
+        if (window == null || window.isNegative() || window.isZero())
+            throw new IllegalArgumentException("Batching window should be positive");
+        if (maxBatchSize < 1)
+            throw new IllegalArgumentException("Batch size should be positive");
+        this.cooldownBatchWindow = window;
+        this.cooldownBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /**
+     * Sets storage of command cooldowns. By default they are kept in SQLite database command_handler.db, see
+     * {@link SqliteCooldownStore}. {@link MappedCooldownStore} keeps them in a memory-mapped log file instead,
+     * which is much faster to check and save when the cooldowns are hot. Wrap the store in
+     * {@link com.github.afarion1.command_handler.cooldown.CircuitBreakerCooldownStore} to keep commands working
+     * while it's failing or slow.
+     * @param cooldownStore store of cooldowns, opened by the handler on start. The handler gets a view of it, see
+     *                      {@link CooldownStore#withNamespace(String)}, so it could be shared by several handlers and
+     *                      it isn't closed on {@link CommandHandler#shutdown()}: close it once the handlers are done
+     * @return instance of {@link CommandHandlerBuilder}. Useful for chaining
+     */
+    public CommandHandlerBuilder setCooldownStore(CooldownStore cooldownStore) {
+        this.cooldownStore = cooldownStore;
+        return this;
+    }
+
+    /**
+     * Keeps warm state across restarts: {@link CommandHandler#shutdown()} writes the permission cache and rejection
+     * reply windows to the file and {@link CommandHandler#start()} restores the entries which haven't expired.
+     * Restored permissions could miss changes made while the bot was offline until their TTL passes, see
+     * {@link #enablePermissionCache(int, Duration)}. Disabled by default.
+     * @param snapshotFile file of the snapshot, it's deleted after it's restored
+     * @return instance of {@link CommandHandlerBuilder}. Useful for chaining
+     */
+    public CommandHandlerBuilder enableWarmRestart(Path snapshotFile) {
+        this.snapshotFile = snapshotFile;
+        return this;
+    }
+
+    /**
+     * Before listening for messages, runs synthetic calls of every registered command through lookup, argument
+     * parsing, validation, permission and cooldown checks, so the first real commands don't run interpreted.
+     * Arguments of the calls are built from the commands' argument configs. Commands aren't executed, replies and
+     * cooldowns of the calls are discarded. The result is logged and kept in
+     * {@link CommandHandler#getWarmUpReport()}. Disabled by default.
+     * @param iterations amount of passes over all the commands, a few thousand calls are usually enough for the JIT
+     * @param maxDuration the warm-up stops earlier once the time is up
+     * @return instance of {@link CommandHandlerBuilder}. Useful for chaining
+     */
+    public CommandHandlerBuilder enableWarmUp(int iterations, Duration maxDuration) {
+        if (iterations <= 0)
+            throw new IllegalArgumentException("Iterations should be positive");
+        if (maxDuration == null || maxDuration.isNegative() || maxDuration.isZero())
+            throw new IllegalArgumentException("Warm-up max duration should be positive");
+        this.warmUpIterations = iterations;
+        this.warmUpMaxDuration = maxDuration;
+        return this;
+    }
+
+    /**
+     * Emits Java Flight Recorder events for dispatch, argument parsing, cooldown queries, execution and rejections
+     * of commands, so they could be correlated with GC pauses and lock stalls in recordings. The events are
+     * registered as a stage listener and do nothing while disabled in the recording. Ignored with a warning on
+     * JVMs without JFR.
+     * @return instance of {@link CommandHandlerBuilder}. Useful for chaining
+     */
+    public CommandHandlerBuilder enableFlightRecorderEvents() {
+        if (FlightRecorderEvents.isAvailable())
+            stageListeners.add(FlightRecorderEvents.newListener());
+        else
+            log.warn("Java Flight Recorder is not available, its events won't be emitted");
+        return this;
+    }
+
     /**
      * Default prefix is ~
      * @param commandsPrefix the prefix will be used to detect command call.
@@ -231,16 +504,39 @@ public final class CommandHandlerBuilder {
      */
     public CommandHandler build() {
 
-        if (jda == null)
+        if (jda == null && shardManager == null)
             throw new IllegalStateException("JDA is not specified");
+        if (jda != null && shardManager != null)
+            throw new IllegalStateException("Either JDA or ShardManager should be specified, not both");
 
-        if (executor == null) {
+        if (pipelineQueueCapacity > 0) {
+            if (!stageListeners.isEmpty() || slowInvocationHistorySize > 0)
+                throw new IllegalStateException("Stage listeners and slow invocation monitor are not supported by " +
+                        "the staged pipeline");
+            if (executor != null)
+                log.info("Staged pipeline is enabled, the executor won't be used");
+        } else if (executor == null && shardManager != null) {
+            int shards = Math.max(1, shardManager.getShardsTotal());
+            if (threadsPerShard == 0)
+                threadsPerShard = Math.max(1, Runtime.getRuntime().availableProcessors() / shards);
+            log.info("Executor is not specified, using a FixedThreadPool with size of {} for each of {} shards",
+                    threadsPerShard, shards);
+        } else if (executor == null) {
             int availableProcessors = Runtime.getRuntime().availableProcessors();
             executor = Executors.newFixedThreadPool(availableProcessors, new NamedThreadFactory("Command handling thread"));
+            ownsExecutor = true;
             log.info("Executor is not specified, using FixedThreadPool with size of {} (amount of available processors)",
                     availableProcessors);
         }
 
+        if (cooldownStore == null)
+            cooldownStore = namespace.isEmpty()
+                    ? new SqliteCooldownStore()
+                    : new SqliteCooldownStore("jdbc:sqlite:command_handler.db", namespace);
+        else
+            //a view, so shutting down one of the handlers sharing the store doesn't close it for the others
+            cooldownStore = cooldownStore.withNamespace(namespace);
+
         return new CommandHandler(this);
     }
 
@@ -0,0 +1,50 @@
+package com.github.afarion1.command_handler.command;
+
+import com.github.afarion1.command_handler.annotations.Command;
+import org.reflections.Reflections;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Commands annotated with {@link Command} found on the classpath. Scanning takes a while, so handlers of one
+ * process could share a scan instead of each scanning on start.
+ * @see CommandHandlerBuilder#setCommandScan(CommandScan)
+ */
+public final class CommandScan {
+
+    private final List<Class<? extends AbstractCommand>> commands;
+
+    private CommandScan(List<Class<? extends AbstractCommand>> commands) {
+        this.commands = Collections.unmodifiableList(commands);
+    }
+
+    /**
+     * Scans the whole classpath.
+     */
+    public static CommandScan scan() {
+        return scan("");
+    }
+
+    /**
+     * @param packagePrefix only packages starting with the prefix are scanned, for example {@code com.example.bot}
+     */
+    public static CommandScan scan(String packagePrefix) {
+        Reflections refl = new Reflections(packagePrefix);
+
+        @SuppressWarnings("unchecked")
+        List<Class<? extends AbstractCommand>> commands = refl.getTypesAnnotatedWith(Command.class).stream()
+                .filter(t -> t.getSuperclass() == AbstractCommand.class)
+                .map(t -> (Class<? extends AbstractCommand>) t)
+                .collect(Collectors.toList());
+        return new CommandScan(commands);
+    }
+
+    /**
+     * @return unmodifiable list of the found command classes
+     */
+    public List<Class<? extends AbstractCommand>> getCommands() {
+        return commands;
+    }
+}
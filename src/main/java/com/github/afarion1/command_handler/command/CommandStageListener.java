@@ -0,0 +1,61 @@
+package com.github.afarion1.command_handler.command;
+
+/**
+ * Receives notifications about stages of command processing, for example to trace commands. All the methods are
+ * called synchronously in the thread processing the command, so they should be fast. Exceptions thrown by the
+ * methods are logged and don't affect processing of the command. <br>
+ * The context is reused by the next command processed in the same thread, it shouldn't be kept after
+ * {@link #onFinished(InvocationContext)}.
+ * @see CommandHandlerBuilder#addStageListener(CommandStageListener)
+ */
+public interface CommandStageListener {
+
+    /**
+     * Called when the handler starts processing a message with the prefix.
+     */
+    default void onReceived(InvocationContext context) {
+    }
+
+    /**
+     * Called when a command was found by its name or alias.
+     */
+    default void onMatched(InvocationContext context) {
+    }
+
+    /**
+     * Called after arguments of the command were parsed, even if they are invalid.
+     */
+    default void onArgumentsParsed(InvocationContext context) {
+    }
+
+    /**
+     * Called after discord permissions of the author were checked, even if some are missing.
+     */
+    default void onPermissionsChecked(InvocationContext context) {
+    }
+
+    /**
+     * Called after cooldowns of the command were checked and saved, even if the command is on cooldown.
+     */
+    default void onCooldownChecked(InvocationContext context) {
+    }
+
+    /**
+     * Called after the command was executed without exceptions.
+     */
+    default void onExecuted(InvocationContext context) {
+    }
+
+    /**
+     * Called when the command threw an exception or its cooldown couldn't be managed,
+     * see {@link InvocationContext#getFailure()}.
+     */
+    default void onFailed(InvocationContext context) {
+    }
+
+    /**
+     * Called when processing of the message is over, whatever the outcome is.
+     */
+    default void onFinished(InvocationContext context) {
+    }
+}
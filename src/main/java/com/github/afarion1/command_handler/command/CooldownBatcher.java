@@ -0,0 +1,191 @@
+package com.github.afarion1.command_handler.command;
+
+import com.github.afarion1.command_handler.cooldown.CooldownStore;
+import com.github.afarion1.command_handler.cooldown.CooldownStoreException;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Collects cooldown acquires of concurrent calls for a short window, or until the batch is full, and runs them
+ * with {@link CooldownStore#tryAcquireAll} per command. During bursts, when many users call the same command at
+ * once, hundreds of round trips to the cooldown store turn into a few. Each call is still checked and saved
+ * atomically, so concurrent calls of the same user can't both pass. Results are delivered through futures, the
+ * blocking method waits for them.
+ */
+final class CooldownBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(CooldownBatcher.class);
+
+    private final CooldownStore store;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final Object lock = new Object();
+    private ScheduledExecutorService flusher = null;
+    private Batch current = null;
+
+    CooldownBatcher(CooldownStore store, Duration window, int maxBatchSize) {
+        this.store = store;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    void start() {
+        synchronized (lock) {
+            if (flusher == null)
+                flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "Cooldown batcher");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        }
+    }
+
+    /**
+     * Flushes the current batch and waits for the flushes in progress.
+     * @return false if the flushes didn't finish within the timeout
+     */
+    boolean stop(long timeoutNanos) throws InterruptedException {
+        ScheduledExecutorService stopped;
+        synchronized (lock) {
+            if (flusher == null)
+                return true;
+            if (current != null) {
+                Batch batch = current;
+                current = null;
+                flusher.execute(() -> flush(batch));
+            }
+            //scheduled flushes still run after shutdown, they return at once for the flushed batches
+            flusher.shutdown();
+            stopped = flusher;
+            flusher = null;
+        }
+        return stopped.awaitTermination(timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Queues an acquire of the call's cooldowns, see {@link CooldownStore#tryAcquire}.
+     * @return future of milliseconds until the blocking cooldown passes, 0 if the cooldowns were acquired
+     */
+    CompletableFuture<Long> acquire(String cmdName, long userId, long userCooledDownAfter, long guildId,
+                                    long guildCooledDownAfter) {
+        synchronized (lock) {
+            Batch batch = currentBatch();
+            CompletableFuture<Long> future = batch.pending(cmdName)
+                    .add(userId, userCooledDownAfter, guildId, guildCooledDownAfter);
+            added(batch);
+            return future;
+        }
+    }
+
+    /**
+     * Waits for the batch of the call, see {@link CooldownStore#tryAcquire}.
+     * @return milliseconds until the blocking cooldown passes, 0 if the cooldowns were acquired
+     */
+    long tryAcquire(String cmdName, long userId, long userCooledDownAfter, long guildId, long guildCooledDownAfter)
+            throws CooldownStoreException {
+        return await(acquire(cmdName, userId, userCooledDownAfter, guildId, guildCooledDownAfter));
+    }
+
+    //under the lock
+    private Batch currentBatch() {
+        if (flusher == null)
+            throw new IllegalStateException("The batcher isn't started");
+        if (current == null) {
+            Batch batch = new Batch();
+            current = batch;
+            flusher.schedule(() -> flush(batch), windowNanos, TimeUnit.NANOSECONDS);
+        }
+        return current;
+    }
+
+    //under the lock
+    private void added(Batch batch) {
+        if (++batch.size >= maxBatchSize) {
+            current = null;
+            flusher.execute(() -> flush(batch));
+        }
+    }
+
+    /**
+     * Runs in the flusher thread.
+     */
+    private void flush(Batch batch) {
+        synchronized (lock) {
+            if (batch.flushed)
+                return;
+            batch.flushed = true;
+            if (current == batch)
+                current = null;
+        }
+        log.trace("Flushing cooldown batch of {} calls", batch.size);
+        for (Map.Entry<String, Pending> entry : batch.commands.entrySet())
+            flush(entry.getKey(), entry.getValue());
+    }
+
+    private void flush(String cmdName, Pending pending) {
+        try {
+            long[] remaining = store.tryAcquireAll(cmdName, pending.userIds.toLongArray(),
+                    pending.userCooledDownAfter.toLongArray(), pending.guildIds.toLongArray(),
+                    pending.guildCooledDownAfter.toLongArray(), System.currentTimeMillis());
+            for (int i = 0; i < remaining.length; i++)
+                pending.acquired.get(i).complete(remaining[i]);
+        } catch (CooldownStoreException | RuntimeException e) {
+            for (CompletableFuture<Long> future : pending.acquired)
+                future.completeExceptionally(e);
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws CooldownStoreException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CooldownStoreException("Interrupted while waiting for a cooldown batch", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CooldownStoreException)
+                throw (CooldownStoreException) e.getCause();
+            throw new CooldownStoreException("Cooldown batch failed", e.getCause());
+        }
+    }
+
+    private static final class Batch {
+        //command name -> calls of the command
+        private final Map<String, Pending> commands = new HashMap<>();
+        private int size = 0;
+        private boolean flushed = false;
+
+        private Pending pending(String cmdName) {
+            return commands.computeIfAbsent(cmdName, name -> new Pending());
+        }
+    }
+
+    /**
+     * Calls of a command in the order of arrival, the store acquires them in this order.
+     */
+    private static final class Pending {
+        private final LongArrayList userIds = new LongArrayList();
+        private final LongArrayList userCooledDownAfter = new LongArrayList();
+        private final LongArrayList guildIds = new LongArrayList();
+        private final LongArrayList guildCooledDownAfter = new LongArrayList();
+        private final List<CompletableFuture<Long>> acquired = new ArrayList<>();
+
+        private CompletableFuture<Long> add(long userId, long userCooledDownAfter, long guildId,
+                                            long guildCooledDownAfter) {
+            userIds.add(userId);
+            this.userCooledDownAfter.add(userCooledDownAfter);
+            guildIds.add(guildId);
+            this.guildCooledDownAfter.add(guildCooledDownAfter);
+            CompletableFuture<Long> future = new CompletableFuture<>();
+            acquired.add(future);
+            return future;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.afarion1.command_handler.command;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongMaps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warm restart snapshot of the state a handler keeps in memory: the permission cache and rejection reply windows.
+ * Written on {@link CommandHandler#shutdown()} and read on {@link CommandHandler#start()}, entries which expired
+ * meanwhile are skipped. <br>
+ * Format: magic, version, entries of the permission cache (guild, channel, member, permissions, expiry), then
+ * reply windows of each command (name, amount, pairs of user and end of window). Times are epoch milliseconds.
+ */
+final class HandlerSnapshot {
+
+    private static final Logger log = LoggerFactory.getLogger(HandlerSnapshot.class);
+    private static final int MAGIC = 0x43485348;
+    private static final int FORMAT_VERSION = 1;
+
+    private HandlerSnapshot() {
+    }
+
+    /**
+     * @param permissionCache null if the cache isn't enabled
+     * @param throttles command name -> reply throttle
+     */
+    static void write(Path file, PermissionCache permissionCache, Map<String, ReplyThrottle> throttles)
+            throws IOException {
+        long nowMillis = System.currentTimeMillis();
+        //written next to the snapshot and moved over it, so a crash doesn't leave a half written one
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        int permissions = 0;
+        int windows = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+
+            long[] entries = permissionCache == null ? new long[0] : permissionCache.exportLive();
+            permissions = entries.length / 5;
+            out.writeInt(permissions);
+            for (int i = 0; i < entries.length; i += 5) {
+                out.writeLong(entries[i]);
+                out.writeLong(entries[i + 1]);
+                out.writeLong(entries[i + 2]);
+                out.writeLong(entries[i + 3]);
+                out.writeLong(nowMillis + TimeUnit.NANOSECONDS.toMillis(entries[i + 4]));
+            }
+
+            out.writeInt(throttles.size());
+            for (Map.Entry<String, ReplyThrottle> throttle : throttles.entrySet()) {
+                Long2LongMap live = throttle.getValue().exportLive(nowMillis);
+                out.writeUTF(throttle.getKey());
+                out.writeInt(live.size());
+                for (Long2LongMap.Entry entry : Long2LongMaps.fastIterable(live)) {
+                    out.writeLong(entry.getLongKey());
+                    out.writeLong(entry.getLongValue());
+                }
+                windows += live.size();
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Wrote warm restart snapshot of {} permissions and {} reply windows to {}", permissions, windows,
+                file);
+    }
+
+    /**
+     * Restores the entries which haven't expired and deletes the snapshot, so a crash later doesn't restore it
+     * again. A missing snapshot is ignored.
+     * @param permissionCache null if the cache isn't enabled, then the permissions are skipped
+     * @param throttles command name -> reply throttle, windows of the commands which are absent are skipped
+     */
+    static void read(Path file, PermissionCache permissionCache, Map<String, ReplyThrottle> throttles)
+            throws IOException {
+        long nowMillis = System.currentTimeMillis();
+        long nowNanos = System.nanoTime();
+        int permissions = 0;
+        int windows = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+                throw new IOException(file + " is not a snapshot of supported version");
+
+            int entries = in.readInt();
+            for (int i = 0; i < entries; i++) {
+                long guildId = in.readLong();
+                long channelId = in.readLong();
+                long memberId = in.readLong();
+                long effective = in.readLong();
+                long expiresAtMillis = in.readLong();
+                if (permissionCache == null || expiresAtMillis <= nowMillis)
+                    continue;
+                permissionCache.restore(guildId, channelId, memberId, effective,
+                        nowNanos + TimeUnit.MILLISECONDS.toNanos(expiresAtMillis - nowMillis));
+                permissions++;
+            }
+
+            int commands = in.readInt();
+            for (int i = 0; i < commands; i++) {
+                ReplyThrottle throttle = throttles.get(in.readUTF());
+                int amount = in.readInt();
+                for (int j = 0; j < amount; j++) {
+                    long userId = in.readLong();
+                    long windowEnd = in.readLong();
+                    if (throttle == null || windowEnd <= nowMillis)
+                        continue;
+                    throttle.restore(userId, windowEnd);
+                    windows++;
+                }
+            }
+        } catch (NoSuchFileException e) {
+            log.debug("There's no warm restart snapshot {}", file);
+            return;
+        }
+        Files.delete(file);
+        log.info("Restored {} permissions and {} reply windows from warm restart snapshot {}", permissions, windows,
+                file);
+    }
+}
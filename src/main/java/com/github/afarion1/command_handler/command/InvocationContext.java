@@ -0,0 +1,170 @@
+package com.github.afarion1.command_handler.command;
+
+import com.github.afarion1.command_handler.metrics.Rejection;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+
+/**
+ * State of processing of a single message, passed to {@link CommandStageListener}. Timestamps are taken with
+ * {@link System#nanoTime()} and are 0 if the stage wasn't reached. <br>
+ * An instance is reused for all the messages processed by a thread, so values should be copied if they are needed
+ * after {@link CommandStageListener#onFinished(InvocationContext)}.
+ */
+public final class InvocationContext {
+
+    private MessageReceivedEvent event;
+    private AbstractCommand command;
+    private CommandArguments arguments;
+    private long receivedNanos;
+    private long matchedNanos;
+    private long argumentsParsedNanos;
+    private long permissionsCheckedNanos;
+    private long cooldownCheckedNanos;
+    private long executedNanos;
+    private long finishedNanos;
+    private Rejection rejection;
+    private Throwable failure;
+    private Object attachment;
+
+    InvocationContext() {
+    }
+
+    InvocationContext reset(MessageReceivedEvent event, long receivedNanos) {
+        this.event = event;
+        this.receivedNanos = receivedNanos;
+        command = null;
+        arguments = null;
+        matchedNanos = 0;
+        argumentsParsedNanos = 0;
+        permissionsCheckedNanos = 0;
+        cooldownCheckedNanos = 0;
+        executedNanos = 0;
+        finishedNanos = 0;
+        rejection = null;
+        failure = null;
+        attachment = null;
+        return this;
+    }
+
+    /**
+     * Drops references to the processed message, so they aren't kept alive by the thread.
+     */
+    void clear() {
+        event = null;
+        command = null;
+        arguments = null;
+        failure = null;
+        attachment = null;
+    }
+
+    public MessageReceivedEvent getEvent() {
+        return event;
+    }
+
+    /**
+     * @return the matched command, null before {@link CommandStageListener#onMatched(InvocationContext)}
+     * or if no command matched
+     */
+    public AbstractCommand getCommand() {
+        return command;
+    }
+
+    /**
+     * @return parsed arguments, null before {@link CommandStageListener#onArgumentsParsed(InvocationContext)}
+     */
+    public CommandArguments getArguments() {
+        return arguments;
+    }
+
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    public long getMatchedNanos() {
+        return matchedNanos;
+    }
+
+    public long getArgumentsParsedNanos() {
+        return argumentsParsedNanos;
+    }
+
+    public long getPermissionsCheckedNanos() {
+        return permissionsCheckedNanos;
+    }
+
+    public long getCooldownCheckedNanos() {
+        return cooldownCheckedNanos;
+    }
+
+    /**
+     * @return end of execution of the command, including failed execution
+     */
+    public long getExecutedNanos() {
+        return executedNanos;
+    }
+
+    public long getFinishedNanos() {
+        return finishedNanos;
+    }
+
+    /**
+     * @return reason the command wasn't executed, null if it wasn't rejected
+     */
+    public Rejection getRejection() {
+        return rejection;
+    }
+
+    /**
+     * @return exception thrown by the command or while managing its cooldown, null if there was none
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return object attached by a listener, for example a tracing span
+     */
+    public Object getAttachment() {
+        return attachment;
+    }
+
+    /**
+     * Attaches an object to the invocation, it's dropped when processing of the message is over.
+     */
+    public void setAttachment(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    void setCommand(AbstractCommand command, long matchedNanos) {
+        this.command = command;
+        this.matchedNanos = matchedNanos;
+    }
+
+    void setArguments(CommandArguments arguments, long argumentsParsedNanos) {
+        this.arguments = arguments;
+        this.argumentsParsedNanos = argumentsParsedNanos;
+    }
+
+    void setPermissionsCheckedNanos(long permissionsCheckedNanos) {
+        this.permissionsCheckedNanos = permissionsCheckedNanos;
+    }
+
+    void setCooldownCheckedNanos(long cooldownCheckedNanos) {
+        this.cooldownCheckedNanos = cooldownCheckedNanos;
+    }
+
+    void setExecutedNanos(long executedNanos) {
+        this.executedNanos = executedNanos;
+    }
+
+    void setFinishedNanos(long finishedNanos) {
+        this.finishedNanos = finishedNanos;
+    }
+
+    void setRejection(Rejection rejection) {
+        this.rejection = rejection;
+    }
+
+    void setFailure(Throwable failure) {
+        this.failure = failure;
+    }
+}
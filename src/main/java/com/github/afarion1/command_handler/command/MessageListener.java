@@ -1,5 +1,7 @@
 package com.github.afarion1.command_handler.command;
 
+import com.github.afarion1.command_handler.dispatch.GuildTask;
+import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
@@ -7,6 +9,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 final class MessageListener extends ListenerAdapter {
 
@@ -14,12 +17,16 @@ final class MessageListener extends ListenerAdapter {
 
     private final String prefix;
     private final ExecutorService executor;
+    private final StagedPipeline pipeline;
     private final CommandHandler handler;
+    private final ShardLane lane;
 
-    MessageListener(CommandHandler handler) {
+    MessageListener(CommandHandler handler, ShardLane lane) {
         this.handler = handler;
+        this.lane = lane;
         this.prefix = handler.getCommandsPrefix();
-        this.executor = handler.getExecutor();
+        this.executor = lane.getExecutor();
+        this.pipeline = handler.getPipeline();
     }
 
     @Override
@@ -35,10 +42,44 @@ final class MessageListener extends ListenerAdapter {
             //TODO  shorten message on trace logging level
             log.debug("Found prefix, processing message  \"{}\" from user {} in channel id{}", content,
                     msg.getAuthor().getAsMention(), msg.getChannel().getId());
-            Runnable processCommand = () -> handler.processCommand(event);
-
-            executor.execute(processCommand);
+            lane.onReceived();
+            try {
+                if (pipeline != null)
+                    pipeline.submit(event, lane);
+                else
+                    executor.execute(new ProcessCommandTask(event, System.nanoTime()));
+            } catch (RejectedExecutionException e) {
+                lane.onRejected();
+                //bounded executors shed load instead of queueing it
+                log.debug("Command executor rejected message \"{}\" from user {}: {}", content,
+                        msg.getAuthor().getAsMention(), e.getMessage());
+            }
         }
     }
 
+    private final class ProcessCommandTask implements GuildTask {
+        private final MessageReceivedEvent event;
+        private final long enqueuedAt;
+
+        private ProcessCommandTask(MessageReceivedEvent event, long enqueuedAt) {
+            this.event = event;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        @Override
+        public long getGuildId() {
+            Guild guild = event.getGuild();
+            return guild == null ? DIRECT_MESSAGES : guild.getIdLong();
+        }
+
+        @Override
+        public void run() {
+            lane.onStarted(enqueuedAt);
+            try {
+                handler.processCommand(event);
+            } finally {
+                lane.onCompleted(enqueuedAt);
+            }
+        }
+    }
 }
@@ -0,0 +1,277 @@
+package com.github.afarion1.command_handler.command;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMaps;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.dv8tion.jda.api.entities.GuildChannel;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.events.channel.category.GenericCategoryEvent;
+import net.dv8tion.jda.api.events.channel.text.GenericTextChannelEvent;
+import net.dv8tion.jda.api.events.guild.GuildLeaveEvent;
+import net.dv8tion.jda.api.events.guild.member.GenericGuildMemberEvent;
+import net.dv8tion.jda.api.events.guild.update.GuildUpdateOwnerEvent;
+import net.dv8tion.jda.api.events.role.GenericRoleEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.internal.utils.PermissionUtil;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of members' effective permissions in channels. Entries are invalidated by role, member,
+ * text channel and category events, TTL is a safety net for missed events. <br>
+ * Invalidations bump a generation of the guild, a permission computed before the bump isn't cached.
+ */
+final class PermissionCache extends ListenerAdapter {
+
+    private static final Logger log = LoggerFactory.getLogger(PermissionCache.class);
+    private static final int GENERATION_STRIPES = 64;
+
+    //guild id -> channel id -> member id -> entry
+    private final Map<Long, Long2ObjectMap<Long2ObjectMap<Entry>>> guilds = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    //striped by guild id, guilds sharing a stripe only drop some inserts of each other
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final int maxSize;
+    private final long ttlNanos;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    PermissionCache(int maxSize, Duration ttl) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    long getEffectivePermission(GuildChannel channel, Member member) {
+        long now = System.nanoTime();
+        Long2ObjectMap<Long2ObjectMap<Entry>> channels = guilds.get(channel.getGuild().getIdLong());
+        if (channels != null) {
+            synchronized (channels) {
+                Long2ObjectMap<Entry> members = channels.get(channel.getIdLong());
+                Entry entry = members == null ? null : members.get(member.getIdLong());
+                if (entry != null && now - entry.expiresAt < 0) {
+                    hits.increment();
+                    return entry.permissions;
+                }
+            }
+        }
+
+        misses.increment();
+        long guildId = channel.getGuild().getIdLong();
+        //read before computing, an invalidation while computing means the result may be stale
+        long generation = generations.get(generationStripe(guildId));
+        long permissions = PermissionUtil.getEffectivePermission(channel, member);
+        put(guildId, channel.getIdLong(), member.getIdLong(), permissions, now + ttlNanos, generation);
+        return permissions;
+    }
+
+    /**
+     * Puts an entry of a warm restart snapshot, the events missed while the bot was offline are covered by TTL.
+     * @param expiresAt {@link System#nanoTime()} of expiry
+     */
+    void restore(long guildId, long channelId, long memberId, long permissions, long expiresAt) {
+        //the TTL could have been shortened since the snapshot
+        put(guildId, channelId, memberId, permissions, Math.min(expiresAt, System.nanoTime() + ttlNanos),
+                generations.get(generationStripe(guildId)));
+    }
+
+    /**
+     * @return live entries, five values each: guild id, channel id, member id, permissions and nanoseconds until
+     * expiry
+     */
+    long[] exportLive() {
+        long now = System.nanoTime();
+        LongArrayList entries = new LongArrayList();
+        for (Map.Entry<Long, Long2ObjectMap<Long2ObjectMap<Entry>>> guild : guilds.entrySet()) {
+            Long2ObjectMap<Long2ObjectMap<Entry>> channels = guild.getValue();
+            synchronized (channels) {
+                for (Long2ObjectMap.Entry<Long2ObjectMap<Entry>> channel : Long2ObjectMaps.fastIterable(channels)) {
+                    for (Long2ObjectMap.Entry<Entry> member : Long2ObjectMaps.fastIterable(channel.getValue())) {
+                        long remaining = member.getValue().expiresAt - now;
+                        if (remaining <= 0)
+                            continue;
+                        entries.add(guild.getKey().longValue());
+                        entries.add(channel.getLongKey());
+                        entries.add(member.getLongKey());
+                        entries.add(member.getValue().permissions);
+                        entries.add(remaining);
+                    }
+                }
+            }
+        }
+        return entries.toLongArray();
+    }
+
+    /**
+     * @param generation generation of the guild read before the permissions were computed
+     */
+    private void put(long guildId, long channelId, long memberId, long permissions, long expiresAt,
+                     long generation) {
+        if (size.get() >= maxSize)
+            evict();
+
+        Long2ObjectMap<Long2ObjectMap<Entry>> channels = guilds.computeIfAbsent(guildId,
+                id -> new Long2ObjectOpenHashMap<>());
+        synchronized (channels) {
+            //the guild could be invalidated meanwhile, invalidations bump the generation before taking the lock
+            if (guilds.get(guildId) != channels || generations.get(generationStripe(guildId)) != generation)
+                return;
+            Long2ObjectMap<Entry> members = channels.get(channelId);
+            if (members == null) {
+                members = new Long2ObjectOpenHashMap<>();
+                channels.put(channelId, members);
+            }
+            if (members.put(memberId, new Entry(permissions, expiresAt)) == null)
+                size.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes expired entries, drops the whole cache if it's still full afterwards.
+     */
+    private void evict() {
+        long now = System.nanoTime();
+        int evicted = 0;
+        for (Long2ObjectMap<Long2ObjectMap<Entry>> channels : guilds.values()) {
+            synchronized (channels) {
+                for (Long2ObjectMap<Entry> members : channels.values()) {
+                    ObjectIterator<Entry> it = members.values().iterator();
+                    while (it.hasNext()) {
+                        if (now - it.next().expiresAt >= 0) {
+                            it.remove();
+                            evicted++;
+                        }
+                    }
+                }
+            }
+        }
+        size.addAndGet(-evicted);
+
+        if (size.get() >= maxSize) {
+            log.debug("Permission cache is full of live entries, clearing it");
+            for (Long guildId : guilds.keySet())
+                evicted += removeGuild(guildId);
+        }
+        evictions.add(evicted);
+        log.trace("Evicted {} permission cache entries", evicted);
+    }
+
+    private int removeGuild(long guildId) {
+        Long2ObjectMap<Long2ObjectMap<Entry>> channels = guilds.remove(guildId);
+        if (channels == null)
+            return 0;
+        int removed = 0;
+        synchronized (channels) {
+            for (Long2ObjectMap<Entry> members : channels.values())
+                removed += members.size();
+        }
+        size.addAndGet(-removed);
+        return removed;
+    }
+
+    private static int generationStripe(long guildId) {
+        return (int) (guildId ^ (guildId >>> 32)) & (GENERATION_STRIPES - 1);
+    }
+
+    void invalidateGuild(long guildId) {
+        generations.incrementAndGet(generationStripe(guildId));
+        invalidations.add(removeGuild(guildId));
+    }
+
+    void invalidateChannel(long guildId, long channelId) {
+        generations.incrementAndGet(generationStripe(guildId));
+        Long2ObjectMap<Long2ObjectMap<Entry>> channels = guilds.get(guildId);
+        if (channels == null)
+            return;
+        int removed = 0;
+        synchronized (channels) {
+            Long2ObjectMap<Entry> members = channels.remove(channelId);
+            if (members != null)
+                removed = members.size();
+        }
+        size.addAndGet(-removed);
+        invalidations.add(removed);
+    }
+
+    void invalidateMember(long guildId, long memberId) {
+        generations.incrementAndGet(generationStripe(guildId));
+        Long2ObjectMap<Long2ObjectMap<Entry>> channels = guilds.get(guildId);
+        if (channels == null)
+            return;
+        int removed = 0;
+        synchronized (channels) {
+            for (Long2ObjectMap<Entry> members : channels.values()) {
+                if (members.remove(memberId) != null)
+                    removed++;
+            }
+        }
+        size.addAndGet(-removed);
+        invalidations.add(removed);
+    }
+
+    @Override
+    public void onGenericRole(@NotNull GenericRoleEvent event) {
+        //role changes may affect any member of the guild
+        log.trace("Role event {}, invalidating permissions of guild {}", event.getClass().getSimpleName(),
+                event.getGuild().getId());
+        invalidateGuild(event.getGuild().getIdLong());
+    }
+
+    @Override
+    public void onGenericGuildMember(@NotNull GenericGuildMemberEvent event) {
+        log.trace("Member event {}, invalidating permissions of member {}", event.getClass().getSimpleName(),
+                event.getMember().getId());
+        invalidateMember(event.getGuild().getIdLong(), event.getMember().getIdLong());
+    }
+
+    @Override
+    public void onGenericTextChannel(@NotNull GenericTextChannelEvent event) {
+        log.trace("Text channel event {}, invalidating permissions in channel {}", event.getClass().getSimpleName(),
+                event.getChannel().getId());
+        invalidateChannel(event.getGuild().getIdLong(), event.getChannel().getIdLong());
+    }
+
+    @Override
+    public void onGenericCategory(@NotNull GenericCategoryEvent event) {
+        //overrides of a category are inherited by channels synced to it
+        log.trace("Category event {}, invalidating permissions of guild {}", event.getClass().getSimpleName(),
+                event.getGuild().getId());
+        invalidateGuild(event.getGuild().getIdLong());
+    }
+
+    @Override
+    public void onGuildUpdateOwner(@NotNull GuildUpdateOwnerEvent event) {
+        invalidateGuild(event.getGuild().getIdLong());
+    }
+
+    @Override
+    public void onGuildLeave(@NotNull GuildLeaveEvent event) {
+        invalidateGuild(event.getGuild().getIdLong());
+    }
+
+    PermissionCacheStats getStats() {
+        return new PermissionCacheStats(hits.sum(), misses.sum(), invalidations.sum(), evictions.sum(), size.get());
+    }
+
+    private static final class Entry {
+        private final long permissions;
+        private final long expiresAt;
+
+        private Entry(long permissions, long expiresAt) {
+            this.permissions = permissions;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
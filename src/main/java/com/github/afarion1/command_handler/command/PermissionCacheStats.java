@@ -0,0 +1,56 @@
+package com.github.afarion1.command_handler.command;
+
+/**
+ * Snapshot of effective permissions cache statistics.
+ * @see CommandHandlerBuilder#enablePermissionCache(int, java.time.Duration)
+ */
+public final class PermissionCacheStats {
+    private final long hits;
+    private final long misses;
+    private final long invalidations;
+    private final long evictions;
+    private final int size;
+
+    PermissionCacheStats(long hits, long misses, long invalidations, long evictions, int size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.invalidations = invalidations;
+        this.evictions = evictions;
+        this.size = size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return amount of entries removed due to role, member, channel or category events
+     */
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * @return amount of entries removed because the cache was full
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return amount of cached entries at the moment of the snapshot
+     */
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "PermissionCacheStats{hits=" + hits + ", misses=" + misses + ", invalidations=" + invalidations +
+                ", evictions=" + evictions + ", size=" + size + '}';
+    }
+}
@@ -0,0 +1,125 @@
+package com.github.afarion1.command_handler.command;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A stage of {@link StagedPipeline}: a bounded queue and own threads, each one takes whatever is queued,
+ * up to the batch size, and handles it at once.
+ */
+final class PipelineStage<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(PipelineStage.class);
+
+    private final String name;
+    private final BlockingQueue<T> queue;
+    private final int batchSize;
+    private final Consumer<List<T>> handler;
+    private final Thread[] threads;
+    private final AtomicInteger busyThreads = new AtomicInteger();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private volatile boolean running = false;
+    private long startedAt;
+
+    PipelineStage(String name, int threads, int queueCapacity, int batchSize, Consumer<List<T>> handler) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.handler = handler;
+        this.threads = new Thread[threads];
+        for (int i = 0; i < threads; i++)
+            this.threads[i] = new Thread(this::work, "Command " + name + " stage " + (i + 1));
+    }
+
+    void start() {
+        running = true;
+        startedAt = System.nanoTime();
+        for (Thread thread : threads)
+            thread.start();
+    }
+
+    /**
+     * Stops taking items, the ones left in the queue are dropped.
+     */
+    void stop() {
+        running = false;
+        for (Thread thread : threads)
+            thread.interrupt();
+    }
+
+    /**
+     * @return false if the queue is full
+     */
+    boolean offer(T item) {
+        if (queue.offer(item)) {
+            accepted.increment();
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Waits while the queue is full, so a slow stage slows down the previous one.
+     */
+    void put(T item) throws InterruptedException {
+        queue.put(item);
+        accepted.increment();
+    }
+
+    /**
+     * @return true if every accepted item was handled
+     */
+    boolean isDrained() {
+        return processed.sum() >= accepted.sum();
+    }
+
+    private void work() {
+        List<T> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                T first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null)
+                    continue;
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            busyThreads.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                handler.accept(batch);
+            } catch (RuntimeException e) {
+                log.error("Error in {} stage", name, e);
+            } finally {
+                busyNanos.add(System.nanoTime() - start);
+                processed.add(batch.size());
+                batches.increment();
+                busyThreads.decrementAndGet();
+                batch.clear();
+            }
+        }
+        log.debug("{} stage thread stopped", name);
+    }
+
+    PipelineStageStats getStats() {
+        return new PipelineStageStats(name, threads.length, busyThreads.get(), queue.size(),
+                queue.size() + queue.remainingCapacity(), processed.sum(), batches.sum(), rejected.sum(),
+                busyNanos.sum(), running ? System.nanoTime() - startedAt : 0);
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.afarion1.command_handler.command;
+
+/**
+ * Snapshot of a staged pipeline stage's load. A stage is saturated when its utilization approaches 1 and its
+ * queue fills up, then it should get more threads.
+ * @see CommandHandlerBuilder#enableStagedPipeline(int, int, int, int)
+ */
+public final class PipelineStageStats {
+    private final String name;
+    private final int threads;
+    private final int busyThreads;
+    private final int queued;
+    private final int queueCapacity;
+    private final long processed;
+    private final long batches;
+    private final long rejected;
+    private final long busyNanos;
+    private final long uptimeNanos;
+
+    PipelineStageStats(String name, int threads, int busyThreads, int queued, int queueCapacity, long processed,
+                       long batches, long rejected, long busyNanos, long uptimeNanos) {
+        this.name = name;
+        this.threads = threads;
+        this.busyThreads = busyThreads;
+        this.queued = queued;
+        this.queueCapacity = queueCapacity;
+        this.processed = processed;
+        this.batches = batches;
+        this.rejected = rejected;
+        this.busyNanos = busyNanos;
+        this.uptimeNanos = uptimeNanos;
+    }
+
+    /**
+     * @return parse, cooldown or execution
+     */
+    public String getName() {
+        return name;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return amount of threads handling a batch at the moment of the snapshot
+     */
+    public int getBusyThreads() {
+        return busyThreads;
+    }
+
+    public int getQueued() {
+        return queued;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @return amount of handled commands
+     */
+    public long getProcessed() {
+        return processed;
+    }
+
+    /**
+     * @return amount of batches the commands were handled in, commands are batched only when they wait in the queue
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return amount of messages rejected because the queue was full, only the first stage rejects, the others
+     * make the previous stage wait
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return total time the threads spent handling commands
+     */
+    public long getBusyNanos() {
+        return busyNanos;
+    }
+
+    /**
+     * @return time since the stage started
+     */
+    public long getUptimeNanos() {
+        return uptimeNanos;
+    }
+
+    /**
+     * @return part of the threads' time spent handling commands since the start, from 0 to 1
+     */
+    public double getUtilization() {
+        return uptimeNanos == 0 ? 0 : (double) busyNanos / threads / uptimeNanos;
+    }
+
+    /**
+     * @return part of the queue capacity in use, from 0 to 1
+     */
+    public double getQueueFill() {
+        return (double) queued / queueCapacity;
+    }
+
+    @Override
+    public String toString() {
+        return "PipelineStageStats{name=" + name + ", threads=" + threads + ", busyThreads=" + busyThreads +
+                ", queued=" + queued + '/' + queueCapacity + ", processed=" + processed + ", batches=" + batches +
+                ", rejected=" + rejected + ", utilization=" + String.format("%.2f", getUtilization()) + '}';
+    }
+}
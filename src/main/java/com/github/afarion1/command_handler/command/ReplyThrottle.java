@@ -0,0 +1,86 @@
+package com.github.afarion1.command_handler.command;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongMaps;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+
+/**
+ * Allows at most one reply per user of a command within the window. Keeps user id -> end of window
+ * in striped primitive maps, expired entries are purged when a stripe grows.
+ */
+final class ReplyThrottle {
+
+    private static final int STRIPES = 16;
+    private static final int MIN_PURGE_SIZE = 64;
+
+    private final long windowMillis;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    ReplyThrottle(long windowMillis) {
+        this.windowMillis = windowMillis;
+        for (int i = 0; i < STRIPES; i++)
+            stripes[i] = new Stripe();
+    }
+
+    /**
+     * @return true if the user may be replied to, in which case the window starts over
+     */
+    boolean tryAcquire(long userId, long now) {
+        Stripe stripe = stripe(userId);
+        synchronized (stripe) {
+            if (stripe.windowEnds.get(userId) > now)
+                return false;
+            stripe.windowEnds.put(userId, now + windowMillis);
+            if (stripe.windowEnds.size() >= stripe.purgeSize)
+                stripe.purge(now);
+            return true;
+        }
+    }
+
+    /**
+     * @return user id -> end of window of the windows which haven't ended yet
+     */
+    Long2LongMap exportLive(long now) {
+        Long2LongMap live = new Long2LongOpenHashMap();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (Long2LongMap.Entry entry : Long2LongMaps.fastIterable(stripe.windowEnds)) {
+                    if (entry.getLongValue() > now)
+                        live.put(entry.getLongKey(), entry.getLongValue());
+                }
+            }
+        }
+        return live;
+    }
+
+    /**
+     * Puts a window of a warm restart snapshot, cut to the current window length if it was shortened since.
+     */
+    void restore(long userId, long windowEnd) {
+        long end = Math.min(windowEnd, System.currentTimeMillis() + windowMillis);
+        Stripe stripe = stripe(userId);
+        synchronized (stripe) {
+            stripe.windowEnds.put(userId, end);
+        }
+    }
+
+    private Stripe stripe(long userId) {
+        return stripes[(int) (userId ^ (userId >>> 32)) & (STRIPES - 1)];
+    }
+
+    private static final class Stripe {
+        private final Long2LongOpenHashMap windowEnds = new Long2LongOpenHashMap();
+        private int purgeSize = MIN_PURGE_SIZE;
+
+        private void purge(long now) {
+            ObjectIterator<Long2LongMap.Entry> it = windowEnds.long2LongEntrySet().fastIterator();
+            while (it.hasNext()) {
+                if (it.next().getLongValue() <= now)
+                    it.remove();
+            }
+            //don't purge on every insertion if most of the entries are alive
+            purgeSize = Math.max(MIN_PURGE_SIZE, windowEnds.size() * 2);
+        }
+    }
+}
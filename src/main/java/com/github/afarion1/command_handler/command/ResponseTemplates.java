@@ -0,0 +1,137 @@
+package com.github.afarion1.command_handler.command;
+
+import com.github.afarion1.command_handler.command.config.CommandArgumentConfig;
+import com.github.afarion1.command_handler.command.config.CommandConfig;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntList;
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import org.apache.commons.lang3.time.DurationFormatUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed replies of a command, so rejected calls don't rebuild the same messages over and over.
+ */
+final class ResponseTemplates {
+
+    static final String GUILD_ONLY_MESSAGE = "This command could be executed only in server chat.";
+    static final String DB_ISSUES_MESSAGE = "Unable to execute the command due to DB issues";
+    private static final String COOLDOWN_PREFIX = "The command is on cooldown: ";
+    private static final String ERROR_TITLE = "Wrong command usage";
+    private static final int MAX_CACHED_ERROR_EMBEDS = 256;
+    private static final int MAX_CACHED_PERMS_MESSAGES = 256;
+
+    private static final Logger log = LoggerFactory.getLogger(ResponseTemplates.class);
+    //the messages depend only on missing permissions, so they are shared by all the commands
+    private static final Map<Long, String> notEnoughPermsMessages = new ConcurrentHashMap<>();
+
+    private final Color errorColor;
+    private final String errorDescription;
+    private final String[] argFieldNames;
+    private final String[] argErrorMessages;
+    private final Int2IntMap argPositions = new Int2IntOpenHashMap();
+    private final Map<Long, MessageEmbed> errorEmbeds = new ConcurrentHashMap<>();
+
+    ResponseTemplates(CommandConfig config, Color errorColor) {
+        this.errorColor = errorColor;
+        this.errorDescription = config.getCommandArgumentsSignature() + "\n\nWrong arguments:";
+
+        List<CommandArgumentConfig> arguments = config.getArguments();
+        argFieldNames = new String[arguments.size()];
+        argErrorMessages = new String[arguments.size()];
+        argPositions.defaultReturnValue(-1);
+        for (int i = 0; i < arguments.size(); i++) {
+            CommandArgumentConfig arg = arguments.get(i);
+            argFieldNames[i] = arg.getArgumentName().toLowerCase();
+            argErrorMessages[i] = arg.getErrorMsg().length() > 0 ? arg.getErrorMsg() : arg.getArgumentDesc();
+            argPositions.put(arg.getId(), i);
+        }
+    }
+
+    /**
+     * @return wrong command usage embed, cached per distinct set of wrong arguments
+     */
+    MessageEmbed getErrorEmbed(IntList wrongArgsIds) {
+        //commands with more than 64 arguments can't be represented by the mask, so they aren't cached
+        if (argFieldNames.length > Long.SIZE) {
+            BitSet wrongArgs = new BitSet(argFieldNames.length);
+            for (int i = 0; i < wrongArgsIds.size(); i++) {
+                int pos = argPositions.get(wrongArgsIds.getInt(i));
+                if (pos >= 0) wrongArgs.set(pos);
+            }
+            return buildErrorEmbed(wrongArgs);
+        }
+
+        long mask = 0;
+        for (int i = 0; i < wrongArgsIds.size(); i++) {
+            int pos = argPositions.get(wrongArgsIds.getInt(i));
+            if (pos >= 0) mask |= 1L << pos;
+        }
+
+        MessageEmbed embed = errorEmbeds.get(mask);
+        if (embed == null) {
+            embed = buildErrorEmbed(BitSet.valueOf(new long[]{mask}));
+            if (errorEmbeds.size() < MAX_CACHED_ERROR_EMBEDS)
+                errorEmbeds.put(mask, embed);
+            else
+                log.debug("Error embeds cache is full, not caching embed for mask {}", mask);
+        }
+        return embed;
+    }
+
+    /**
+     * @param remainingMillis time left before the command could be used again
+     */
+    String getCooldownMessage(long remainingMillis) {
+        return COOLDOWN_PREFIX + DurationFormatUtils.formatDurationWords(remainingMillis, true, true);
+    }
+
+    /**
+     * @param unsatisfiedPermissions not empty raw mask of missing permissions
+     */
+    static String getNotEnoughPermsMessage(long unsatisfiedPermissions) {
+        String msg = notEnoughPermsMessages.get(unsatisfiedPermissions);
+        if (msg == null) {
+            msg = buildNotEnoughPermsMessage(new ArrayList<>(Permission.getPermissions(unsatisfiedPermissions)));
+            if (notEnoughPermsMessages.size() < MAX_CACHED_PERMS_MESSAGES)
+                notEnoughPermsMessages.put(unsatisfiedPermissions, msg);
+        }
+        return msg;
+    }
+
+    private static String buildNotEnoughPermsMessage(List<Permission> unsatisfiedPermissions) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("You don't have ");
+        sb.append(unsatisfiedPermissions.get(0).getName());
+        for (int i = 1; i < unsatisfiedPermissions.size(); i++) {
+            sb.append(", ");
+            sb.append(unsatisfiedPermissions.get(i).getName());
+        }
+        sb.append(" permission");
+        if (unsatisfiedPermissions.size() > 1)
+            sb.append("s");
+        sb.append(" in order to execute this command.");
+        return sb.toString();
+    }
+
+    private MessageEmbed buildErrorEmbed(BitSet wrongArgs) {
+        EmbedBuilder eb = new EmbedBuilder();
+        eb.setTitle(ERROR_TITLE);
+        eb.setColor(errorColor);
+        eb.setDescription(errorDescription);
+        for (int i = wrongArgs.nextSetBit(0); i >= 0; i = wrongArgs.nextSetBit(i + 1)) {
+            eb.addField(argFieldNames[i], argErrorMessages[i], true);
+        }
+        return eb.build();
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.afarion1.command_handler.command;
+
+import com.github.afarion1.command_handler.metrics.LatencyHistogram;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dispatch lane of a shard: the executor its commands run on and counters of the commands it received.
+ */
+final class ShardLane {
+
+    private final int shardId;
+    private final ExecutorService executor;
+    //lane owns the executor, so it's shut down with the handler
+    private final boolean ownsExecutor;
+    private final LongAdder received = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    ShardLane(int shardId, ExecutorService executor, boolean ownsExecutor) {
+        this.shardId = shardId;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    int getShardId() {
+        return shardId;
+    }
+
+    /**
+     * @return null if the staged pipeline is used instead
+     */
+    ExecutorService getExecutor() {
+        return executor;
+    }
+
+    boolean ownsExecutor() {
+        return ownsExecutor;
+    }
+
+    void onReceived() {
+        received.increment();
+    }
+
+    void onRejected() {
+        rejected.increment();
+    }
+
+    void onStarted(long enqueuedAt) {
+        queueWait.record(System.nanoTime() - enqueuedAt);
+    }
+
+    void onCompleted(long enqueuedAt) {
+        latency.record(System.nanoTime() - enqueuedAt);
+        completed.increment();
+    }
+
+    /**
+     * @return amount of received messages which are queued or being processed
+     */
+    long getInFlight() {
+        return received.sum() - rejected.sum() - completed.sum();
+    }
+
+    ShardStats getStats() {
+        //queue depth is only known for the lane's own pools
+        int queued = executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getQueue().size() : -1;
+        return new ShardStats(shardId, received.sum(), rejected.sum(), completed.sum(), queued,
+                queueWait.snapshot(), latency.snapshot());
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.afarion1.command_handler.command;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+
+/**
+ * The only listener registered on a ShardManager, passes messages to the listener of the shard they came from.
+ * Registering on the manager instead of on each shard covers shards which are started or restarted later.
+ */
+final class ShardRouter extends ListenerAdapter {
+
+    private final MessageListener[] listeners;
+
+    ShardRouter(MessageListener[] listeners) {
+        this.listeners = listeners;
+    }
+
+    @Override
+    public void onMessageReceived(MessageReceivedEvent event) {
+        JDA.ShardInfo shardInfo = event.getJDA().getShardInfo();
+        int shardId = shardInfo == null ? 0 : shardInfo.getShardId();
+        //the manager could be resharded to more shards than there were on start
+        listeners[shardId % listeners.length].onMessageReceived(event);
+    }
+}
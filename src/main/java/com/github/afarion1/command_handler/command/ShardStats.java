@@ -0,0 +1,82 @@
+package com.github.afarion1.command_handler.command;
+
+import com.github.afarion1.command_handler.metrics.HistogramSnapshot;
+
+/**
+ * Snapshot of a shard's dispatch lane. A lane whose queue wait grows while the others stay idle handles a shard
+ * with more active guilds than the rest.
+ * @see CommandHandlerBuilder#setShardManager(net.dv8tion.jda.api.sharding.ShardManager)
+ */
+public final class ShardStats {
+    private final int shardId;
+    private final long received;
+    private final long rejected;
+    private final long completed;
+    private final int queued;
+    private final HistogramSnapshot queueWait;
+    private final HistogramSnapshot latency;
+
+    ShardStats(int shardId, long received, long rejected, long completed, int queued, HistogramSnapshot queueWait,
+               HistogramSnapshot latency) {
+        this.shardId = shardId;
+        this.received = received;
+        this.rejected = rejected;
+        this.completed = completed;
+        this.queued = queued;
+        this.queueWait = queueWait;
+        this.latency = latency;
+    }
+
+    public int getShardId() {
+        return shardId;
+    }
+
+    /**
+     * @return amount of messages with the prefix received by the shard
+     */
+    public long getReceived() {
+        return received;
+    }
+
+    /**
+     * @return amount of messages rejected by the lane's executor or the pipeline
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return amount of processed messages
+     */
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return amount of messages waiting in the lane's executor, -1 if it's unknown for the executor
+     */
+    public int getQueued() {
+        return queued;
+    }
+
+    /**
+     * @return time messages waited for a thread of the lane, or for the parse stage when the staged pipeline is used
+     */
+    public HistogramSnapshot getQueueWait() {
+        return queueWait;
+    }
+
+    /**
+     * @return time from receiving a message to the end of its processing
+     */
+    public HistogramSnapshot getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardStats{shardId=" + shardId + ", received=" + received + ", rejected=" + rejected +
+                ", completed=" + completed + ", queued=" + queued + ", meanLatencyNanos=" +
+                String.format("%.0f", latency.getMeanNanos()) + '}';
+    }
+}
@@ -0,0 +1,123 @@
+package com.github.afarion1.command_handler.command;
+
+import com.github.afarion1.command_handler.metrics.Rejection;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Report of a command call which took longer than its threshold, from the start of cooldown check till the end
+ * of execution.
+ * @see CommandHandler#getSlowInvocations()
+ */
+public final class SlowInvocation {
+
+    private final String commandName;
+    private final long guildId;
+    private final long userId;
+    private final long startedAtMillis;
+    private final long thresholdNanos;
+    private final long cooldownNanos;
+    private final long executionNanos;
+    private final long totalNanos;
+    private final Rejection rejection;
+    private final Throwable failure;
+    private final int sampleCount;
+    private final List<StackSample> stackSamples;
+
+    SlowInvocation(String commandName, long guildId, long userId, long startedAtMillis, long thresholdNanos,
+                   long cooldownNanos, long executionNanos, long totalNanos, Rejection rejection, Throwable failure,
+                   int sampleCount, List<StackSample> stackSamples) {
+        this.commandName = commandName;
+        this.guildId = guildId;
+        this.userId = userId;
+        this.startedAtMillis = startedAtMillis;
+        this.thresholdNanos = thresholdNanos;
+        this.cooldownNanos = cooldownNanos;
+        this.executionNanos = executionNanos;
+        this.totalNanos = totalNanos;
+        this.rejection = rejection;
+        this.failure = failure;
+        this.sampleCount = sampleCount;
+        this.stackSamples = Collections.unmodifiableList(stackSamples);
+    }
+
+    public String getCommandName() {
+        return commandName;
+    }
+
+    /**
+     * @return id of the guild, 0 if the command was called in direct messages
+     */
+    public long getGuildId() {
+        return guildId;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    /**
+     * @return wall clock time when the cooldown check started
+     */
+    public long getStartedAtMillis() {
+        return startedAtMillis;
+    }
+
+    public long getThresholdNanos() {
+        return thresholdNanos;
+    }
+
+    /**
+     * @return time spent checking and saving cooldowns
+     */
+    public long getCooldownNanos() {
+        return cooldownNanos;
+    }
+
+    /**
+     * @return time spent executing the command, 0 if it wasn't executed
+     */
+    public long getExecutionNanos() {
+        return executionNanos;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return reason the command wasn't executed, null if it was
+     */
+    public Rejection getRejection() {
+        return rejection;
+    }
+
+    /**
+     * @return exception thrown by the command or while managing its cooldown, null if there was none
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return amount of stacks captured while the command was running past the threshold
+     */
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return distinct captured stacks, the most frequent first
+     */
+    public List<StackSample> getStackSamples() {
+        return stackSamples;
+    }
+
+    @Override
+    public String toString() {
+        return "SlowInvocation{command=" + commandName + ", totalMillis=" + totalNanos / 1_000_000 +
+                ", cooldownMillis=" + cooldownNanos / 1_000_000 + ", executionMillis=" + executionNanos / 1_000_000 +
+                ", samples=" + sampleCount + '}';
+    }
+}
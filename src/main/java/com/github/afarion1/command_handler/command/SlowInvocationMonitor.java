@@ -0,0 +1,241 @@
+package com.github.afarion1.command_handler.command;
+
+import com.github.afarion1.command_handler.metrics.Rejection;
+import net.dv8tion.jda.api.entities.Guild;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Detects calls of commands running past their threshold, from the start of cooldown check till the end of
+ * execution. Stacks of the slow threads are captured periodically by a sampler thread shared by all the
+ * handlers, reports are logged and kept by the sampler, so the monitored threads only publish their
+ * progress to volatile fields.
+ */
+final class SlowInvocationMonitor implements CommandStageListener {
+
+    private static final Logger log = LoggerFactory.getLogger(SlowInvocationMonitor.class);
+    private static final int MAX_SAMPLES_PER_INVOCATION = 64;
+    private static final int REPORTED_STACKS = 3;
+    private static final int REPORTED_FRAMES = 12;
+    private static ScheduledExecutorService sampler = null;
+
+    private final long defaultThresholdNanos;
+    private final long sampleIntervalNanos;
+    //slots of threads which processed commands, written only by their threads
+    private final List<ThreadSlot> slots = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<ThreadSlot> threadSlot = ThreadLocal.withInitial(this::registerSlot);
+    private final Queue<Watch> finished = new ConcurrentLinkedQueue<>();
+    private final SlowInvocation[] history;
+    private int historyNext = 0;
+    private int historySize = 0;
+    private ScheduledFuture<?> samplingTask = null;
+
+    SlowInvocationMonitor(Duration defaultThreshold, Duration sampleInterval, int historySize) {
+        this.defaultThresholdNanos = defaultThreshold.toNanos();
+        this.sampleIntervalNanos = sampleInterval.toNanos();
+        this.history = new SlowInvocation[historySize];
+    }
+
+    synchronized void start() {
+        if (samplingTask == null)
+            samplingTask = sampler().scheduleWithFixedDelay(this::sample, sampleIntervalNanos, sampleIntervalNanos,
+                    TimeUnit.NANOSECONDS);
+    }
+
+    synchronized void stop() {
+        if (samplingTask != null) {
+            samplingTask.cancel(false);
+            samplingTask = null;
+        }
+    }
+
+    private static synchronized ScheduledExecutorService sampler() {
+        if (sampler == null) {
+            sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "Slow command sampler");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return sampler;
+    }
+
+    private ThreadSlot registerSlot() {
+        ThreadSlot slot = new ThreadSlot(Thread.currentThread());
+        slots.add(slot);
+        return slot;
+    }
+
+    @Override
+    public void onPermissionsChecked(InvocationContext context) {
+        if (context.getRejection() != null)
+            return;
+        AbstractCommand command = context.getCommand();
+        Duration threshold = command.getConfig().getSlowInvocationThreshold();
+        long thresholdNanos = threshold.isZero() ? defaultThresholdNanos : threshold.toNanos();
+        threadSlot.get().current = new Watch(context, thresholdNanos);
+    }
+
+    @Override
+    public void onCooldownChecked(InvocationContext context) {
+        Watch watch = threadSlot.get().current;
+        if (watch != null)
+            watch.cooldownCheckedNanos = context.getCooldownCheckedNanos();
+    }
+
+    @Override
+    public void onFinished(InvocationContext context) {
+        ThreadSlot slot = threadSlot.get();
+        Watch watch = slot.current;
+        if (watch == null)
+            return;
+        slot.current = null;
+        long finishedNanos = context.getFinishedNanos();
+        if (finishedNanos - watch.startedNanos < watch.thresholdNanos)
+            return;
+        watch.executedNanos = context.getExecutedNanos();
+        watch.rejection = context.getRejection();
+        watch.failure = context.getFailure();
+        watch.finishedNanos = finishedNanos;
+        finished.add(watch);
+    }
+
+    /**
+     * Runs in the sampler thread.
+     */
+    private void sample() {
+        try {
+            long now = System.nanoTime();
+            for (ThreadSlot slot : slots) {
+                Watch watch = slot.current;
+                if (watch == null) {
+                    if (!slot.thread.isAlive())
+                        slots.remove(slot);
+                    continue;
+                }
+                if (now - watch.startedNanos < watch.thresholdNanos || watch.samples.size() >= MAX_SAMPLES_PER_INVOCATION)
+                    continue;
+                StackTraceElement[] stack = slot.thread.getStackTrace();
+                //the command could finish while the stack was captured
+                if (slot.current == watch)
+                    watch.samples.add(stack);
+            }
+
+            Watch watch;
+            while ((watch = finished.poll()) != null)
+                report(watch);
+        } catch (RuntimeException e) {
+            log.error("Error while sampling slow commands", e);
+        }
+    }
+
+    private void report(Watch watch) {
+        long cooldownEnd = watch.cooldownCheckedNanos != 0 ? watch.cooldownCheckedNanos : watch.finishedNanos;
+        long executionNanos = watch.executedNanos != 0 ? watch.executedNanos - cooldownEnd : 0;
+        SlowInvocation invocation = new SlowInvocation(watch.commandName, watch.guildId, watch.userId,
+                watch.startedAtMillis, watch.thresholdNanos, cooldownEnd - watch.startedNanos, executionNanos,
+                watch.finishedNanos - watch.startedNanos, watch.rejection, watch.failure, watch.samples.size(),
+                summarize(watch.samples));
+        synchronized (history) {
+            history[historyNext] = invocation;
+            historyNext = (historyNext + 1) % history.length;
+            historySize = Math.min(historySize + 1, history.length);
+        }
+        log.warn(format(invocation));
+    }
+
+    private static List<StackSample> summarize(List<StackTraceElement[]> samples) {
+        Map<List<StackTraceElement>, Integer> counts = new HashMap<>();
+        for (StackTraceElement[] stack : samples)
+            counts.merge(Arrays.asList(stack), 1, Integer::sum);
+        List<StackSample> summary = new ArrayList<>(counts.size());
+        for (Map.Entry<List<StackTraceElement>, Integer> entry : counts.entrySet())
+            summary.add(new StackSample(entry.getKey().toArray(new StackTraceElement[0]), entry.getValue()));
+        summary.sort(Comparator.comparingInt(StackSample::getCount).reversed());
+        return summary;
+    }
+
+    private static String format(SlowInvocation invocation) {
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("Slow call of command ").append(invocation.getCommandName())
+                .append(" took ").append(millis(invocation.getTotalNanos()))
+                .append(" ms (threshold ").append(millis(invocation.getThresholdNanos()))
+                .append(" ms): cooldown ").append(millis(invocation.getCooldownNanos()))
+                .append(" ms, execution ").append(millis(invocation.getExecutionNanos()))
+                .append(" ms, user ").append(invocation.getUserId())
+                .append(", guild ").append(invocation.getGuildId());
+        if (invocation.getRejection() != null)
+            sb.append(", rejected: ").append(invocation.getRejection());
+        if (invocation.getFailure() != null)
+            sb.append(", failed: ").append(invocation.getFailure());
+        sb.append(", ").append(invocation.getSampleCount()).append(" stack samples");
+
+        List<StackSample> samples = invocation.getStackSamples();
+        for (int i = 0; i < Math.min(REPORTED_STACKS, samples.size()); i++) {
+            StackSample sample = samples.get(i);
+            sb.append("\n  seen ").append(sample.getCount()).append(" times:");
+            List<StackTraceElement> stack = sample.getStack();
+            for (int j = 0; j < Math.min(REPORTED_FRAMES, stack.size()); j++)
+                sb.append("\n    at ").append(stack.get(j));
+            if (stack.size() > REPORTED_FRAMES)
+                sb.append("\n    ... ").append(stack.size() - REPORTED_FRAMES).append(" more");
+        }
+        return sb.toString();
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * @return recent slow invocations, the latest first
+     */
+    List<SlowInvocation> getHistory() {
+        synchronized (history) {
+            List<SlowInvocation> list = new ArrayList<>(historySize);
+            for (int i = 1; i <= historySize; i++)
+                list.add(history[(historyNext - i + history.length) % history.length]);
+            return list;
+        }
+    }
+
+    private static final class ThreadSlot {
+        private final Thread thread;
+        private volatile Watch current = null;
+
+        private ThreadSlot(Thread thread) {
+            this.thread = thread;
+        }
+    }
+
+    private static final class Watch {
+        private final String commandName;
+        private final long guildId;
+        private final long userId;
+        private final long thresholdNanos;
+        private final long startedNanos;
+        private final long startedAtMillis;
+        //written by the command's thread before publishing the watch to the sampler
+        private long cooldownCheckedNanos;
+        private long executedNanos;
+        private long finishedNanos;
+        private Rejection rejection;
+        private Throwable failure;
+        //accessed only by the sampler thread
+        private final List<StackTraceElement[]> samples = new ArrayList<>();
+
+        private Watch(InvocationContext context, long thresholdNanos) {
+            Guild guild = context.getEvent().getGuild();
+            this.commandName = context.getCommand().getName();
+            this.guildId = guild == null ? 0 : guild.getIdLong();
+            this.userId = context.getEvent().getAuthor().getIdLong();
+            this.thresholdNanos = thresholdNanos;
+            this.startedNanos = context.getPermissionsCheckedNanos();
+            this.startedAtMillis = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.afarion1.command_handler.command;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Distinct stack of a thread captured while a slow command was running, with the amount of times it was seen.
+ */
+public final class StackSample {
+
+    private final List<StackTraceElement> stack;
+    private final int count;
+
+    StackSample(StackTraceElement[] stack, int count) {
+        this.stack = Collections.unmodifiableList(Arrays.asList(stack));
+        this.count = count;
+    }
+
+    /**
+     * @return frames of the stack, the innermost first
+     */
+    public List<StackTraceElement> getStack() {
+        return stack;
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.afarion1.command_handler.command;
+
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Notifies registered {@link CommandStageListener}s, the handler keeps no instance if there are no listeners.
+ * Contexts are reused per thread.
+ */
+final class StageListeners {
+
+    private static final Logger log = LoggerFactory.getLogger(StageListeners.class);
+
+    private final CommandStageListener[] listeners;
+    private final ThreadLocal<InvocationContext> contexts = ThreadLocal.withInitial(InvocationContext::new);
+
+    StageListeners(List<CommandStageListener> listeners) {
+        this.listeners = listeners.toArray(new CommandStageListener[0]);
+    }
+
+    InvocationContext begin(MessageReceivedEvent event, long receivedNanos) {
+        InvocationContext context = contexts.get().reset(event, receivedNanos);
+        fire(Hook.RECEIVED, context);
+        return context;
+    }
+
+    void finish(InvocationContext context) {
+        context.setFinishedNanos(System.nanoTime());
+        fire(Hook.FINISHED, context);
+        context.clear();
+    }
+
+    void fire(Hook hook, InvocationContext context) {
+        for (CommandStageListener listener : listeners) {
+            try {
+                switch (hook) {
+                    case RECEIVED:
+                        listener.onReceived(context);
+                        break;
+                    case MATCHED:
+                        listener.onMatched(context);
+                        break;
+                    case ARGUMENTS_PARSED:
+                        listener.onArgumentsParsed(context);
+                        break;
+                    case PERMISSIONS_CHECKED:
+                        listener.onPermissionsChecked(context);
+                        break;
+                    case COOLDOWN_CHECKED:
+                        listener.onCooldownChecked(context);
+                        break;
+                    case EXECUTED:
+                        listener.onExecuted(context);
+                        break;
+                    case FAILED:
+                        listener.onFailed(context);
+                        break;
+                    case FINISHED:
+                        listener.onFinished(context);
+                        break;
+                }
+            } catch (RuntimeException e) {
+                log.error("Stage listener {} failed on {}", listener, hook, e);
+            }
+        }
+    }
+
+    enum Hook {
+        RECEIVED, MATCHED, ARGUMENTS_PARSED, PERMISSIONS_CHECKED, COOLDOWN_CHECKED, EXECUTED, FAILED, FINISHED
+    }
+}
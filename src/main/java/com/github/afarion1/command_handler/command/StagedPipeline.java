@@ -0,0 +1,267 @@
+package com.github.afarion1.command_handler.command;
+
+import com.github.afarion1.command_handler.cooldown.CooldownStore;
+import com.github.afarion1.command_handler.cooldown.CooldownStoreException;
+import com.github.afarion1.command_handler.metrics.CommandMetrics;
+import com.github.afarion1.command_handler.metrics.Rejection;
+import com.github.afarion1.command_handler.metrics.Stage;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Processes commands in three stages with own threads and bounded queues between them: parse (matching, arguments
+ * and permissions), cooldown (check and save in the cooldown store) and execution. A slow store then doesn't take
+ * threads from parsing and execution, and each stage could be sized for its work. <br>
+ * The cooldown stage takes all the queued calls, up to {@link #COOLDOWN_BATCH_SIZE}, and acquires their cooldowns
+ * with {@link CooldownStore#tryAcquireAll} per command instead of a query per call. Each call is still checked and
+ * saved atomically, so several cooldown threads can't let concurrent calls of the same user through. <br>
+ * An exception while handling a call fails only that call, the rest of its batch goes on.
+ */
+final class StagedPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(StagedPipeline.class);
+    private static final int COOLDOWN_BATCH_SIZE = 128;
+
+    private final CommandHandler handler;
+    private final PipelineStage<Call> parseStage;
+    private final PipelineStage<Call> cooldownStage;
+    private final PipelineStage<Call> executionStage;
+
+    StagedPipeline(CommandHandler handler, int parseThreads, int cooldownThreads, int executionThreads,
+                   int queueCapacity) {
+        this.handler = handler;
+        this.parseStage = new PipelineStage<>("parse", parseThreads, queueCapacity, 1, this::parse);
+        this.cooldownStage = new PipelineStage<>("cooldown", cooldownThreads, queueCapacity, COOLDOWN_BATCH_SIZE,
+                this::checkCooldowns);
+        this.executionStage = new PipelineStage<>("execution", executionThreads, queueCapacity, 1, this::execute);
+    }
+
+    void start() {
+        executionStage.start();
+        cooldownStage.start();
+        parseStage.start();
+    }
+
+    void stop() {
+        parseStage.stop();
+        cooldownStage.stop();
+        executionStage.stop();
+    }
+
+    /**
+     * Waits until the calls submitted so far went through all the stages.
+     * @return false if the deadline passed first
+     */
+    boolean awaitDrained(long deadlineNanos) throws InterruptedException {
+        //a stage hands its calls to the next one before counting them as processed
+        while (!(parseStage.isDrained() && cooldownStage.isDrained() && executionStage.isDrained())) {
+            if (System.nanoTime() - deadlineNanos >= 0)
+                return false;
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * @param lane lane of the event's shard, it's told when the call starts and leaves the pipeline
+     * @throws RejectedExecutionException if the parse stage's queue is full
+     */
+    void submit(MessageReceivedEvent event, ShardLane lane) {
+        if (!parseStage.offer(new Call(event, lane, System.nanoTime())))
+            throw new RejectedExecutionException("The queue of parse stage is full");
+    }
+
+    List<PipelineStageStats> getStats() {
+        return Arrays.asList(parseStage.getStats(), cooldownStage.getStats(), executionStage.getStats());
+    }
+
+    private void parse(List<Call> calls) {
+        for (Call call : calls) {
+            call.lane.onStarted(call.receivedAt);
+            try {
+                CommandHandler.FindCommand findCommand = handler.matchCommand(call.event, call.receivedAt, null);
+                if (findCommand == null) {
+                    call.finish();
+                    continue;
+                }
+                call.command = findCommand.getCommand();
+                call.cmdMetrics = handler.getCommandMetrics(call.command);
+                call.cmdArgs = handler.checkCall(call.event, call.command, findCommand.getArgumentString(),
+                        call.cmdMetrics, null);
+                if (call.cmdArgs == null) {
+                    call.finish();
+                    continue;
+                }
+                forward(call.command.hasAnyCooldown(call.event) ? cooldownStage : executionStage, call);
+            } catch (RuntimeException e) {
+                fail(call, "parse", e);
+            }
+        }
+    }
+
+    private void checkCooldowns(List<Call> calls) {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        //command name -> calls of the command, in order, so a later call of a user sees the cooldown of an earlier one
+        Map<String, List<Call>> callsByCommand = new HashMap<>();
+        for (Call call : calls) {
+            try {
+                call.userCooledDownAfter = call.command.hasUserCooldown(call.event)
+                        ? now + call.command.getUserCooldown(call.event).toMillis()
+                        : -1;
+                call.guildCooledDownAfter = call.event.getGuild() != null && call.command.hasGuildCooldown(call.event)
+                        ? now + call.command.getGuildCooldown(call.event).toMillis()
+                        : -1;
+            } catch (RuntimeException e) {
+                fail(call, "cooldown", e);
+                continue;
+            }
+            //only a guild cooldown, but it's a direct message
+            if (call.userCooledDownAfter == -1 && call.guildCooledDownAfter == -1) {
+                forward(executionStage, call);
+                continue;
+            }
+            callsByCommand.computeIfAbsent(call.command.getName(), name -> new ArrayList<>()).add(call);
+        }
+
+        CooldownStore store = handler.getCooldownStore();
+        for (Map.Entry<String, List<Call>> entry : callsByCommand.entrySet())
+            acquireCooldowns(store, entry.getKey(), entry.getValue(), start, now);
+    }
+
+    /**
+     * Checks and saves cooldowns of the calls with one atomic acquire per call, so calls of the same user handled
+     * by different cooldown threads can't both pass.
+     */
+    private void acquireCooldowns(CooldownStore store, String cmdName, List<Call> calls, long start, long now) {
+        long[] userIds = new long[calls.size()];
+        long[] userCooledDownAfter = new long[userIds.length];
+        long[] guildIds = new long[userIds.length];
+        long[] guildCooledDownAfter = new long[userIds.length];
+        for (int i = 0; i < userIds.length; i++) {
+            Call call = calls.get(i);
+            userIds[i] = call.event.getAuthor().getIdLong();
+            userCooledDownAfter[i] = call.userCooledDownAfter;
+            guildIds[i] = call.guildCooledDownAfter == -1 ? 0 : call.event.getGuild().getIdLong();
+            guildCooledDownAfter[i] = call.guildCooledDownAfter;
+        }
+
+        long[] remaining = null;
+        CooldownStoreException failure = null;
+        try {
+            remaining = store.tryAcquireAll(cmdName, userIds, userCooledDownAfter, guildIds, guildCooledDownAfter,
+                    now);
+        } catch (CooldownStoreException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            for (Call call : calls)
+                fail(call, "cooldown", e);
+            return;
+        }
+
+        long checkedAt = System.nanoTime();
+        for (int i = 0; i < userIds.length; i++) {
+            Call call = calls.get(i);
+            try {
+                call.cmdMetrics.recordLatency(Stage.COOLDOWN, checkedAt - start);
+                boolean passed;
+                if (failure != null) {
+                    handler.handleCooldownStoreException(call.event, failure, call.cmdMetrics, null);
+                    passed = call.command.shouldExecuteIfCantCheckOrSaveCooldown(call.event);
+                } else {
+                    passed = passesCooldown(call, remaining[i]);
+                }
+                if (passed)
+                    forward(executionStage, call);
+                else
+                    call.finish();
+            } catch (RuntimeException e) {
+                fail(call, "cooldown", e);
+            }
+        }
+    }
+
+    private boolean passesCooldown(Call call, long remaining) {
+        if (remaining <= 0)
+            return true;
+        CommandHandler.recordRejection(call.cmdMetrics, null, Rejection.COOLDOWN);
+        if (handler.shouldReplyToRejection(call.event, call.command))
+            call.event.getChannel().sendMessage(handler.getResponseTemplates(call.command)
+                    .getCooldownMessage(remaining)).queue();
+        log.debug("{} is on cooldown.", call.command.getName());
+        return false;
+    }
+
+    private void execute(List<Call> calls) {
+        for (Call call : calls) {
+            try {
+                handler.executeCommand(call.event, call.command, call.cmdArgs, call.cmdMetrics, null);
+                call.finish();
+            } catch (RuntimeException e) {
+                fail(call, "execution", e);
+            }
+        }
+    }
+
+    /**
+     * Drops the call after an unexpected exception, so it doesn't take the rest of its batch down.
+     */
+    private static void fail(Call call, String stage, RuntimeException e) {
+        if (call.command == null)
+            log.error("Error in {} stage", stage, e);
+        else
+            log.error("Error in {} stage, dropping command {}", stage, call.command.getName(), e);
+        if (call.cmdMetrics != null)
+            call.cmdMetrics.recordError();
+        call.finish();
+    }
+
+    private void forward(PipelineStage<Call> stage, Call call) {
+        try {
+            stage.put(call);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.debug("Interrupted while passing command {} to the next stage, dropping it", call.command.getName());
+            call.finish();
+        }
+    }
+
+    private static final class Call {
+        private final MessageReceivedEvent event;
+        private final ShardLane lane;
+        private final long receivedAt;
+        private AbstractCommand command;
+        private CommandMetrics cmdMetrics;
+        private CommandArguments cmdArgs;
+        private long userCooledDownAfter;
+        private long guildCooledDownAfter;
+        private boolean finished;
+
+        private Call(MessageReceivedEvent event, ShardLane lane, long receivedAt) {
+            this.event = event;
+            this.lane = lane;
+            this.receivedAt = receivedAt;
+        }
+
+        /**
+         * Called once the call leaves the pipeline, whether it was executed, rejected or dropped.
+         */
+        private void finish() {
+            //a call failing after it finished mustn't be counted twice
+            if (finished)
+                return;
+            finished = true;
+            if (cmdMetrics != null)
+                cmdMetrics.recordLatency(Stage.TOTAL, System.nanoTime() - receivedAt);
+            lane.onCompleted(receivedAt);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.github.afarion1.command_handler.command;
+
+import com.github.afarion1.command_handler.command.config.CommandArgumentConfig;
+import com.github.afarion1.command_handler.command.config.CommandConfig;
+import com.github.afarion1.command_handler.cooldown.CooldownScope;
+import com.github.afarion1.command_handler.cooldown.CooldownStore;
+import com.github.afarion1.command_handler.metrics.MetricsRegistry;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Startup pass compiling the dispatch path before the first real message: synthetic calls of every registered
+ * command, built from its argument configs, go through lookup, argument parsing, validation, permission and
+ * cooldown checks on {@link WarmUpEvents}. Commands aren't executed, replies are dropped and cooldowns go
+ * to a store which keeps nothing.
+ */
+final class WarmUp {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmUp.class);
+    //far below real snowflakes
+    static final long GUILD_ID = 1;
+    private static final long CHANNEL_ID = 1;
+    private static final long USER_ID = 1;
+
+    private WarmUp() {
+    }
+
+    /**
+     * @param iterations amount of passes over all the commands
+     * @param maxDuration the pass stops earlier once the time is up
+     */
+    static WarmUpReport run(CommandHandler handler, int iterations, Duration maxDuration) {
+        WarmUpEvents events = new WarmUpEvents(GUILD_ID, CHANNEL_ID, USER_ID);
+        List<String> calls = new ArrayList<>();
+        for (CommandConfig config : handler.getCommandConfigList())
+            calls.addAll(calls(handler.getCommandsPrefix(), config));
+
+        MetricsRegistry scratchMetrics = new MetricsRegistry();
+        CooldownStore scratchStore = new ScratchCooldownStore();
+        long start = System.nanoTime();
+        long deadline = start + maxDuration.toNanos();
+        long firstIterationNanos = 0;
+        long lastIterationNanos = 0;
+        int completed = 0;
+        while (completed < iterations && System.nanoTime() - deadline < 0) {
+            long iterationStart = System.nanoTime();
+            for (String call : calls) {
+                MessageReceivedEvent event = events.message(call);
+                try {
+                    handler.dryRun(event, scratchMetrics, scratchStore);
+                } catch (RuntimeException e) {
+                    log.debug("Warm-up call \"{}\" failed", call, e);
+                }
+            }
+            lastIterationNanos = System.nanoTime() - iterationStart;
+            if (completed == 0)
+                firstIterationNanos = lastIterationNanos;
+            completed++;
+        }
+        return new WarmUpReport(completed, (long) completed * calls.size(), System.nanoTime() - start,
+                firstIterationNanos, lastIterationNanos);
+    }
+
+    /**
+     * @return calls of the command by its name and each alias
+     */
+    private static List<String> calls(String prefix, CommandConfig config) {
+        String arguments = config.isRawArgs() ? "a" : arguments(config.getArguments());
+        List<String> calls = new ArrayList<>();
+        for (String name : config.getNameAndAliases())
+            calls.add(prefix + name + (arguments.isEmpty() ? "" : " " + arguments));
+        return calls;
+    }
+
+    private static String arguments(List<CommandArgumentConfig> arguments) {
+        StringBuilder builder = new StringBuilder();
+        for (CommandArgumentConfig argument : arguments) {
+            String value;
+            if (!argument.getArgumentOptions().isEmpty())
+                value = argument.getArgumentOptions().get(0);
+            else if (argument.isParseToDouble())
+                value = "1";
+            else if (argument.getDefaultStringValue() != null && !argument.getDefaultStringValue().isEmpty())
+                value = argument.getDefaultStringValue();
+            else
+                value = "a";
+            if (argument.isInQuotes())
+                value = '"' + value + '"';
+            if (builder.length() > 0)
+                builder.append(' ');
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Nothing is on cooldown and nothing is saved.
+     */
+    private static final class ScratchCooldownStore implements CooldownStore {
+
+        @Override
+        public void open() {
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public long getCooledDownDate(CooldownScope scope, String cmdName, long id) {
+            return -1;
+        }
+
+        @Override
+        public void saveCooldown(CooldownScope scope, String cmdName, long id, long cooledDownAfter) {
+        }
+
+        @Override
+        public long tryAcquire(String cmdName, long userId, long userCooledDownAfter, long guildId,
+                               long guildCooledDownAfter, long now) {
+            return 0;
+        }
+
+        @Override
+        public int deleteOutdated(CooldownScope scope, String cmdName, long now) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.afarion1.command_handler.command;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.ChannelType;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.requests.restaction.MessageAction;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Guild messages for {@link WarmUp}, entities answer only what checks of a call read and default values otherwise.
+ * The author owns the guild, so permission checks pass, and replies are dropped.
+ */
+final class WarmUpEvents {
+
+    private final JDA jda = proxy(JDA.class, Collections.emptyMap());
+    private final AtomicLong messageIds = new AtomicLong();
+    private final Member member;
+    private final TextChannel channel;
+
+    WarmUpEvents(long guildId, long channelId, long userId) {
+        Map<String, Function<Object[], Object>> answers = snowflakeAnswers(guildId);
+        answers.put("getJDA", args -> jda);
+        Guild guild = proxy(Guild.class, answers);
+
+        MessageAction reply = proxy(MessageAction.class, Collections.singletonMap("submit",
+                args -> CompletableFuture.completedFuture(null)));
+        answers = snowflakeAnswers(channelId);
+        answers.put("getJDA", args -> jda);
+        answers.put("getType", args -> ChannelType.TEXT);
+        answers.put("getGuild", args -> guild);
+        answers.put("sendMessage", args -> reply);
+        channel = proxy(TextChannel.class, answers);
+
+        answers = snowflakeAnswers(userId);
+        answers.put("getJDA", args -> jda);
+        answers.put("getAsMention", args -> "<@" + Long.toUnsignedString(userId) + ">");
+        User user = proxy(User.class, answers);
+
+        answers = snowflakeAnswers(userId);
+        answers.put("getJDA", args -> jda);
+        answers.put("getUser", args -> user);
+        answers.put("getGuild", args -> guild);
+        answers.put("getAsMention", args -> user.getAsMention());
+        answers.put("getRoles", args -> Collections.emptyList());
+        answers.put("isOwner", args -> true);
+        member = proxy(Member.class, answers);
+    }
+
+    MessageReceivedEvent message(String content) {
+        long id = messageIds.incrementAndGet();
+        Map<String, Function<Object[], Object>> answers = snowflakeAnswers(id);
+        answers.put("getJDA", args -> jda);
+        answers.put("getContentRaw", args -> content);
+        answers.put("getContentDisplay", args -> content);
+        answers.put("getAuthor", args -> member.getUser());
+        answers.put("getMember", args -> member);
+        answers.put("getChannel", args -> channel);
+        answers.put("getChannelType", args -> ChannelType.TEXT);
+        answers.put("isFromGuild", args -> true);
+        answers.put("getTextChannel", args -> channel);
+        answers.put("getGuild", args -> channel.getGuild());
+        return new MessageReceivedEvent(jda, id, proxy(Message.class, answers));
+    }
+
+    private static Map<String, Function<Object[], Object>> snowflakeAnswers(long id) {
+        Map<String, Function<Object[], Object>> answers = new HashMap<>();
+        answers.put("getIdLong", args -> id);
+        answers.put("getId", args -> Long.toUnsignedString(id));
+        return answers;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> anInterface, Map<String, Function<Object[], Object>> answers) {
+        return (T) Proxy.newProxyInstance(WarmUpEvents.class.getClassLoader(), new Class<?>[]{anInterface},
+                (proxy, method, args) -> {
+                    Function<Object[], Object> answer = answers.get(method.getName());
+                    if (answer != null)
+                        return answer.apply(args);
+                    return defaultValue(proxy, method, args);
+                });
+    }
+
+    private static Object defaultValue(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "WarmUp" + proxy.getClass().getInterfaces()[0].getSimpleName();
+        }
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) return false;
+        if (type == long.class) return 0L;
+        if (type == int.class) return 0;
+        if (type == double.class) return 0d;
+        if (type == float.class) return 0f;
+        if (type == short.class) return (short) 0;
+        if (type == byte.class) return (byte) 0;
+        if (type == char.class) return (char) 0;
+        //fluent rest actions return themselves
+        if (type.isInstance(proxy)) return proxy;
+        return null;
+    }
+}
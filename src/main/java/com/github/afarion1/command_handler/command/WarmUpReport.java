@@ -0,0 +1,56 @@
+package com.github.afarion1.command_handler.command;
+
+/**
+ * Result of the startup warm-up pass. The last iteration taking much less than the first one means the dispatch
+ * path got compiled.
+ * @see CommandHandlerBuilder#enableWarmUp(int, java.time.Duration)
+ */
+public final class WarmUpReport {
+    private final int iterations;
+    private final long invocations;
+    private final long durationNanos;
+    private final long firstIterationNanos;
+    private final long lastIterationNanos;
+
+    WarmUpReport(int iterations, long invocations, long durationNanos, long firstIterationNanos,
+                 long lastIterationNanos) {
+        this.iterations = iterations;
+        this.invocations = invocations;
+        this.durationNanos = durationNanos;
+        this.firstIterationNanos = firstIterationNanos;
+        this.lastIterationNanos = lastIterationNanos;
+    }
+
+    /**
+     * @return amount of completed passes over all the commands, less than configured if the time was up
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return amount of synthetic calls
+     */
+    public long getInvocations() {
+        return invocations;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public long getFirstIterationNanos() {
+        return firstIterationNanos;
+    }
+
+    public long getLastIterationNanos() {
+        return lastIterationNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "WarmUpReport{iterations=" + iterations + ", invocations=" + invocations + ", durationMillis=" +
+                durationNanos / 1_000_000 + ", firstIterationMicros=" + firstIterationNanos / 1_000 +
+                ", lastIterationMicros=" + lastIterationNanos / 1_000 + '}';
+    }
+}
@@ -16,6 +16,7 @@ public final class CommandConfig {
     private final CommandListType listType;
     private final Duration commandCooldown;
     private final List<Permission> discordPerms;
+    private final long discordPermsRaw;
     private final Duration commandGuildCooldown;
     private final List<CommandArgumentConfig> arguments;
     private final boolean executeInGuildOnly;
@@ -26,9 +27,10 @@ public final class CommandConfig {
     private final String commandArgumentsSignature;
     private final boolean cleanCooldownRecords;
     private final Duration cooldownRecordsCleaningPeriod;
+    private final Duration slowInvocationThreshold;
 
 
-    CommandConfig(List<String> nameAndAliases, String desc, String verboseDesc, CommandListType listType, Duration commandCooldown, List<Permission> discordPerms, Duration commandGuildCooldown, List<CommandArgumentConfig> arguments, boolean executeInGuildOnly, boolean rawArgs, String rawArgsName, String rawArgsDesc, boolean executeIfCantCheckCooldown, String commandArgumentsSignature, boolean cleanCooldownRecords, Duration cooldownRecordsCleaningPeriod) {
+    CommandConfig(List<String> nameAndAliases, String desc, String verboseDesc, CommandListType listType, Duration commandCooldown, List<Permission> discordPerms, Duration commandGuildCooldown, List<CommandArgumentConfig> arguments, boolean executeInGuildOnly, boolean rawArgs, String rawArgsName, String rawArgsDesc, boolean executeIfCantCheckCooldown, String commandArgumentsSignature, boolean cleanCooldownRecords, Duration cooldownRecordsCleaningPeriod, Duration slowInvocationThreshold) {
         //keep everything immutable
         this.nameAndAliases = Collections.unmodifiableList(nameAndAliases);
         this.desc = desc;
@@ -36,6 +38,7 @@ public final class CommandConfig {
         this.listType = listType;
         this.commandCooldown = commandCooldown;
         this.discordPerms = Collections.unmodifiableList(discordPerms);
+        this.discordPermsRaw = Permission.getRaw(discordPerms);
         this.commandGuildCooldown = commandGuildCooldown;
         this.arguments = Collections.unmodifiableList(arguments);
         this.executeInGuildOnly = executeInGuildOnly;
@@ -46,6 +49,7 @@ public final class CommandConfig {
         this.commandArgumentsSignature = commandArgumentsSignature;
         this.cleanCooldownRecords = cleanCooldownRecords;
         this.cooldownRecordsCleaningPeriod = cooldownRecordsCleaningPeriod;
+        this.slowInvocationThreshold = slowInvocationThreshold;
     }
 
     public List<String> getNameAndAliases() {
@@ -76,6 +80,13 @@ public final class CommandConfig {
         return discordPerms;
     }
 
+    /**
+     * @return required discord permissions as raw bit mask, see {@link Permission#getRawValue()}
+     */
+    public long getDiscordPermsRaw() {
+        return discordPermsRaw;
+    }
+
     public Duration getGuildCooldown() {
         return commandGuildCooldown;
     }
@@ -116,4 +127,10 @@ public final class CommandConfig {
         return cooldownRecordsCleaningPeriod;
     }
 
+    /**
+     * @return threshold after which a call of the command is considered slow, zero means the handler's default
+     */
+    public Duration getSlowInvocationThreshold() {
+        return slowInvocationThreshold;
+    }
 }
@@ -34,6 +34,7 @@ public final class CommandConfigBuilder {
     private boolean executeIfCantCheckCooldown;
     private boolean cleanCooldownRecords;
     private Duration cooldownRecordsCleaningPeriod;
+    private Duration slowInvocationThreshold;
 
 
     /**
@@ -74,6 +75,7 @@ public final class CommandConfigBuilder {
         this.executeIfCantCheckCooldown = false;
         this.cleanCooldownRecords = true;
         this.cooldownRecordsCleaningPeriod = Duration.ZERO;
+        this.slowInvocationThreshold = Duration.ZERO;
     }
 
     //TODO implement
@@ -141,6 +143,17 @@ public final class CommandConfigBuilder {
         return this;
     }
 
+    /**
+     * Overrides the handler's threshold of slow invocation monitor for the command, for example for commands
+     * which are expected to be slow.
+     * @see com.github.afarion1.command_handler.command.CommandHandlerBuilder#enableSlowInvocationMonitor
+     */
+    public CommandConfigBuilder setSlowInvocationThreshold(Duration threshold) {
+        if (threshold != null && !threshold.isNegative())
+            this.slowInvocationThreshold = threshold;
+        return this;
+    }
+
     /**
      * Adds a Discord permission that will be required in order to execute the command.
      */
@@ -263,7 +276,7 @@ public final class CommandConfigBuilder {
         List<Permission> permissionsCopy = new ArrayList<>(discordPerms);
 
 
-        return new CommandConfig(aliasesCopy, desc, verboseDesc, listType, commandCooldown, permissionsCopy, commandGuildCooldown, finalArgs, executeInGuildOnly, rawArgs, rawArgsName, rawArgsDesc, executeIfCantCheckCooldown, commandArgumentsSignature, cleanCooldownRecords, cooldownRecordsCleaningPeriod);
+        return new CommandConfig(aliasesCopy, desc, verboseDesc, listType, commandCooldown, permissionsCopy, commandGuildCooldown, finalArgs, executeInGuildOnly, rawArgs, rawArgsName, rawArgsDesc, executeIfCantCheckCooldown, commandArgumentsSignature, cleanCooldownRecords, cooldownRecordsCleaningPeriod, slowInvocationThreshold);
     }
 
     private void validate(List<CommandArgumentConfig> args) {
@@ -0,0 +1,69 @@
+package com.github.afarion1.command_handler.cooldown;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of long keys with about 1% false positives at the expected amount of keys. Keys could be added
+ * concurrently, there's no removal, filters are rebuilt instead.
+ */
+final class BloomFilter {
+
+    private static final int HASHES = 7;
+    //bits per key for 1% false positives with 7 hashes
+    private static final int BITS_PER_KEY = 10;
+
+    private final AtomicLongArray words;
+    private final long bits;
+    private final AtomicInteger insertions = new AtomicInteger();
+
+    BloomFilter(int expectedKeys) {
+        long words = Math.max(1, ((long) Math.max(expectedKeys, 1) * BITS_PER_KEY + 63) / 64);
+        this.words = new AtomicLongArray((int) Math.min(words, Integer.MAX_VALUE - 8));
+        this.bits = this.words.length() * 64L;
+    }
+
+    void add(long key) {
+        long hash = mix(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= HASHES; i++) {
+            long bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bits;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask))
+                current = words.get(word);
+        }
+        insertions.incrementAndGet();
+    }
+
+    /**
+     * @return false if the key was definitely never added
+     */
+    boolean mightContain(long key) {
+        long hash = mix(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= HASHES; i++) {
+            long bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bits;
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    int getInsertions() {
+        return insertions.get();
+    }
+
+    //finalizer of murmur3, snowflake ids differ mostly in the low and middle bits
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
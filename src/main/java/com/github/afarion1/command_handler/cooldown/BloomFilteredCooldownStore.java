@@ -0,0 +1,276 @@
+package com.github.afarion1.command_handler.cooldown;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+
+/**
+ * Keeps a Bloom filter of ids with live cooldowns per command and scope in front of another store. Most calls
+ * come from users without a cooldown, their lookups are answered with -1 without touching the store. <br>
+ * A filter is filled from the store on the first lookup of the command and updated on saves. Filters can't forget
+ * keys, so they are rebuilt from the store periodically to drop passed cooldowns. Until a filter is built, or if
+ * the store can't list its cooldowns, lookups go to the store. <br>
+ * Only {@link #getCooledDownDate} and {@link #getCooledDownDates} are filtered. {@link #tryAcquire} and
+ * {@link #tryAcquireAll}, which the handler uses to check and save cooldowns, always go to the store, because a
+ * missing cooldown still has to be saved atomically there. So the filter doesn't speed up the handler's commands,
+ * it's for code looking cooldowns up on its own, like dashboards or commands showing remaining cooldowns.
+ */
+public final class BloomFilteredCooldownStore implements CooldownStore {
+
+    private static final Logger log = LoggerFactory.getLogger(BloomFilteredCooldownStore.class);
+
+    private final CooldownStore delegate;
+    private final int expectedKeys;
+    private final Duration rebuildInterval;
+    //scope -> command name -> filter
+    private final Map<CooldownScope, Map<String, BloomFilter>> filters = new EnumMap<>(CooldownScope.class);
+    //filters being filled, saves go to both
+    private final Map<CooldownScope, Map<String, BloomFilter>> building = new EnumMap<>(CooldownScope.class);
+    //commands whose filters couldn't be built, retried by the rebuild thread instead of lookups
+    private final Map<CooldownScope, Set<String>> failed = new EnumMap<>(CooldownScope.class);
+    //saves hold the read lock until they reach the store, so a scan started under the write lock sees all of them
+    private final ReadWriteLock saveLock = new ReentrantReadWriteLock();
+    private final LongAdder skippedLookups = new LongAdder();
+    private volatile boolean unsupported = false;
+    private ScheduledExecutorService rebuilder = null;
+
+    /**
+     * @param delegate store of the cooldowns, should support {@link CooldownStore#forEachLiveCooldown}
+     * @param expectedKeys expected amount of live cooldowns of a command, filters grow if there are more
+     * @param rebuildInterval how often filters are rebuilt to forget passed cooldowns
+     */
+    public BloomFilteredCooldownStore(CooldownStore delegate, int expectedKeys, Duration rebuildInterval) {
+        if (expectedKeys < 1)
+            throw new IllegalArgumentException("Expected amount of keys should be positive");
+        if (rebuildInterval.isNegative() || rebuildInterval.isZero())
+            throw new IllegalArgumentException("Rebuild interval should be positive");
+        this.delegate = delegate;
+        this.expectedKeys = expectedKeys;
+        this.rebuildInterval = rebuildInterval;
+        for (CooldownScope scope : CooldownScope.values()) {
+            filters.put(scope, new ConcurrentHashMap<>());
+            building.put(scope, new ConcurrentHashMap<>());
+            failed.put(scope, ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    @Override
+    public synchronized void open() throws CooldownStoreException {
+        delegate.open();
+        if (rebuilder != null)
+            return;
+        long intervalMillis = rebuildInterval.toMillis();
+        rebuilder = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Cooldown filter rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rebuilder.scheduleWithFixedDelay(this::rebuildAll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (rebuilder != null) {
+            rebuilder.shutdown();
+            rebuilder = null;
+        }
+        delegate.close();
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return delegate.isAvailable();
+    }
+
+    /**
+     * @return amount of lookups answered by the filters without the store
+     */
+    public long getSkippedLookups() {
+        return skippedLookups.sum();
+    }
+
+    @Override
+    public long getCooledDownDate(CooldownScope scope, String cmdName, long id) throws CooldownStoreException {
+        BloomFilter filter = filter(scope, cmdName);
+        if (filter != null && !filter.mightContain(id)) {
+            skippedLookups.increment();
+            return -1;
+        }
+        return delegate.getCooledDownDate(scope, cmdName, id);
+    }
+
+    @Override
+    public long[] getCooledDownDates(CooldownScope scope, String cmdName, long[] ids) throws CooldownStoreException {
+        BloomFilter filter = filter(scope, cmdName);
+        if (filter == null)
+            return delegate.getCooledDownDates(scope, cmdName, ids);
+
+        long[] dates = new long[ids.length];
+        Arrays.fill(dates, -1);
+        long[] maybe = new long[ids.length];
+        int[] positions = new int[ids.length];
+        int maybeCount = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (filter.mightContain(ids[i])) {
+                maybe[maybeCount] = ids[i];
+                positions[maybeCount++] = i;
+            }
+        }
+        skippedLookups.add(ids.length - maybeCount);
+        if (maybeCount == 0)
+            return dates;
+
+        long[] found = delegate.getCooledDownDates(scope, cmdName, Arrays.copyOf(maybe, maybeCount));
+        for (int i = 0; i < maybeCount; i++)
+            dates[positions[i]] = found[i];
+        return dates;
+    }
+
+    @Override
+    public void saveCooldown(CooldownScope scope, String cmdName, long id, long cooledDownAfter)
+            throws CooldownStoreException {
+        saveLock.readLock().lock();
+        try {
+            add(scope, cmdName, id);
+            delegate.saveCooldown(scope, cmdName, id, cooledDownAfter);
+        } finally {
+            saveLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void saveCooldowns(CooldownScope scope, String cmdName, long[] ids, long[] cooledDownAfter)
+            throws CooldownStoreException {
+        saveLock.readLock().lock();
+        try {
+            for (long id : ids)
+                add(scope, cmdName, id);
+            delegate.saveCooldowns(scope, cmdName, ids, cooledDownAfter);
+        } finally {
+            saveLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long tryAcquire(String cmdName, long userId, long userCooledDownAfter, long guildId,
+                           long guildCooledDownAfter, long now) throws CooldownStoreException {
+        saveLock.readLock().lock();
+        try {
+            //added even if the acquire fails, a few extra keys only cost false positives
+            if (userCooledDownAfter != -1)
+                add(CooldownScope.USER, cmdName, userId);
+            if (guildCooledDownAfter != -1)
+                add(CooldownScope.GUILD, cmdName, guildId);
+            return delegate.tryAcquire(cmdName, userId, userCooledDownAfter, guildId, guildCooledDownAfter, now);
+        } finally {
+            saveLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long[] tryAcquireAll(String cmdName, long[] userIds, long[] userCooledDownAfter, long[] guildIds,
+                                long[] guildCooledDownAfter, long now) throws CooldownStoreException {
+        saveLock.readLock().lock();
+        try {
+            for (int i = 0; i < userIds.length; i++) {
+                if (userCooledDownAfter[i] != -1)
+                    add(CooldownScope.USER, cmdName, userIds[i]);
+                if (guildCooledDownAfter[i] != -1)
+                    add(CooldownScope.GUILD, cmdName, guildIds[i]);
+            }
+            return delegate.tryAcquireAll(cmdName, userIds, userCooledDownAfter, guildIds, guildCooledDownAfter, now);
+        } finally {
+            saveLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEachLiveCooldown(CooldownScope scope, String cmdName, long now, LongConsumer consumer)
+            throws CooldownStoreException {
+        delegate.forEachLiveCooldown(scope, cmdName, now, consumer);
+    }
+
+    @Override
+    public int deleteOutdated(CooldownScope scope, String cmdName, long now) throws CooldownStoreException {
+        return delegate.deleteOutdated(scope, cmdName, now);
+    }
+
+    private void add(CooldownScope scope, String cmdName, long id) {
+        //the filter being built is checked first: once it's published it's removed from there after being put
+        //to filters, so the key reaches it either way
+        BloomFilter pending = building.get(scope).get(cmdName);
+        if (pending != null)
+            pending.add(id);
+        BloomFilter filter = filters.get(scope).get(cmdName);
+        if (filter != null && filter != pending)
+            filter.add(id);
+    }
+
+    /**
+     * @return null if there's no filter of the command yet and it couldn't be built now
+     */
+    private BloomFilter filter(CooldownScope scope, String cmdName) {
+        BloomFilter filter = filters.get(scope).get(cmdName);
+        if (filter == null && !unsupported && !failed.get(scope).contains(cmdName))
+            filter = build(scope, cmdName, expectedKeys);
+        return filter;
+    }
+
+    /**
+     * Fills a new filter from the store and publishes it. Does nothing if the filter is already being built.
+     * @return the new filter, null if it wasn't built
+     */
+    private BloomFilter build(CooldownScope scope, String cmdName, int size) {
+        BloomFilter fresh = new BloomFilter(size);
+        saveLock.writeLock().lock();
+        try {
+            if (building.get(scope).putIfAbsent(cmdName, fresh) != null)
+                return null;
+        } finally {
+            saveLock.writeLock().unlock();
+        }
+
+        try {
+            delegate.forEachLiveCooldown(scope, cmdName, System.currentTimeMillis(), fresh::add);
+            filters.get(scope).put(cmdName, fresh);
+            failed.get(scope).remove(cmdName);
+            log.debug("Built {} cooldown filter of {} with {} keys", scope, cmdName, fresh.getInsertions());
+            return fresh;
+        } catch (UnsupportedOperationException e) {
+            unsupported = true;
+            log.warn("{}, lookups go to the store", e.getMessage());
+            return null;
+        } catch (CooldownStoreException | RuntimeException e) {
+            failed.get(scope).add(cmdName);
+            log.warn("Unable to build {} cooldown filter of {}, lookups go to the store", scope, cmdName, e);
+            return null;
+        } finally {
+            building.get(scope).remove(cmdName);
+        }
+    }
+
+    /**
+     * Runs in the rebuild thread.
+     */
+    private void rebuildAll() {
+        for (CooldownScope scope : CooldownScope.values()) {
+            for (Map.Entry<String, BloomFilter> entry : filters.get(scope).entrySet())
+                build(scope, entry.getKey(), Math.max(expectedKeys, entry.getValue().getInsertions()));
+            for (String cmdName : failed.get(scope))
+                build(scope, cmdName, expectedKeys);
+        }
+    }
+}
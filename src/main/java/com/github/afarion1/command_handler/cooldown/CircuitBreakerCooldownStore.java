@@ -0,0 +1,374 @@
+package com.github.afarion1.command_handler.cooldown;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongMaps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Circuit breaker in front of another store. After a few failed or slow calls in a row the circuit opens and
+ * cooldowns are kept in heap, so commands keep working at full speed while the store is broken. A background
+ * thread probes the store and, once it answers, replays the cooldowns saved meanwhile and closes the circuit. <br>
+ * While the circuit is open, cooldowns saved in the store before are not seen, so users on cooldown could call
+ * their command once more. On replay the later of the two cooldowns wins. <br>
+ * Store that couldn't be opened starts with the open circuit instead of rejecting commands with cooldowns.
+ */
+public final class CircuitBreakerCooldownStore implements CooldownStore {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreakerCooldownStore.class);
+
+    public enum State {
+        /**
+         * Calls go to the store.
+         */
+        CLOSED,
+        /**
+         * The store failed, calls go to the heap until the next probe.
+         */
+        OPEN,
+        /**
+         * The store is being probed and the buffered cooldowns are being replayed, calls still go to the heap.
+         */
+        HALF_OPEN
+    }
+
+    private final CooldownStore delegate;
+    private final MemoryCooldownStore memory = new MemoryCooldownStore();
+    private final int failureThreshold;
+    private final long slowCallNanos;
+    private final Duration probeInterval;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicLong trips = new AtomicLong();
+    private final LongAdder fallbackCalls = new LongAdder();
+    private final List<Consumer<State>> stateListeners = new CopyOnWriteArrayList<>();
+    private volatile State state = State.CLOSED;
+    //any command seen by the store, probes look it up to check the store
+    private volatile String probeCommand = null;
+    private ScheduledExecutorService prober = null;
+
+    /**
+     * @param delegate the store to protect
+     * @param failureThreshold amount of failed or slow calls in a row which opens the circuit
+     * @param slowCallThreshold calls taking longer are counted as failed, though their results are used
+     * @param probeInterval how often the store is probed while the circuit is open
+     */
+    public CircuitBreakerCooldownStore(CooldownStore delegate, int failureThreshold, Duration slowCallThreshold,
+                                       Duration probeInterval) {
+        if (failureThreshold < 1)
+            throw new IllegalArgumentException("Failure threshold should be positive");
+        if (slowCallThreshold.isNegative() || slowCallThreshold.isZero())
+            throw new IllegalArgumentException("Slow call threshold should be positive");
+        if (probeInterval.isNegative() || probeInterval.isZero())
+            throw new IllegalArgumentException("Probe interval should be positive");
+        this.delegate = delegate;
+        this.failureThreshold = failureThreshold;
+        this.slowCallNanos = slowCallThreshold.toNanos();
+        this.probeInterval = probeInterval;
+    }
+
+    /**
+     * Never fails, if the store can't be opened the circuit opens.
+     */
+    @Override
+    public synchronized void open() {
+        try {
+            delegate.open();
+        } catch (CooldownStoreException | RuntimeException e) {
+            log.error("Unable to open cooldown store, keeping cooldowns in memory until it recovers", e);
+            trip();
+        }
+        if (prober != null)
+            return;
+        long intervalMillis = probeInterval.toMillis();
+        prober = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Cooldown store prober");
+            thread.setDaemon(true);
+            return thread;
+        });
+        prober.scheduleWithFixedDelay(this::probe, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Replays the buffered cooldowns if the store is available and closes it.
+     */
+    @Override
+    public synchronized void close() {
+        if (prober != null) {
+            prober.shutdown();
+            prober = null;
+        }
+        if (!memory.isEmpty() && delegate.isAvailable()) {
+            try {
+                replay();
+            } catch (CooldownStoreException | RuntimeException e) {
+                log.warn("Unable to replay {} buffered cooldowns on close, they are lost", memory.size(), e);
+            }
+        }
+        delegate.close();
+    }
+
+    /**
+     * @return true, cooldowns are kept in memory if the store is unavailable
+     */
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return amount of times the circuit has opened
+     */
+    public long getTrips() {
+        return trips.get();
+    }
+
+    /**
+     * @return amount of calls served from memory
+     */
+    public long getFallbackCalls() {
+        return fallbackCalls.sum();
+    }
+
+    /**
+     * @return amount of cooldowns kept in memory until they are replayed to the store
+     */
+    public int getBufferedCooldowns() {
+        return memory.size();
+    }
+
+    /**
+     * @param listener called with the new state on every change, in the thread which caused it
+     */
+    public void addStateListener(Consumer<State> listener) {
+        stateListeners.add(listener);
+    }
+
+    @Override
+    public long getCooledDownDate(CooldownScope scope, String cmdName, long id) throws CooldownStoreException {
+        if (probeCommand == null)
+            probeCommand = cmdName;
+        long stored = call(store -> store.getCooledDownDate(scope, cmdName, id));
+        //cooldowns saved in memory after a failure are seen until they are replayed
+        return memory.isEmpty() ? stored : Math.max(stored, memory.getCooledDownDate(scope, cmdName, id));
+    }
+
+    @Override
+    public long[] getCooledDownDates(CooldownScope scope, String cmdName, long[] ids) throws CooldownStoreException {
+        if (probeCommand == null)
+            probeCommand = cmdName;
+        long[] dates = call(store -> store.getCooledDownDates(scope, cmdName, ids));
+        if (!memory.isEmpty()) {
+            for (int i = 0; i < ids.length; i++)
+                dates[i] = Math.max(dates[i], memory.getCooledDownDate(scope, cmdName, ids[i]));
+        }
+        return dates;
+    }
+
+    @Override
+    public void saveCooldown(CooldownScope scope, String cmdName, long id, long cooledDownAfter)
+            throws CooldownStoreException {
+        call(store -> {
+            store.saveCooldown(scope, cmdName, id, cooledDownAfter);
+            return null;
+        });
+    }
+
+    @Override
+    public void saveCooldowns(CooldownScope scope, String cmdName, long[] ids, long[] cooledDownAfter)
+            throws CooldownStoreException {
+        call(store -> {
+            store.saveCooldowns(scope, cmdName, ids, cooledDownAfter);
+            return null;
+        });
+    }
+
+    @Override
+    public long tryAcquire(String cmdName, long userId, long userCooledDownAfter, long guildId,
+                           long guildCooledDownAfter, long now) throws CooldownStoreException {
+        if (probeCommand == null)
+            probeCommand = cmdName;
+        if (state == State.CLOSED && !memory.isEmpty()) {
+            long remaining = Math.max(
+                    userCooledDownAfter == -1 ? 0 : memory.getCooledDownDate(CooldownScope.USER, cmdName, userId) - now,
+                    guildCooledDownAfter == -1 ? 0 : memory.getCooledDownDate(CooldownScope.GUILD, cmdName, guildId) - now);
+            if (remaining > 0)
+                return remaining;
+        }
+        return call(store -> store.tryAcquire(cmdName, userId, userCooledDownAfter, guildId, guildCooledDownAfter,
+                now));
+    }
+
+    @Override
+    public long[] tryAcquireAll(String cmdName, long[] userIds, long[] userCooledDownAfter, long[] guildIds,
+                                long[] guildCooledDownAfter, long now) throws CooldownStoreException {
+        //cooldowns kept in memory after single failures have to be checked per call
+        if (state == State.CLOSED && !memory.isEmpty())
+            return CooldownStore.super.tryAcquireAll(cmdName, userIds, userCooledDownAfter, guildIds,
+                    guildCooledDownAfter, now);
+        if (probeCommand == null)
+            probeCommand = cmdName;
+        return call(store -> store.tryAcquireAll(cmdName, userIds, userCooledDownAfter, guildIds,
+                guildCooledDownAfter, now));
+    }
+
+    @Override
+    public void forEachLiveCooldown(CooldownScope scope, String cmdName, long now, LongConsumer consumer)
+            throws CooldownStoreException {
+        call(store -> {
+            store.forEachLiveCooldown(scope, cmdName, now, consumer);
+            return null;
+        });
+        if (state == State.CLOSED)
+            memory.forEachLiveCooldown(scope, cmdName, now, consumer);
+    }
+
+    @Override
+    public int deleteOutdated(CooldownScope scope, String cmdName, long now) throws CooldownStoreException {
+        int deleted = call(store -> store.deleteOutdated(scope, cmdName, now));
+        if (state == State.CLOSED)
+            deleted += memory.deleteOutdated(scope, cmdName, now);
+        return deleted;
+    }
+
+    /**
+     * Runs the call on the store while the circuit is closed, on the memory if it's open or the call fails.
+     */
+    private <T> T call(StoreCall<T> call) throws CooldownStoreException {
+        if (state == State.CLOSED) {
+            long start = System.nanoTime();
+            try {
+                T result = call.call(delegate);
+                if (System.nanoTime() - start > slowCallNanos)
+                    recordFailure();
+                else
+                    consecutiveFailures.set(0);
+                return result;
+            } catch (CooldownStoreException | RuntimeException e) {
+                log.warn("Cooldown store call failed, using memory instead", e);
+                recordFailure();
+            }
+        }
+        fallbackCalls.increment();
+        return call.call(memory);
+    }
+
+    private void recordFailure() {
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold)
+            trip();
+    }
+
+    private synchronized void trip() {
+        if (state == State.OPEN)
+            return;
+        trips.incrementAndGet();
+        log.warn("Cooldown store circuit is open, keeping cooldowns in memory");
+        setState(State.OPEN);
+    }
+
+    /**
+     * Runs in the prober thread. Also replays cooldowns saved in memory after single failures while the circuit
+     * is closed.
+     */
+    private synchronized void probe() {
+        if (state == State.CLOSED && memory.isEmpty())
+            return;
+        if (state == State.OPEN)
+            setState(State.HALF_OPEN);
+        try {
+            if (!delegate.isAvailable())
+                delegate.open();
+            long start = System.nanoTime();
+            String command = probeCommand;
+            if (command != null)
+                delegate.getCooledDownDate(CooldownScope.USER, command, 0);
+            if (System.nanoTime() - start > slowCallNanos)
+                throw new CooldownStoreException("Cooldown store is still slow");
+            replay();
+            if (state != State.CLOSED) {
+                consecutiveFailures.set(0);
+                log.info("Cooldown store has recovered, closing the circuit, {} cooldowns are left in memory",
+                        memory.size());
+                setState(State.CLOSED);
+            }
+        } catch (CooldownStoreException | RuntimeException e) {
+            log.debug("Cooldown store probe failed", e);
+            if (state == State.HALF_OPEN)
+                setState(State.OPEN);
+        }
+    }
+
+    /**
+     * Saves the cooldowns buffered in memory to the store, keeping the later one if the store has the key too.
+     * Cooldowns saved to memory during the replay stay there for the next one.
+     */
+    private void replay() throws CooldownStoreException {
+        long now = System.currentTimeMillis();
+        int replayed = 0;
+        for (CooldownScope scope : CooldownScope.values()) {
+            for (Map.Entry<String, Long2LongMap> entry : memory.snapshot(scope).entrySet()) {
+                Long2LongMap buffered = entry.getValue();
+                long[] ids = new long[buffered.size()];
+                long[] dates = new long[ids.length];
+                int count = 0;
+                for (Long2LongMap.Entry cooldown : Long2LongMaps.fastIterable(buffered)) {
+                    if (cooldown.getLongValue() > now) {
+                        ids[count] = cooldown.getLongKey();
+                        dates[count++] = cooldown.getLongValue();
+                    }
+                }
+                if (count > 0) {
+                    long[] stored = delegate.getCooledDownDates(scope, entry.getKey(),
+                            Arrays.copyOf(ids, count));
+                    int newer = 0;
+                    for (int i = 0; i < count; i++) {
+                        if (dates[i] > stored[i]) {
+                            ids[newer] = ids[i];
+                            dates[newer++] = dates[i];
+                        }
+                    }
+                    if (newer > 0)
+                        delegate.saveCooldowns(scope, entry.getKey(), Arrays.copyOf(ids, newer),
+                                Arrays.copyOf(dates, newer));
+                    replayed += newer;
+                }
+                memory.removeIfUnchanged(scope, entry.getKey(), buffered);
+            }
+        }
+        if (replayed > 0)
+            log.info("Replayed {} cooldowns buffered in memory to the store", replayed);
+    }
+
+    private void setState(State state) {
+        this.state = state;
+        for (Consumer<State> listener : stateListeners) {
+            try {
+                listener.accept(state);
+            } catch (RuntimeException e) {
+                log.warn("Circuit state listener failed", e);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface StoreCall<T> {
+        T call(CooldownStore store) throws CooldownStoreException;
+    }
+}
@@ -0,0 +1,9 @@
+package com.github.afarion1.command_handler.cooldown;
+
+/**
+ * What a cooldown is kept for, the id stored with it is a snowflake of the user or the guild.
+ */
+public enum CooldownScope {
+    USER,
+    GUILD
+}
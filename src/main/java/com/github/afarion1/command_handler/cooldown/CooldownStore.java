@@ -0,0 +1,119 @@
+package com.github.afarion1.command_handler.cooldown;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Storage of command cooldowns: the time after which a command could be called again, per command and user or
+ * guild. Times are in milliseconds since the epoch, -1 means there's no record. <br>
+ * Implementations must be thread safe. A store could be shared by several handlers, so {@link #open()} could be
+ * called more than once.
+ * @see SqliteCooldownStore
+ * @see MappedCooldownStore
+ */
+public interface CooldownStore {
+
+    /**
+     * Called by the handler on start, before any other method.
+     * @throws CooldownStoreException if the store can't be used, the handler then treats it as unavailable
+     */
+    void open() throws CooldownStoreException;
+
+    /**
+     * Releases resources of the store, it shouldn't be used afterwards.
+     */
+    default void close() {
+    }
+
+    /**
+     * @return false if the store couldn't be opened, commands with cooldowns are then rejected unless
+     * {@link com.github.afarion1.command_handler.command.config.CommandConfigBuilder#setExecuteIfCantCheckOrSaveCooldown(boolean)}
+     * is set
+     */
+    boolean isAvailable();
+
+    /**
+     * @return cooledDownAfter of the user or guild, -1 if there's no record
+     */
+    long getCooledDownDate(CooldownScope scope, String cmdName, long id) throws CooldownStoreException;
+
+    /**
+     * Looks up several ids at once, implementations should override it if they can do it in fewer round trips.
+     * @return cooledDownAfter of each id, -1 for the ones without a record
+     */
+    default long[] getCooledDownDates(CooldownScope scope, String cmdName, long[] ids) throws CooldownStoreException {
+        long[] dates = new long[ids.length];
+        for (int i = 0; i < ids.length; i++)
+            dates[i] = getCooledDownDate(scope, cmdName, ids[i]);
+        return dates;
+    }
+
+    void saveCooldown(CooldownScope scope, String cmdName, long id, long cooledDownAfter)
+            throws CooldownStoreException;
+
+    /**
+     * Saves several cooldowns at once, implementations should override it if they can do it in fewer round trips.
+     * @param cooledDownAfter cooldown of each id
+     */
+    default void saveCooldowns(CooldownScope scope, String cmdName, long[] ids, long[] cooledDownAfter)
+            throws CooldownStoreException {
+        for (int i = 0; i < ids.length; i++)
+            saveCooldown(scope, cmdName, ids[i], cooledDownAfter[i]);
+    }
+
+    /**
+     * Atomically checks and saves user and guild cooldowns of a call: the new cooldowns are saved only if the
+     * previous ones have passed, if any of them hasn't, nothing is saved.
+     * @param userCooledDownAfter new cooldown of the user, -1 if the command has no user cooldown
+     * @param guildCooledDownAfter new cooldown of the guild, -1 if the command has no guild cooldown
+     * @param now current time in milliseconds
+     * @return 0 if the cooldowns were acquired, otherwise milliseconds until the blocking cooldown passes
+     */
+    long tryAcquire(String cmdName, long userId, long userCooledDownAfter, long guildId, long guildCooledDownAfter,
+                    long now) throws CooldownStoreException;
+
+    /**
+     * Acquires cooldowns of several calls of the command at once, each one like {@link #tryAcquire}. Calls are
+     * acquired in order, so a later call of the same user or guild sees the cooldowns of the earlier ones.
+     * Implementations should override it if they can do it in fewer round trips.
+     * @param userIds author of each call
+     * @param userCooledDownAfter new cooldown of each user, -1 for calls without user cooldown
+     * @param guildIds guild of each call, ignored for calls without guild cooldown
+     * @param guildCooledDownAfter new cooldown of each guild, -1 for calls without guild cooldown
+     * @param now current time in milliseconds
+     * @return 0 for each acquired call, otherwise milliseconds until its blocking cooldown passes
+     */
+    default long[] tryAcquireAll(String cmdName, long[] userIds, long[] userCooledDownAfter, long[] guildIds,
+                                 long[] guildCooledDownAfter, long now) throws CooldownStoreException {
+        long[] remaining = new long[userIds.length];
+        for (int i = 0; i < userIds.length; i++)
+            remaining[i] = tryAcquire(cmdName, userIds[i], userCooledDownAfter[i], guildIds[i],
+                    guildCooledDownAfter[i], now);
+        return remaining;
+    }
+
+    /**
+     * Passes ids of the users or guilds whose cooldowns of the command haven't passed yet to the consumer. Used to
+     * fill caches in front of the store, see {@link BloomFilteredCooldownStore}.
+     * @throws UnsupportedOperationException if the store can't list its cooldowns, the default
+     */
+    default void forEachLiveCooldown(CooldownScope scope, String cmdName, long now, LongConsumer consumer)
+            throws CooldownStoreException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " can't list its cooldowns");
+    }
+
+    /**
+     * Deletes records of the command which have passed.
+     * @return amount of deleted records
+     */
+    int deleteOutdated(CooldownScope scope, String cmdName, long now) throws CooldownStoreException;
+
+    /**
+     * Returns a view keeping cooldowns apart from the other namespaces, so handlers sharing the store don't share
+     * cooldowns of commands with the same names. The default prefixes command names with the namespace. <br>
+     * Closing the view doesn't close this store, it should be closed once all the views are done.
+     * @param namespace letters, digits and underscores not starting with a digit, empty for the default namespace
+     */
+    default CooldownStore withNamespace(String namespace) {
+        return new NamespacedCooldownStore(this, namespace);
+    }
+}
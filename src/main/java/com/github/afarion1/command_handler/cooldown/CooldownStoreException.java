@@ -0,0 +1,17 @@
+package com.github.afarion1.command_handler.cooldown;
+
+/**
+ * Thrown when a {@link CooldownStore} is unable to read or save cooldowns.
+ */
+public class CooldownStoreException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public CooldownStoreException(String message) {
+        super(message);
+    }
+
+    public CooldownStoreException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,554 @@
+package com.github.afarion1.command_handler.cooldown;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongMaps;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Cooldown storage in SQLite. All the threads using a database share one connection, so the methods are
+ * synchronized and transactions of different threads don't interleave. <br>
+ * Several handlers could keep cooldowns in one database, each in its own set of tables, see {@link Namespace}. <br>
+ * Schema version is kept in {@code PRAGMA user_version}. Version 2 stores command names once, in the Command
+ * table, and cooldown tables are keyed by (cmdId, snowflake) without rowid. Databases created by older versions
+ * (version 0, cooldowns keyed by cmdName) are migrated on {@link #open(Namespace)}.
+ */
+final class Database {
+
+    private static final Logger log = LoggerFactory.getLogger(Database.class);
+    //SQLite limits amount of parameters of a statement to 999
+    private static final int MAX_IDS_PER_QUERY = 500;
+    private static final int SCHEMA_VERSION = 2;
+
+    private final String url;
+    private final List<Namespace> namespaces = new ArrayList<>();
+    private Connection con = null;
+
+    /**
+     * @param url JDBC url of SQLite database, for example {@code jdbc:sqlite::memory:} for benchmarks
+     */
+    Database(String url) {
+        this.url = url;
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    /**
+     * Connects if there's no connection yet and creates or migrates the tables of the namespace.
+     * @return false if there's no connection or the tables couldn't be created or migrated
+     */
+    synchronized boolean open(Namespace ns) {
+        if (con == null) {
+            log.trace("Setting up SQLite...");
+            try {
+                con = DriverManager.getConnection(url);
+                log.trace("Connection with SQLite was established.");
+            } catch (SQLException e) {
+                con = null;
+                log.error("Unable to establish a connection with SQLite.", e);
+                return false;
+            }
+        }
+        if (!namespaces.contains(ns))
+            namespaces.add(ns);
+        if (!ns.migrated) {
+            try {
+                migrate(ns);
+                ns.migrated = true;
+            } catch (SQLException e) {
+                log.error("Unable to create or migrate tables.", e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void migrate(Namespace ns) throws SQLException {
+        int version;
+        try (Statement statement = con.createStatement();
+             ResultSet rs = statement.executeQuery("PRAGMA user_version")) {
+            version = rs.next() ? rs.getInt(1) : 0;
+        }
+        if (version > SCHEMA_VERSION)
+            throw new SQLException("DB schema version " + version + " is newer than supported " + SCHEMA_VERSION);
+        //the version is shared by the namespaces, tables of a new namespace are created in an up to date database
+        if (version == SCHEMA_VERSION && tableExists(ns.commandTable)) {
+            log.trace("DB schema of namespace \"{}\" is up to date, version {}", ns.name, version);
+            return;
+        }
+
+        //legacy tables were never namespaced
+        boolean legacy = ns.name.isEmpty() && tableExists("UserCommandCooldown");
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+        try (Statement statement = con.createStatement()) {
+            String[] schema = {
+                    "CREATE TABLE IF NOT EXISTS " + ns.commandTable + "(\n" +
+                            "\tcmdId INTEGER PRIMARY KEY,\n" +
+                            "\tcmdName VARCHAR(255) NOT NULL UNIQUE\n" +
+                            ");",
+                    "CREATE TABLE IF NOT EXISTS " + ns.userTable + "(\n" +
+                            "\tcmdId INTEGER NOT NULL,\n" +
+                            "\tuserId INTEGER NOT NULL,\n" +
+                            "\tcooledDownAfter INTEGER NOT NULL,\n" +
+                            "\tPRIMARY KEY(cmdId, userId)\n" +
+                            ") WITHOUT ROWID;",
+                    "CREATE TABLE IF NOT EXISTS " + ns.guildTable + "(\n" +
+                            "\tcmdId INTEGER NOT NULL,\n" +
+                            "\tguildId INTEGER NOT NULL,\n" +
+                            "\tcooledDownAfter INTEGER NOT NULL,\n" +
+                            "\tPRIMARY KEY(cmdId, guildId)\n" +
+                            ") WITHOUT ROWID;",
+                    //for deletion of outdated records
+                    "CREATE INDEX IF NOT EXISTS " + ns.userTable + "Expiry ON " + ns.userTable +
+                            "(cmdId, cooledDownAfter);",
+                    "CREATE INDEX IF NOT EXISTS " + ns.guildTable + "Expiry ON " + ns.guildTable +
+                            "(cmdId, cooledDownAfter);"
+            };
+            for (String sql : schema) {
+                log.trace("Executing query \n{}", sql);
+                statement.execute(sql);
+            }
+
+            if (legacy) {
+                log.info("Migrating cooldown tables to schema version {}", SCHEMA_VERSION);
+                String[] migration = {
+                        "INSERT OR IGNORE INTO Command(cmdName) SELECT cmdName FROM UserCommandCooldown " +
+                                "UNION SELECT cmdName FROM GuildCommandCooldown",
+                        "INSERT OR REPLACE INTO UserCooldown(cmdId, userId, cooledDownAfter) " +
+                                "SELECT c.cmdId, u.userId, u.cooledDownAfter FROM UserCommandCooldown u " +
+                                "JOIN Command c ON c.cmdName = u.cmdName",
+                        "INSERT OR REPLACE INTO GuildCooldown(cmdId, guildId, cooledDownAfter) " +
+                                "SELECT c.cmdId, g.guildId, g.cooledDownAfter FROM GuildCommandCooldown g " +
+                                "JOIN Command c ON c.cmdName = g.cmdName",
+                        "DROP TABLE UserCommandCooldown",
+                        "DROP TABLE GuildCommandCooldown"
+                };
+                for (String sql : migration) {
+                    log.trace("Executing query \n{}", sql);
+                    statement.execute(sql);
+                }
+            }
+            statement.execute("PRAGMA user_version = " + SCHEMA_VERSION);
+            con.commit();
+        } catch (SQLException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+
+        if (legacy) {
+            //return pages of the dropped tables to the file system
+            try (Statement statement = con.createStatement()) {
+                statement.execute("VACUUM");
+            }
+            log.info("Migrated cooldown tables to schema version {}", SCHEMA_VERSION);
+        } else {
+            log.trace("Created tables of namespace \"{}\", schema version {}", ns.name, SCHEMA_VERSION);
+        }
+    }
+
+    private boolean tableExists(String table) throws SQLException {
+        try (PreparedStatement pst = con.prepareStatement("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?")) {
+            pst.setString(1, table);
+            try (ResultSet rs = pst.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Should be called outside of transactions, a rolled back id would stay cached.
+     * @return id of the command, added to the Command table if absent
+     */
+    private int commandId(Namespace ns, String cmdName) throws SQLException {
+        if (con == null)
+            throw new SQLException("No connection with SQLite");
+        int id = ns.commandIds.getInt(cmdName);
+        if (id != -1)
+            return id;
+        try (PreparedStatement pst = con.prepareStatement("INSERT OR IGNORE INTO " + ns.commandTable +
+                "(cmdName) VALUES(?)")) {
+            pst.setString(1, cmdName);
+            pst.executeUpdate();
+        }
+        try (PreparedStatement pst = con.prepareStatement("SELECT cmdId FROM " + ns.commandTable +
+                " WHERE cmdName = ?")) {
+            pst.setString(1, cmdName);
+            try (ResultSet rs = pst.executeQuery()) {
+                if (!rs.next())
+                    throw new SQLException("Unable to find id of command " + cmdName);
+                id = rs.getInt(1);
+            }
+        }
+        ns.commandIds.put(cmdName, id);
+        return id;
+    }
+
+    /**
+     * @return amount of deleted records
+     */
+    synchronized int deleteOutdatedUserCooldowns(Namespace ns, String cmdName, long now) throws SQLException {
+        return deleteOutdated("DELETE FROM " + ns.userTable + " WHERE cmdId = ? AND cooledDownAfter <= ?", ns,
+                cmdName, now);
+    }
+
+    /**
+     * @return amount of deleted records
+     */
+    synchronized int deleteOutdatedGuildCooldowns(Namespace ns, String cmdName, long now) throws SQLException {
+        return deleteOutdated("DELETE FROM " + ns.guildTable + " WHERE cmdId = ? AND cooledDownAfter <= ?", ns,
+                cmdName, now);
+    }
+
+    private int deleteOutdated(String sql, Namespace ns, String cmdName, long now) throws SQLException {
+        int cmdId = commandId(ns, cmdName);
+        try (PreparedStatement pst = con.prepareStatement(sql)) {
+            pst.setInt(1, cmdId);
+            pst.setLong(2, now);
+            log.trace("Executing query {} with parameters {}, {}", sql, cmdName, now);
+            return pst.executeUpdate();
+        }
+    }
+
+    /**
+     * Passes ids of the users with live cooldowns of the command to the consumer.
+     */
+    synchronized void forEachLiveUserCooldown(Namespace ns, String cmdName, long now, LongConsumer consumer)
+            throws SQLException {
+        forEachLive("SELECT userId FROM " + ns.userTable + " WHERE cmdId = ? AND cooledDownAfter > ?", ns,
+                cmdName, now, consumer);
+    }
+
+    /**
+     * Passes ids of the guilds with live cooldowns of the command to the consumer.
+     */
+    synchronized void forEachLiveGuildCooldown(Namespace ns, String cmdName, long now, LongConsumer consumer)
+            throws SQLException {
+        forEachLive("SELECT guildId FROM " + ns.guildTable + " WHERE cmdId = ? AND cooledDownAfter > ?", ns,
+                cmdName, now, consumer);
+    }
+
+    private void forEachLive(String sql, Namespace ns, String cmdName, long now, LongConsumer consumer)
+            throws SQLException {
+        int cmdId = commandId(ns, cmdName);
+        try (PreparedStatement pst = con.prepareStatement(sql)) {
+            pst.setInt(1, cmdId);
+            pst.setLong(2, now);
+            log.trace("Executing query {} with parameters {}, {}", sql, cmdName, now);
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next())
+                    consumer.accept(rs.getLong(1));
+            }
+        }
+    }
+
+    synchronized void saveCommandUserCooldown(Namespace ns, long userId, String cmdName, long cooledDownAfter)
+            throws SQLException {
+        saveCooldown("REPLACE INTO " + ns.userTable + "(cmdId, userId, cooledDownAfter) VALUES(?,?,?)", ns,
+                userId, cmdName, cooledDownAfter);
+    }
+
+    synchronized void saveCommandGuildCooldown(Namespace ns, long guildId, String cmdName, long cooledDownAfter)
+            throws SQLException {
+        saveCooldown("REPLACE INTO " + ns.guildTable + "(cmdId, guildId, cooledDownAfter) VALUES(?,?,?)", ns,
+                guildId, cmdName, cooledDownAfter);
+    }
+
+    private void saveCooldown(String sql, Namespace ns, long id, String cmdName, long cooledDownAfter)
+            throws SQLException {
+        log.trace("Executing query {} with params {} {} {}", sql, cmdName, id, cooledDownAfter);
+        int cmdId = commandId(ns, cmdName);
+        try (PreparedStatement pst = con.prepareStatement(sql)) {
+            pst.setInt(1, cmdId);
+            pst.setLong(2, id);
+            pst.setLong(3, cooledDownAfter);
+            pst.executeUpdate();
+        }
+    }
+
+    synchronized long getUserCooledDownDate(Namespace ns, long userId, String cmdName) throws SQLException {
+        String sql = "SELECT cooledDownAfter FROM " + ns.userTable + " WHERE userId = ? AND cmdId = ?";
+        log.trace("Executing query {} with params {} {}",sql , userId, cmdName);
+        return getCooledDownDate(sql, userId, commandId(ns, cmdName));
+    }
+
+    synchronized long getGuildCooledDownDate(Namespace ns, long guildId, String cmdName) throws SQLException {
+        String sql = "SELECT cooledDownAfter FROM " + ns.guildTable + " WHERE guildId = ? AND cmdId = ?";
+        log.trace("Executing query {} with params {} {}",sql , guildId, cmdName);
+        return getCooledDownDate(sql, guildId, commandId(ns, cmdName));
+    }
+
+    private long getCooledDownDate(String sql, long id, int cmdId) throws SQLException {
+        try (PreparedStatement pst = con.prepareStatement(sql)) {
+            pst.setLong(1, id);
+            pst.setInt(2, cmdId);
+            try (ResultSet rs = pst.executeQuery()) {
+                if (rs.next()) return rs.getLong("cooledDownAfter");
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Atomically checks and saves user and guild cooldowns of a call in one transaction: a cooldown is saved only if
+     * the previous one has passed, if any of them hasn't, nothing is saved.
+     * @param userCooledDownAfter new cooldown of the user, -1 if the command has no user cooldown
+     * @param guildCooledDownAfter new cooldown of the guild, -1 if the command has no guild cooldown
+     * @param now current time in milliseconds
+     * @return 0 if the cooldowns were acquired, otherwise milliseconds until the blocking cooldown passes
+     */
+    synchronized long tryAcquireCooldowns(Namespace ns, String cmdName, long userId, long userCooledDownAfter,
+                                          long guildId, long guildCooledDownAfter, long now) throws SQLException {
+        //nothing to acquire, the connection isn't needed
+        if (userCooledDownAfter == -1 && guildCooledDownAfter == -1)
+            return 0;
+        int cmdId = commandId(ns, cmdName);
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+        try {
+            long remaining = 0;
+            if (userCooledDownAfter != -1)
+                remaining = tryAcquireCooldown(ns.userTable, "userId", cmdId, userId,
+                        userCooledDownAfter, now);
+            if (remaining == 0 && guildCooledDownAfter != -1)
+                remaining = tryAcquireCooldown(ns.guildTable, "guildId", cmdId, guildId,
+                        guildCooledDownAfter, now);
+            if (remaining == 0)
+                con.commit();
+            else
+                con.rollback();
+            return remaining;
+        } catch (SQLException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Acquires cooldowns of several calls of the command like {@link #tryAcquireCooldowns} in one transaction.
+     * A call blocked by its guild cooldown is rolled back to its savepoint, so it doesn't keep its user cooldown.
+     * @return milliseconds until the blocking cooldown of each call passes, 0 for the acquired ones
+     */
+    synchronized long[] tryAcquireCooldowns(Namespace ns, String cmdName, long[] userIds, long[] userCooledDownAfter,
+                                            long[] guildIds, long[] guildCooledDownAfter, long now)
+            throws SQLException {
+        long[] remaining = new long[userIds.length];
+        if (!hasAnyCooldown(userCooledDownAfter, guildCooledDownAfter))
+            return remaining;
+        int cmdId = commandId(ns, cmdName);
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+        try {
+            for (int i = 0; i < userIds.length; i++) {
+                boolean both = userCooledDownAfter[i] != -1 && guildCooledDownAfter[i] != -1;
+                Savepoint savepoint = both ? con.setSavepoint() : null;
+                if (userCooledDownAfter[i] != -1)
+                    remaining[i] = tryAcquireCooldown(ns.userTable, "userId", cmdId, userIds[i],
+                            userCooledDownAfter[i], now);
+                if (remaining[i] == 0 && guildCooledDownAfter[i] != -1)
+                    remaining[i] = tryAcquireCooldown(ns.guildTable, "guildId", cmdId, guildIds[i],
+                            guildCooledDownAfter[i], now);
+                if (savepoint != null) {
+                    if (remaining[i] != 0)
+                        con.rollback(savepoint);
+                    con.releaseSavepoint(savepoint);
+                }
+            }
+            con.commit();
+            return remaining;
+        } catch (SQLException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static boolean hasAnyCooldown(long[] userCooledDownAfter, long[] guildCooledDownAfter) {
+        for (int i = 0; i < userCooledDownAfter.length; i++) {
+            if (userCooledDownAfter[i] != -1 || guildCooledDownAfter[i] != -1)
+                return true;
+        }
+        return false;
+    }
+
+    private long tryAcquireCooldown(String table, String idColumn, int cmdId, long id,
+                                    long cooledDownAfter, long now) throws SQLException {
+        //the conditional upsert doesn't touch the row if the cooldown hasn't passed
+        String sql = "INSERT INTO " + table + "(cmdId, " + idColumn + ", cooledDownAfter) VALUES(?,?,?)\n" +
+                "ON CONFLICT(cmdId, " + idColumn + ") DO UPDATE SET cooledDownAfter = excluded.cooledDownAfter\n" +
+                "WHERE cooledDownAfter <= ?";
+        log.trace("Executing query {} with params {} {} {} {}", sql, cmdId, id, cooledDownAfter, now);
+        try (PreparedStatement pst = con.prepareStatement(sql)) {
+            pst.setInt(1, cmdId);
+            pst.setLong(2, id);
+            pst.setLong(3, cooledDownAfter);
+            pst.setLong(4, now);
+            if (pst.executeUpdate() > 0)
+                return 0;
+        }
+
+        String select = "SELECT cooledDownAfter FROM " + table + " WHERE " + idColumn + " = ? AND cmdId = ?";
+        return Math.max(1, getCooledDownDate(select, id, cmdId) - now);
+    }
+
+    /**
+     * @return user id -> cooledDownAfter of the users having a cooldown record, -1 for the others
+     */
+    Long2LongMap getUserCooledDownDates(Namespace ns, LongCollection userIds, String cmdName) throws SQLException {
+        return getCooledDownDates(ns, ns.userTable, "userId", userIds, cmdName);
+    }
+
+    /**
+     * @return guild id -> cooledDownAfter of the guilds having a cooldown record, -1 for the others
+     */
+    Long2LongMap getGuildCooledDownDates(Namespace ns, LongCollection guildIds, String cmdName) throws SQLException {
+        return getCooledDownDates(ns, ns.guildTable, "guildId", guildIds, cmdName);
+    }
+
+    /**
+     * Saves cooldowns of several users in one transaction.
+     * @param cooledDownAfter user id -> cooledDownAfter
+     */
+    void saveCommandUserCooldowns(Namespace ns, Long2LongMap cooledDownAfter, String cmdName) throws SQLException {
+        saveCooldowns(ns, ns.userTable, "userId", cooledDownAfter, cmdName);
+    }
+
+    /**
+     * Saves cooldowns of several guilds in one transaction.
+     * @param cooledDownAfter guild id -> cooledDownAfter
+     */
+    void saveCommandGuildCooldowns(Namespace ns, Long2LongMap cooledDownAfter, String cmdName) throws SQLException {
+        saveCooldowns(ns, ns.guildTable, "guildId", cooledDownAfter, cmdName);
+    }
+
+    private synchronized Long2LongMap getCooledDownDates(Namespace ns, String table, String idColumn,
+                                                         LongCollection ids, String cmdName) throws SQLException {
+        int cmdId = commandId(ns, cmdName);
+        Long2LongMap dates = new Long2LongOpenHashMap(ids.size());
+        dates.defaultReturnValue(-1);
+        long[] chunk = new long[Math.min(ids.size(), MAX_IDS_PER_QUERY)];
+        LongIterator it = ids.iterator();
+        while (it.hasNext()) {
+            int size = 0;
+            while (size < chunk.length && it.hasNext())
+                chunk[size++] = it.nextLong();
+
+            StringBuilder sql = new StringBuilder("SELECT ").append(idColumn).append(", cooledDownAfter FROM ")
+                    .append(table).append(" WHERE cmdId = ? AND ").append(idColumn).append(" IN (?");
+            for (int i = 1; i < size; i++)
+                sql.append(",?");
+            sql.append(')');
+            log.trace("Executing query {} with {} ids for {}", sql, size, cmdName);
+            try (PreparedStatement pst = con.prepareStatement(sql.toString())) {
+                pst.setInt(1, cmdId);
+                for (int i = 0; i < size; i++)
+                    pst.setLong(i + 2, chunk[i]);
+                try (ResultSet rs = pst.executeQuery()) {
+                    while (rs.next())
+                        dates.put(rs.getLong(1), rs.getLong(2));
+                }
+            }
+        }
+        return dates;
+    }
+
+    private synchronized void saveCooldowns(Namespace ns, String table, String idColumn, Long2LongMap cooledDownAfter,
+                                            String cmdName) throws SQLException {
+        String sql = "REPLACE INTO " + table + "(cmdId, " + idColumn + ", cooledDownAfter) VALUES(?,?,?)";
+        log.trace("Executing query {} with {} rows for {}", sql, cooledDownAfter.size(), cmdName);
+        int cmdId = commandId(ns, cmdName);
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+        try (PreparedStatement pst = con.prepareStatement(sql)) {
+            for (Long2LongMap.Entry entry : Long2LongMaps.fastIterable(cooledDownAfter)) {
+                pst.setInt(1, cmdId);
+                pst.setLong(2, entry.getLongKey());
+                pst.setLong(3, entry.getLongValue());
+                pst.addBatch();
+            }
+            pst.executeBatch();
+            con.commit();
+        } catch (SQLException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+    }
+
+    synchronized boolean noConnection() {
+        return con == null;
+    }
+
+    synchronized void close() {
+        if (con != null) {
+            try {
+                con.close();
+            } catch (SQLException e) {
+                log.error("Unable to close the connection with SQLite.", e);
+            }
+            con = null;
+        }
+        //the database could be reopened after it was replaced
+        for (Namespace ns : namespaces) {
+            ns.commandIds.clear();
+            ns.migrated = false;
+        }
+        namespaces.clear();
+    }
+
+    /**
+     * Set of cooldown tables in a database. The default namespace uses the tables without prefix, others prefix
+     * them with the namespace's name, so handlers sharing a database don't share cooldowns of the commands with the
+     * same names.
+     */
+    static final class Namespace {
+        //empty or an identifier
+        static final String NAME_PATTERN = "([A-Za-z_]\\w*)?";
+        private final String name;
+        private final String commandTable;
+        private final String userTable;
+        private final String guildTable;
+        //command name -> cmdId, ids are never reused
+        private final Object2IntMap<String> commandIds = new Object2IntOpenHashMap<>();
+        //guarded by the database
+        private boolean migrated = false;
+
+        /**
+         * @param name letters, digits and underscores not starting with a digit, so table names stay plain SQL
+         *             identifiers, empty for the default namespace
+         */
+        Namespace(String name) {
+            if (!name.matches(NAME_PATTERN))
+                throw new IllegalArgumentException("Namespace should start with a letter or underscore and only " +
+                        "contain letters, digits and underscores");
+            this.name = name;
+            String prefix = name.isEmpty() ? "" : name + '_';
+            this.commandTable = prefix + "Command";
+            this.userTable = prefix + "UserCooldown";
+            this.guildTable = prefix + "GuildCooldown";
+            commandIds.defaultReturnValue(-1);
+        }
+
+        String getName() {
+            return name;
+        }
+    }
+}
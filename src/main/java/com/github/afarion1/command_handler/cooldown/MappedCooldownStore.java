@@ -0,0 +1,479 @@
+package com.github.afarion1.command_handler.cooldown;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongMaps;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMaps;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps cooldowns in a memory-mapped append-only file of fixed-size records, with an index in memory. Checks are
+ * answered from the index and saves are a write to the mapped memory, so there are no queries or system calls on
+ * the hot path. <br>
+ * The index is rebuilt from the file on start, records after the first corrupted one (for example a write torn by
+ * a crash) are dropped. The file is flushed to disk and compacted, rewritten with the live cooldowns only, by a
+ * background thread. Cooldowns written since the last flush survive a crash of the JVM, but could be lost if the
+ * whole machine goes down. <br>
+ * The log is used by one store at a time: a lock file next to it is held while the store is open, opening a log
+ * locked by another process or store fails.
+ */
+public final class MappedCooldownStore implements CooldownStore {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedCooldownStore.class);
+
+    private static final int MAGIC = 0x43484344;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    //cmdHash, id, cooledDownAfter, scope as int, crc of the previous bytes
+    private static final int RECORD_SIZE = 32;
+    private static final int CRC_OFFSET = 28;
+    private static final int INITIAL_CAPACITY = HEADER_SIZE + RECORD_SIZE * 32 * 1024;
+    //stale records tolerated on top of twice the live ones before compacting
+    private static final int COMPACTION_SLACK = 4096;
+    //lock files held by the stores of this JVM, closing a second channel of a lock file could release its lock
+    private static final Set<Path> LOCKED_FILES = ConcurrentHashMap.newKeySet();
+
+    private final Path file;
+    private final Duration maintenanceInterval;
+    //scope -> command hash -> id -> cooledDownAfter
+    private final Map<CooldownScope, Long2ObjectMap<Long2LongMap>> index = new EnumMap<>(CooldownScope.class);
+    private final Object2LongMap<String> commandHashes = new Object2LongOpenHashMap<>();
+    private final byte[] scratch = new byte[CRC_OFFSET];
+    private final CRC32 crc = new CRC32();
+
+    private Path lockFile = null;
+    private FileChannel lockChannel = null;
+    private FileChannel channel = null;
+    private MappedByteBuffer buffer = null;
+    private int writePosition = HEADER_SIZE;
+    private boolean dirty = false;
+    private ScheduledExecutorService maintenance = null;
+
+    /**
+     * Flushes and compacts the file every 30 seconds.
+     * @param file path of the log, created if it doesn't exist
+     */
+    public MappedCooldownStore(Path file) {
+        this(file, Duration.ofSeconds(30));
+    }
+
+    /**
+     * @param file path of the log, created if it doesn't exist
+     * @param maintenanceInterval how often the file is flushed to disk and checked for compaction
+     */
+    public MappedCooldownStore(Path file, Duration maintenanceInterval) {
+        if (maintenanceInterval.isNegative() || maintenanceInterval.isZero())
+            throw new IllegalArgumentException("Maintenance interval should be positive");
+        this.file = file;
+        this.maintenanceInterval = maintenanceInterval;
+        for (CooldownScope scope : CooldownScope.values())
+            index.put(scope, new Long2ObjectOpenHashMap<>());
+    }
+
+    @Override
+    public synchronized void open() throws CooldownStoreException {
+        if (channel != null)
+            return;
+        try {
+            lock();
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            boolean created = channel.size() == 0;
+            map(Math.max(channel.size(), INITIAL_CAPACITY));
+            if (created) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, FORMAT_VERSION);
+            } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+                throw new CooldownStoreException(file + " is not a cooldown log of supported version");
+            }
+            replay();
+        } catch (IOException | CooldownStoreException e) {
+            closeChannel();
+            unlock();
+            if (e instanceof CooldownStoreException)
+                throw (CooldownStoreException) e;
+            throw new CooldownStoreException("Unable to open " + file, e);
+        }
+
+        long intervalMillis = maintenanceInterval.toMillis();
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Cooldown store maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::maintain, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        log.info("Opened cooldown log {} with {} live cooldowns", file, liveCount());
+    }
+
+    @Override
+    public synchronized void close() {
+        if (maintenance != null) {
+            maintenance.shutdown();
+            maintenance = null;
+        }
+        if (buffer != null)
+            buffer.force();
+        closeChannel();
+        unlock();
+    }
+
+    @Override
+    public synchronized boolean isAvailable() {
+        return channel != null;
+    }
+
+    @Override
+    public synchronized long getCooledDownDate(CooldownScope scope, String cmdName, long id)
+            throws CooldownStoreException {
+        checkOpen();
+        return get(scope, hash(cmdName), id);
+    }
+
+    @Override
+    public synchronized long[] getCooledDownDates(CooldownScope scope, String cmdName, long[] ids)
+            throws CooldownStoreException {
+        checkOpen();
+        long cmdHash = hash(cmdName);
+        long[] dates = new long[ids.length];
+        for (int i = 0; i < ids.length; i++)
+            dates[i] = get(scope, cmdHash, ids[i]);
+        return dates;
+    }
+
+    @Override
+    public synchronized void saveCooldown(CooldownScope scope, String cmdName, long id, long cooledDownAfter)
+            throws CooldownStoreException {
+        checkOpen();
+        put(scope, hash(cmdName), id, cooledDownAfter);
+    }
+
+    @Override
+    public synchronized void saveCooldowns(CooldownScope scope, String cmdName, long[] ids, long[] cooledDownAfter)
+            throws CooldownStoreException {
+        checkOpen();
+        long cmdHash = hash(cmdName);
+        for (int i = 0; i < ids.length; i++)
+            put(scope, cmdHash, ids[i], cooledDownAfter[i]);
+    }
+
+    @Override
+    public synchronized long tryAcquire(String cmdName, long userId, long userCooledDownAfter, long guildId,
+                                        long guildCooledDownAfter, long now) throws CooldownStoreException {
+        checkOpen();
+        long cmdHash = hash(cmdName);
+        if (userCooledDownAfter != -1) {
+            long remaining = get(CooldownScope.USER, cmdHash, userId) - now;
+            if (remaining > 0)
+                return remaining;
+        }
+        if (guildCooledDownAfter != -1) {
+            long remaining = get(CooldownScope.GUILD, cmdHash, guildId) - now;
+            if (remaining > 0)
+                return remaining;
+        }
+        if (userCooledDownAfter != -1)
+            put(CooldownScope.USER, cmdHash, userId, userCooledDownAfter);
+        if (guildCooledDownAfter != -1)
+            put(CooldownScope.GUILD, cmdHash, guildId, guildCooledDownAfter);
+        return 0;
+    }
+
+    @Override
+    public synchronized void forEachLiveCooldown(CooldownScope scope, String cmdName, long now, LongConsumer consumer)
+            throws CooldownStoreException {
+        checkOpen();
+        Long2LongMap cooldowns = index.get(scope).get(hash(cmdName));
+        if (cooldowns == null)
+            return;
+        for (Long2LongMap.Entry cooldown : Long2LongMaps.fastIterable(cooldowns))
+            if (cooldown.getLongValue() > now)
+                consumer.accept(cooldown.getLongKey());
+    }
+
+    /**
+     * Removes the outdated cooldowns from the index only, their records are dropped by the next compaction.
+     */
+    @Override
+    public synchronized int deleteOutdated(CooldownScope scope, String cmdName, long now)
+            throws CooldownStoreException {
+        checkOpen();
+        Long2LongMap cooldowns = index.get(scope).get(hash(cmdName));
+        if (cooldowns == null)
+            return 0;
+        return removeOutdated(cooldowns, now);
+    }
+
+    private void checkOpen() throws CooldownStoreException {
+        if (channel == null)
+            throw new CooldownStoreException("Cooldown log " + file + " is not open");
+    }
+
+    private long get(CooldownScope scope, long cmdHash, long id) {
+        Long2LongMap cooldowns = index.get(scope).get(cmdHash);
+        return cooldowns == null ? -1 : cooldowns.get(id);
+    }
+
+    private void put(CooldownScope scope, long cmdHash, long id, long cooledDownAfter)
+            throws CooldownStoreException {
+        if (writePosition + RECORD_SIZE > buffer.capacity()) {
+            try {
+                map((long) buffer.capacity() * 2);
+            } catch (IOException e) {
+                throw new CooldownStoreException("Unable to grow " + file, e);
+            }
+        }
+        writeRecord(buffer, writePosition, scope, cmdHash, id, cooledDownAfter);
+        writePosition += RECORD_SIZE;
+        dirty = true;
+        cooldowns(scope, cmdHash).put(id, cooledDownAfter);
+    }
+
+    private Long2LongMap cooldowns(CooldownScope scope, long cmdHash) {
+        Long2ObjectMap<Long2LongMap> commands = index.get(scope);
+        Long2LongMap cooldowns = commands.get(cmdHash);
+        if (cooldowns == null) {
+            cooldowns = new Long2LongOpenHashMap();
+            cooldowns.defaultReturnValue(-1);
+            commands.put(cmdHash, cooldowns);
+        }
+        return cooldowns;
+    }
+
+    private void writeRecord(ByteBuffer target, int position, CooldownScope scope, long cmdHash, long id,
+                             long cooledDownAfter) {
+        ByteBuffer record = ByteBuffer.wrap(scratch);
+        record.putLong(0, cmdHash);
+        record.putLong(8, id);
+        record.putLong(16, cooledDownAfter);
+        record.putInt(24, scope.ordinal() + 1);
+        crc.reset();
+        crc.update(scratch, 0, CRC_OFFSET);
+        //the crc goes last, so a torn write never looks valid
+        for (int i = 0; i < CRC_OFFSET; i++)
+            target.put(position + i, scratch[i]);
+        target.putInt(position + CRC_OFFSET, (int) crc.getValue());
+    }
+
+    /**
+     * Rebuilds the index from the records, the last record of a key wins.
+     */
+    private void replay() {
+        long now = System.currentTimeMillis();
+        CooldownScope[] scopes = CooldownScope.values();
+        int position = HEADER_SIZE;
+        int stale = 0;
+        while (position + RECORD_SIZE <= buffer.capacity()) {
+            int storedCrc = buffer.getInt(position + CRC_OFFSET);
+            int scope = buffer.getInt(position + 24);
+            if (scope == 0 && storedCrc == 0)
+                break;
+            for (int i = 0; i < CRC_OFFSET; i++)
+                scratch[i] = buffer.get(position + i);
+            crc.reset();
+            crc.update(scratch, 0, CRC_OFFSET);
+            if ((int) crc.getValue() != storedCrc || scope < 1 || scope > scopes.length) {
+                log.warn("Cooldown log {} is corrupted at offset {}, dropping the following records", file, position);
+                for (int i = position; i < buffer.capacity(); i++)
+                    buffer.put(i, (byte) 0);
+                dirty = true;
+                break;
+            }
+            long cmdHash = buffer.getLong(position);
+            long id = buffer.getLong(position + 8);
+            long cooledDownAfter = buffer.getLong(position + 16);
+            Long2LongMap cooldowns = cooldowns(scopes[scope - 1], cmdHash);
+            if (cooledDownAfter > now) {
+                if (cooldowns.put(id, cooledDownAfter) != -1)
+                    stale++;
+            } else {
+                cooldowns.remove(id);
+                stale++;
+            }
+            position += RECORD_SIZE;
+        }
+        writePosition = position;
+        log.debug("Replayed {} records of {}, {} of them are stale", (position - HEADER_SIZE) / RECORD_SIZE, file, stale);
+    }
+
+    /**
+     * Runs in the maintenance thread.
+     */
+    private synchronized void maintain() {
+        if (channel == null)
+            return;
+        int records = (writePosition - HEADER_SIZE) / RECORD_SIZE;
+        if (records > 2L * liveCount() + COMPACTION_SLACK) {
+            compact();
+        } else if (dirty) {
+            buffer.force();
+            dirty = false;
+        }
+    }
+
+    /**
+     * Rewrites the live cooldowns to a new file and replaces the log with it. The old log is kept if anything
+     * fails.
+     */
+    private void compact() {
+        long now = System.currentTimeMillis();
+        int recordsBefore = (writePosition - HEADER_SIZE) / RECORD_SIZE;
+        for (Long2ObjectMap<Long2LongMap> commands : index.values())
+            for (Long2LongMap cooldowns : commands.values())
+                removeOutdated(cooldowns, now);
+        int live = liveCount();
+
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + live * RECORD_SIZE);
+        out.putInt(0, MAGIC);
+        out.putInt(4, FORMAT_VERSION);
+        int position = HEADER_SIZE;
+        CooldownScope[] scopes = CooldownScope.values();
+        for (CooldownScope scope : scopes) {
+            for (Long2ObjectMap.Entry<Long2LongMap> command : Long2ObjectMaps.fastIterable(index.get(scope))) {
+                for (Long2LongMap.Entry cooldown : Long2LongMaps.fastIterable(command.getValue())) {
+                    writeRecord(out, position, scope, command.getLongKey(), cooldown.getLongKey(),
+                            cooldown.getLongValue());
+                    position += RECORD_SIZE;
+                }
+            }
+        }
+
+        try (FileChannel compactedChannel = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining())
+                compactedChannel.write(out);
+            compactedChannel.force(true);
+        } catch (IOException e) {
+            log.warn("Unable to write compacted cooldown log {}, keeping the old one", compacted, e);
+            return;
+        }
+
+        try {
+            Files.move(compacted, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("Unable to replace cooldown log {} with the compacted one, keeping the old one", file, e);
+            return;
+        }
+
+        closeChannel();
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            map(Math.max(INITIAL_CAPACITY, Integer.highestOneBit(position) * 2L));
+        } catch (IOException e) {
+            closeChannel();
+            log.error("Unable to reopen compacted cooldown log {}, cooldowns are unavailable", file, e);
+            return;
+        }
+        writePosition = position;
+        dirty = false;
+        log.debug("Compacted cooldown log {} from {} to {} records", file, recordsBefore, live);
+    }
+
+    private void map(long capacity) throws IOException {
+        if (capacity > Integer.MAX_VALUE)
+            throw new IOException("Cooldown log can't be larger than 2GB");
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * Locks a file next to the log rather than the log itself, compaction replaces the log.
+     */
+    private void lock() throws IOException, CooldownStoreException {
+        Path path = file.resolveSibling(file.getFileName() + ".lock").toAbsolutePath().normalize();
+        if (!LOCKED_FILES.add(path))
+            throw new CooldownStoreException(file + " is used by another cooldown store");
+        lockFile = path;
+        lockChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (lockChannel.tryLock() == null)
+            throw new CooldownStoreException(file + " is used by another process");
+    }
+
+    //closing the channel releases the lock
+    private void unlock() {
+        if (lockChannel != null) {
+            try {
+                lockChannel.close();
+            } catch (IOException e) {
+                log.warn("Unable to release lock of cooldown log {}", file, e);
+            }
+            lockChannel = null;
+        }
+        if (lockFile != null) {
+            LOCKED_FILES.remove(lockFile);
+            lockFile = null;
+        }
+    }
+
+    private void closeChannel() {
+        buffer = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Unable to close cooldown log {}", file, e);
+            }
+            channel = null;
+        }
+    }
+
+    private static int removeOutdated(Long2LongMap cooldowns, long now) {
+        int removed = 0;
+        for (LongIterator iterator = cooldowns.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.nextLong() <= now) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private int liveCount() {
+        int live = 0;
+        for (Long2ObjectMap<Long2LongMap> commands : index.values())
+            for (Long2LongMap cooldowns : commands.values())
+                live += cooldowns.size();
+        return live;
+    }
+
+    /**
+     * 64 bit FNV-1a of the command name, records store it instead of the name to stay fixed-size.
+     */
+    private long hash(String cmdName) {
+        long cached = commandHashes.getOrDefault(cmdName, 0);
+        if (cached != 0)
+            return cached;
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : cmdName.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        commandHashes.put(cmdName, hash);
+        return hash;
+    }
+}
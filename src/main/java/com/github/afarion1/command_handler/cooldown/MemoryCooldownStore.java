@@ -0,0 +1,136 @@
+package com.github.afarion1.command_handler.cooldown;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongMaps;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * Keeps cooldowns in heap only, used as the fallback of {@link CircuitBreakerCooldownStore} while the real store
+ * is unavailable.
+ */
+final class MemoryCooldownStore implements CooldownStore {
+
+    //scope -> command name -> id -> cooledDownAfter
+    private final Map<CooldownScope, Map<String, Long2LongMap>> cooldowns = new EnumMap<>(CooldownScope.class);
+    private volatile int size = 0;
+
+    MemoryCooldownStore() {
+        for (CooldownScope scope : CooldownScope.values())
+            cooldowns.put(scope, new HashMap<>());
+    }
+
+    @Override
+    public void open() {
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized long getCooledDownDate(CooldownScope scope, String cmdName, long id) {
+        Long2LongMap command = cooldowns.get(scope).get(cmdName);
+        return command == null ? -1 : command.get(id);
+    }
+
+    @Override
+    public synchronized void saveCooldown(CooldownScope scope, String cmdName, long id, long cooledDownAfter) {
+        if (command(scope, cmdName).put(id, cooledDownAfter) == -1)
+            size++;
+    }
+
+    @Override
+    public synchronized long tryAcquire(String cmdName, long userId, long userCooledDownAfter, long guildId,
+                                        long guildCooledDownAfter, long now) {
+        if (userCooledDownAfter != -1) {
+            long remaining = getCooledDownDate(CooldownScope.USER, cmdName, userId) - now;
+            if (remaining > 0)
+                return remaining;
+        }
+        if (guildCooledDownAfter != -1) {
+            long remaining = getCooledDownDate(CooldownScope.GUILD, cmdName, guildId) - now;
+            if (remaining > 0)
+                return remaining;
+        }
+        if (userCooledDownAfter != -1)
+            saveCooldown(CooldownScope.USER, cmdName, userId, userCooledDownAfter);
+        if (guildCooledDownAfter != -1)
+            saveCooldown(CooldownScope.GUILD, cmdName, guildId, guildCooledDownAfter);
+        return 0;
+    }
+
+    @Override
+    public synchronized void forEachLiveCooldown(CooldownScope scope, String cmdName, long now,
+                                                 LongConsumer consumer) {
+        Long2LongMap command = cooldowns.get(scope).get(cmdName);
+        if (command == null)
+            return;
+        for (Long2LongMap.Entry cooldown : Long2LongMaps.fastIterable(command))
+            if (cooldown.getLongValue() > now)
+                consumer.accept(cooldown.getLongKey());
+    }
+
+    @Override
+    public synchronized int deleteOutdated(CooldownScope scope, String cmdName, long now) {
+        Long2LongMap command = cooldowns.get(scope).get(cmdName);
+        if (command == null)
+            return 0;
+        int removed = 0;
+        for (LongIterator iterator = command.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.nextLong() <= now) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        size -= removed;
+        return removed;
+    }
+
+    /**
+     * @return copy of the cooldowns of the scope by command name
+     */
+    synchronized Map<String, Long2LongMap> snapshot(CooldownScope scope) {
+        Map<String, Long2LongMap> copy = new HashMap<>();
+        for (Map.Entry<String, Long2LongMap> entry : cooldowns.get(scope).entrySet())
+            if (!entry.getValue().isEmpty())
+                copy.put(entry.getKey(), new Long2LongOpenHashMap(entry.getValue()));
+        return copy;
+    }
+
+    /**
+     * Removes the cooldowns which weren't saved again since the snapshot.
+     */
+    synchronized void removeIfUnchanged(CooldownScope scope, String cmdName, Long2LongMap snapshot) {
+        Long2LongMap command = cooldowns.get(scope).get(cmdName);
+        if (command == null)
+            return;
+        for (Long2LongMap.Entry cooldown : Long2LongMaps.fastIterable(snapshot))
+            if (command.remove(cooldown.getLongKey(), cooldown.getLongValue()))
+                size--;
+    }
+
+    private Long2LongMap command(CooldownScope scope, String cmdName) {
+        Long2LongMap command = cooldowns.get(scope).get(cmdName);
+        if (command == null) {
+            command = new Long2LongOpenHashMap();
+            command.defaultReturnValue(-1);
+            cooldowns.get(scope).put(cmdName, command);
+        }
+        return command;
+    }
+}
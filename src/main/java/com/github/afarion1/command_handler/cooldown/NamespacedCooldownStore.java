@@ -0,0 +1,79 @@
+package com.github.afarion1.command_handler.cooldown;
+
+import java.util.function.LongConsumer;
+
+/**
+ * View of a shared store prefixing command names with a namespace.
+ * @see CooldownStore#withNamespace(String)
+ */
+final class NamespacedCooldownStore implements CooldownStore {
+
+    private final CooldownStore delegate;
+    private final String prefix;
+
+    NamespacedCooldownStore(CooldownStore delegate, String namespace) {
+        if (!namespace.matches(Database.Namespace.NAME_PATTERN))
+            throw new IllegalArgumentException("Namespace should start with a letter or underscore and only contain " +
+                    "letters, digits and underscores");
+        this.delegate = delegate;
+        //namespaces can't contain ':', so namespace "a" with command "b_c" doesn't meet "a_b" with "c"
+        this.prefix = namespace.isEmpty() ? "" : namespace + ':';
+    }
+
+    @Override
+    public void open() throws CooldownStoreException {
+        delegate.open();
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return delegate.isAvailable();
+    }
+
+    @Override
+    public long getCooledDownDate(CooldownScope scope, String cmdName, long id) throws CooldownStoreException {
+        return delegate.getCooledDownDate(scope, prefix + cmdName, id);
+    }
+
+    @Override
+    public long[] getCooledDownDates(CooldownScope scope, String cmdName, long[] ids) throws CooldownStoreException {
+        return delegate.getCooledDownDates(scope, prefix + cmdName, ids);
+    }
+
+    @Override
+    public void saveCooldown(CooldownScope scope, String cmdName, long id, long cooledDownAfter)
+            throws CooldownStoreException {
+        delegate.saveCooldown(scope, prefix + cmdName, id, cooledDownAfter);
+    }
+
+    @Override
+    public void saveCooldowns(CooldownScope scope, String cmdName, long[] ids, long[] cooledDownAfter)
+            throws CooldownStoreException {
+        delegate.saveCooldowns(scope, prefix + cmdName, ids, cooledDownAfter);
+    }
+
+    @Override
+    public long tryAcquire(String cmdName, long userId, long userCooledDownAfter, long guildId,
+                           long guildCooledDownAfter, long now) throws CooldownStoreException {
+        return delegate.tryAcquire(prefix + cmdName, userId, userCooledDownAfter, guildId, guildCooledDownAfter,
+                now);
+    }
+
+    @Override
+    public long[] tryAcquireAll(String cmdName, long[] userIds, long[] userCooledDownAfter, long[] guildIds,
+                                long[] guildCooledDownAfter, long now) throws CooldownStoreException {
+        return delegate.tryAcquireAll(prefix + cmdName, userIds, userCooledDownAfter, guildIds, guildCooledDownAfter,
+                now);
+    }
+
+    @Override
+    public void forEachLiveCooldown(CooldownScope scope, String cmdName, long now, LongConsumer consumer)
+            throws CooldownStoreException {
+        delegate.forEachLiveCooldown(scope, prefix + cmdName, now, consumer);
+    }
+
+    @Override
+    public int deleteOutdated(CooldownScope scope, String cmdName, long now) throws CooldownStoreException {
+        return delegate.deleteOutdated(scope, prefix + cmdName, now);
+    }
+}
@@ -0,0 +1,180 @@
+package com.github.afarion1.command_handler.cooldown;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.sql.SQLException;
+import java.util.function.LongConsumer;
+
+/**
+ * Keeps cooldowns in SQLite, the default store. Each instance has its own connection, stores of
+ * {@link #withNamespace(String)} share it and keep cooldowns in their own tables.
+ */
+public final class SqliteCooldownStore implements CooldownStore {
+
+    private final Database database;
+    private final Database.Namespace ns;
+    //views created by withNamespace don't close the shared connection
+    private final boolean ownsDatabase;
+
+    /**
+     * Uses command_handler.db in the working directory.
+     */
+    public SqliteCooldownStore() {
+        this("jdbc:sqlite:command_handler.db");
+    }
+
+    /**
+     * @param url JDBC url of SQLite database, for example {@code jdbc:sqlite::memory:} for benchmarks
+     */
+    public SqliteCooldownStore(String url) {
+        this(url, "");
+    }
+
+    /**
+     * @param url JDBC url of SQLite database
+     * @param namespace prefix of the tables, letters, digits and underscores. Empty for the tables without prefix
+     */
+    public SqliteCooldownStore(String url, String namespace) {
+        this(new Database(url), new Database.Namespace(namespace), true);
+    }
+
+    private SqliteCooldownStore(Database database, Database.Namespace ns, boolean ownsDatabase) {
+        this.database = database;
+        this.ns = ns;
+        this.ownsDatabase = ownsDatabase;
+    }
+
+    /**
+     * Shares the connection of this store and keeps cooldowns in tables prefixed with the namespace. Closing the
+     * returned store doesn't close the connection, this store should be closed once all of them are done.
+     * @param namespace letters, digits and underscores, replaces the namespace of this store
+     */
+    @Override
+    public SqliteCooldownStore withNamespace(String namespace) {
+        return new SqliteCooldownStore(database, new Database.Namespace(namespace), false);
+    }
+
+    @Override
+    public void open() throws CooldownStoreException {
+        if (!database.open(ns))
+            throw new CooldownStoreException("Unable to connect to " + database.getUrl() + " or set up its tables");
+    }
+
+    @Override
+    public void close() {
+        if (ownsDatabase)
+            database.close();
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return !database.noConnection();
+    }
+
+    @Override
+    public long getCooledDownDate(CooldownScope scope, String cmdName, long id) throws CooldownStoreException {
+        try {
+            return scope == CooldownScope.USER
+                    ? database.getUserCooledDownDate(ns, id, cmdName)
+                    : database.getGuildCooledDownDate(ns, id, cmdName);
+        } catch (SQLException e) {
+            throw new CooldownStoreException("Unable to get cooldown of " + cmdName, e);
+        }
+    }
+
+    @Override
+    public long[] getCooledDownDates(CooldownScope scope, String cmdName, long[] ids) throws CooldownStoreException {
+        Long2LongMap found;
+        try {
+            found = scope == CooldownScope.USER
+                    ? database.getUserCooledDownDates(ns, LongArrayList.wrap(ids), cmdName)
+                    : database.getGuildCooledDownDates(ns, LongArrayList.wrap(ids), cmdName);
+        } catch (SQLException e) {
+            throw new CooldownStoreException("Unable to get cooldowns of " + cmdName, e);
+        }
+        long[] dates = new long[ids.length];
+        for (int i = 0; i < ids.length; i++)
+            dates[i] = found.get(ids[i]);
+        return dates;
+    }
+
+    @Override
+    public void saveCooldown(CooldownScope scope, String cmdName, long id, long cooledDownAfter)
+            throws CooldownStoreException {
+        try {
+            if (scope == CooldownScope.USER)
+                database.saveCommandUserCooldown(ns, id, cmdName, cooledDownAfter);
+            else
+                database.saveCommandGuildCooldown(ns, id, cmdName, cooledDownAfter);
+        } catch (SQLException e) {
+            throw new CooldownStoreException("Unable to save cooldown of " + cmdName, e);
+        }
+    }
+
+    @Override
+    public void saveCooldowns(CooldownScope scope, String cmdName, long[] ids, long[] cooledDownAfter)
+            throws CooldownStoreException {
+        Long2LongMap cooldowns = new Long2LongOpenHashMap(ids.length);
+        for (int i = 0; i < ids.length; i++)
+            cooldowns.put(ids[i], cooledDownAfter[i]);
+        try {
+            if (scope == CooldownScope.USER)
+                database.saveCommandUserCooldowns(ns, cooldowns, cmdName);
+            else
+                database.saveCommandGuildCooldowns(ns, cooldowns, cmdName);
+        } catch (SQLException e) {
+            throw new CooldownStoreException("Unable to save cooldowns of " + cmdName, e);
+        }
+    }
+
+    @Override
+    public long tryAcquire(String cmdName, long userId, long userCooledDownAfter, long guildId,
+                           long guildCooledDownAfter, long now) throws CooldownStoreException {
+        try {
+            return database.tryAcquireCooldowns(ns, cmdName, userId, userCooledDownAfter, guildId,
+                    guildCooledDownAfter, now);
+        } catch (SQLException e) {
+            throw new CooldownStoreException("Unable to acquire cooldown of " + cmdName, e);
+        }
+    }
+
+    /**
+     * Acquires the cooldowns in one transaction.
+     */
+    @Override
+    public long[] tryAcquireAll(String cmdName, long[] userIds, long[] userCooledDownAfter, long[] guildIds,
+                                long[] guildCooledDownAfter, long now) throws CooldownStoreException {
+        try {
+            return database.tryAcquireCooldowns(ns, cmdName, userIds, userCooledDownAfter, guildIds,
+                    guildCooledDownAfter, now);
+        } catch (SQLException e) {
+            throw new CooldownStoreException("Unable to acquire cooldowns of " + cmdName, e);
+        }
+    }
+
+    @Override
+    public void forEachLiveCooldown(CooldownScope scope, String cmdName, long now, LongConsumer consumer)
+            throws CooldownStoreException {
+        try {
+            if (scope == CooldownScope.USER)
+                database.forEachLiveUserCooldown(ns, cmdName, now, consumer);
+            else
+                database.forEachLiveGuildCooldown(ns, cmdName, now, consumer);
+        } catch (SQLException e) {
+            throw new CooldownStoreException("Unable to list cooldowns of " + cmdName, e);
+        }
+    }
+
+    @Override
+    public int deleteOutdated(CooldownScope scope, String cmdName, long now) throws CooldownStoreException {
+        try {
+            return scope == CooldownScope.USER
+                    ? database.deleteOutdatedUserCooldowns(ns, cmdName, now)
+                    : database.deleteOutdatedGuildCooldowns(ns, cmdName, now);
+        } catch (SQLException e) {
+            throw new CooldownStoreException("Unable to delete outdated cooldowns of " + cmdName, e);
+        }
+    }
+}
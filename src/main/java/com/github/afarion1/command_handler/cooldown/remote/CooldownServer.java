@@ -0,0 +1,305 @@
+package com.github.afarion1.command_handler.cooldown.remote;
+
+import com.github.afarion1.command_handler.cooldown.CooldownScope;
+import com.github.afarion1.command_handler.cooldown.CooldownStore;
+import com.github.afarion1.command_handler.cooldown.CooldownStoreException;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+/**
+ * Serves a {@link CooldownStore} to {@link RemoteCooldownStore}s of other processes, so cooldowns are shared by
+ * all of them. Runs in one thread with non-blocking IO, answers of all the requests read at once are written
+ * together. <br>
+ * There's no authentication, the server should only be reachable by the bot processes.
+ * <pre>{@code
+ * CooldownServer server = new CooldownServer(new InetSocketAddress("localhost", 7420),
+ *         new MappedCooldownStore(Paths.get("cooldowns.log")));
+ * server.start();
+ * }</pre>
+ */
+public final class CooldownServer {
+
+    private static final Logger log = LoggerFactory.getLogger(CooldownServer.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InetSocketAddress address;
+    private final CooldownStore store;
+    private ServerSocketChannel serverChannel = null;
+    private Selector selector = null;
+    private Thread thread = null;
+    private volatile boolean running = false;
+
+    /**
+     * @param address address to listen on, port 0 picks a free one, see {@link #getAddress()}
+     * @param store store of the cooldowns, opened on start and closed on stop
+     */
+    public CooldownServer(InetSocketAddress address, CooldownStore store) {
+        this.address = address;
+        this.store = store;
+    }
+
+    /**
+     * @throws IOException if the store couldn't be opened or the address couldn't be bound
+     */
+    public synchronized void start() throws IOException {
+        if (running)
+            throw new IllegalStateException("The server has already started");
+        try {
+            store.open();
+        } catch (CooldownStoreException e) {
+            throw new IOException("Unable to open cooldown store", e);
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        thread = new Thread(this::run, "Cooldown server");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Serving cooldowns on {}", getAddress());
+    }
+
+    public synchronized void stop() {
+        if (!running)
+            return;
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            for (SelectionKey key : selector.keys())
+                key.channel().close();
+            selector.close();
+        } catch (IOException e) {
+            log.warn("Unable to close cooldown server channels", e);
+        }
+        store.close();
+    }
+
+    /**
+     * @return the bound address, with the actual port if it was 0
+     */
+    public InetSocketAddress getAddress() {
+        try {
+            return (InetSocketAddress) serverChannel.getLocalAddress();
+        } catch (IOException e) {
+            return address;
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable())
+                        accept();
+                    else
+                        serve(key);
+                }
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException e) {
+                log.error("Cooldown server failed to select", e);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null)
+            return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection());
+        log.debug("Accepted cooldown client {}", channel.getRemoteAddress());
+    }
+
+    private void serve(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                if (channel.read(connection.in) == -1) {
+                    close(key);
+                    return;
+                }
+                handleFrames(connection);
+            }
+            connection.out.flip();
+            channel.write(connection.out);
+            connection.out.compact();
+            key.interestOps(connection.out.position() > 0
+                    ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                    : SelectionKey.OP_READ);
+        } catch (IOException | RuntimeException e) {
+            log.debug("Closing cooldown client connection", e);
+            close(key);
+        }
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            log.debug("Unable to close cooldown client connection", e);
+        }
+    }
+
+    private void handleFrames(Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        in.flip();
+        while (in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            if (length < Protocol.REQUEST_HEADER_SIZE - 4 || length > Protocol.MAX_FRAME_SIZE)
+                throw new IOException("Invalid frame length " + length);
+            if (in.remaining() < 4 + length)
+                break;
+            int end = in.position() + 4 + length;
+            in.position(in.position() + 4);
+            ByteBuffer frame = in.slice();
+            frame.limit(length);
+            in.position(end);
+            handle(frame, connection);
+        }
+        in.compact();
+        //a frame larger than the buffer
+        if (!in.hasRemaining())
+            connection.in = grow(in, in.capacity() * 2);
+    }
+
+    private void handle(ByteBuffer request, Connection connection) {
+        byte opcode = request.get();
+        int requestId = request.getInt();
+        try {
+            switch (opcode) {
+                case Protocol.PING:
+                    startResponse(connection, requestId, Protocol.OK, 0);
+                    break;
+                case Protocol.GET: {
+                    CooldownScope scope = Protocol.getScope(request);
+                    String cmdName = Protocol.getString(request);
+                    long[] ids = new long[request.getInt()];
+                    for (int i = 0; i < ids.length; i++)
+                        ids[i] = request.getLong();
+                    long[] dates = store.getCooledDownDates(scope, cmdName, ids);
+                    ByteBuffer out = startResponse(connection, requestId, Protocol.OK, dates.length * 8);
+                    for (long date : dates)
+                        out.putLong(date);
+                    break;
+                }
+                case Protocol.SAVE: {
+                    CooldownScope scope = Protocol.getScope(request);
+                    String cmdName = Protocol.getString(request);
+                    int amount = request.getInt();
+                    long[] ids = new long[amount];
+                    long[] dates = new long[amount];
+                    for (int i = 0; i < amount; i++) {
+                        ids[i] = request.getLong();
+                        dates[i] = request.getLong();
+                    }
+                    store.saveCooldowns(scope, cmdName, ids, dates);
+                    startResponse(connection, requestId, Protocol.OK, 0);
+                    break;
+                }
+                case Protocol.ACQUIRE: {
+                    String cmdName = Protocol.getString(request);
+                    long userId = request.getLong();
+                    long userCooledDownAfter = request.getLong();
+                    long guildId = request.getLong();
+                    long guildCooledDownAfter = request.getLong();
+                    long now = request.getLong();
+                    long remaining = store.tryAcquire(cmdName, userId, userCooledDownAfter, guildId,
+                            guildCooledDownAfter, now);
+                    byte blocking = -1;
+                    if (remaining > 0) {
+                        //tells the client which key to cache
+                        blocking = (byte) (userCooledDownAfter != -1
+                                && store.getCooledDownDate(CooldownScope.USER, cmdName, userId) - now == remaining
+                                ? CooldownScope.USER.ordinal()
+                                : CooldownScope.GUILD.ordinal());
+                    }
+                    ByteBuffer out = startResponse(connection, requestId, Protocol.OK, 9);
+                    out.putLong(remaining);
+                    out.put(blocking);
+                    break;
+                }
+                case Protocol.DELETE_OUTDATED: {
+                    CooldownScope scope = Protocol.getScope(request);
+                    String cmdName = Protocol.getString(request);
+                    int deleted = store.deleteOutdated(scope, cmdName, request.getLong());
+                    startResponse(connection, requestId, Protocol.OK, 4).putInt(deleted);
+                    break;
+                }
+                case Protocol.SCAN: {
+                    CooldownScope scope = Protocol.getScope(request);
+                    String cmdName = Protocol.getString(request);
+                    LongArrayList ids = new LongArrayList();
+                    store.forEachLiveCooldown(scope, cmdName, request.getLong(), ids::add);
+                    ByteBuffer out = startResponse(connection, requestId, Protocol.OK, 4 + ids.size() * 8);
+                    out.putInt(ids.size());
+                    for (int i = 0; i < ids.size(); i++)
+                        out.putLong(ids.getLong(i));
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown opcode " + opcode);
+            }
+        } catch (CooldownStoreException | RuntimeException e) {
+            String message = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            byte[] utf8 = Protocol.utf8(message.length() > 1000 ? message.substring(0, 1000) : message);
+            Protocol.putString(startResponse(connection, requestId, Protocol.ERROR, 2 + utf8.length), utf8);
+        }
+    }
+
+    /**
+     * Writes the header and makes room for the payload.
+     * @return output buffer of the connection, positioned at the payload
+     */
+    private static ByteBuffer startResponse(Connection connection, int requestId, byte status, int payloadSize) {
+        int size = Protocol.RESPONSE_HEADER_SIZE + payloadSize;
+        if (connection.out.remaining() < size)
+            connection.out = grow(connection.out, Math.max(connection.out.capacity() * 2,
+                    connection.out.position() + size));
+        ByteBuffer out = connection.out;
+        out.putInt(size - 4);
+        out.putInt(requestId);
+        out.put(status);
+        return out;
+    }
+
+    //buffer in write mode
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    private static final class Connection {
+        private ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+        private ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+}
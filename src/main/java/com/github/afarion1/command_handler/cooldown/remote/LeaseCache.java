@@ -0,0 +1,73 @@
+package com.github.afarion1.command_handler.cooldown.remote;
+
+import com.github.afarion1.command_handler.cooldown.CooldownScope;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cooldowns known by this process, each trusted for a short lease. Other processes could change a key meanwhile,
+ * so the lease bounds how stale an answer could be.
+ */
+final class LeaseCache {
+
+    static final long MISSING = Long.MIN_VALUE;
+
+    private final long leaseMillis;
+    private final int maxEntries;
+    //scope -> command name -> id -> cooledDownAfter and lease end
+    private final Map<CooldownScope, Map<String, Long2LongMap>> dates = new EnumMap<>(CooldownScope.class);
+    private final Map<CooldownScope, Map<String, Long2LongMap>> leases = new EnumMap<>(CooldownScope.class);
+    private int size = 0;
+
+    LeaseCache(long leaseMillis, int maxEntries) {
+        this.leaseMillis = leaseMillis;
+        this.maxEntries = maxEntries;
+        for (CooldownScope scope : CooldownScope.values()) {
+            dates.put(scope, new HashMap<>());
+            leases.put(scope, new HashMap<>());
+        }
+    }
+
+    /**
+     * @return cooledDownAfter of the key, -1 if it has no cooldown, {@link #MISSING} if it's not cached or its
+     * lease has ended
+     */
+    synchronized long get(CooldownScope scope, String cmdName, long id, long now) {
+        Long2LongMap commandLeases = leases.get(scope).get(cmdName);
+        if (commandLeases == null || commandLeases.get(id) <= now)
+            return MISSING;
+        return dates.get(scope).get(cmdName).get(id);
+    }
+
+    synchronized void put(CooldownScope scope, String cmdName, long id, long cooledDownAfter, long now) {
+        if (leaseMillis <= 0)
+            return;
+        //a full cache is dropped, leases are short, so the keys which are still hot come back quickly
+        if (size >= maxEntries)
+            clear();
+        Long2LongMap commandDates = dates.get(scope).get(cmdName);
+        if (commandDates == null) {
+            commandDates = new Long2LongOpenHashMap();
+            dates.get(scope).put(cmdName, commandDates);
+            Long2LongMap commandLeases = new Long2LongOpenHashMap();
+            commandLeases.defaultReturnValue(Long.MIN_VALUE);
+            leases.get(scope).put(cmdName, commandLeases);
+        }
+        if (!commandDates.containsKey(id))
+            size++;
+        commandDates.put(id, cooledDownAfter);
+        leases.get(scope).get(cmdName).put(id, now + leaseMillis);
+    }
+
+    synchronized void clear() {
+        for (CooldownScope scope : CooldownScope.values()) {
+            dates.get(scope).clear();
+            leases.get(scope).clear();
+        }
+        size = 0;
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.afarion1.command_handler.cooldown.remote;
+
+import com.github.afarion1.command_handler.cooldown.CooldownScope;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Frames of the cooldown protocol. Every frame starts with the length of the rest of it. <br>
+ * Request: length, opcode, request id, payload. <br>
+ * Response: length, request id, status, payload. An error's payload is its message. <br>
+ * Requests of a connection are answered in order, so clients could send many of them without waiting. Strings are
+ * UTF-8 prefixed with their length as a short, scopes are ordinals of {@link CooldownScope}.
+ */
+final class Protocol {
+
+    //payload: nothing -> nothing
+    static final byte PING = 0;
+    //payload: scope, command, amount, ids -> cooledDownAfter of each id
+    static final byte GET = 1;
+    //payload: scope, command, amount, pairs of id and cooledDownAfter -> nothing
+    static final byte SAVE = 2;
+    //payload: command, userId, userCooledDownAfter, guildId, guildCooledDownAfter, now
+    //-> remaining, blocking scope ordinal or -1
+    static final byte ACQUIRE = 3;
+    //payload: scope, command, now -> amount of deleted cooldowns
+    static final byte DELETE_OUTDATED = 4;
+    //payload: scope, command, now -> amount, ids
+    static final byte SCAN = 5;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    static final int REQUEST_HEADER_SIZE = 4 + 1 + 4;
+    static final int RESPONSE_HEADER_SIZE = 4 + 4 + 1;
+    static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    private static final CooldownScope[] SCOPES = CooldownScope.values();
+
+    private Protocol() {
+    }
+
+    static byte[] utf8(String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE)
+            throw new IllegalArgumentException("String is too long for the protocol");
+        return bytes;
+    }
+
+    static void putString(ByteBuffer buffer, byte[] utf8) {
+        buffer.putShort((short) utf8.length);
+        buffer.put(utf8);
+    }
+
+    static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static CooldownScope getScope(ByteBuffer buffer) {
+        byte ordinal = buffer.get();
+        if (ordinal < 0 || ordinal >= SCOPES.length)
+            throw new IllegalArgumentException("Unknown scope " + ordinal);
+        return SCOPES[ordinal];
+    }
+}
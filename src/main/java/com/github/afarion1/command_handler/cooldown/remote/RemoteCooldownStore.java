@@ -0,0 +1,460 @@
+package com.github.afarion1.command_handler.cooldown.remote;
+
+import com.github.afarion1.command_handler.cooldown.CooldownScope;
+import com.github.afarion1.command_handler.cooldown.CooldownStore;
+import com.github.afarion1.command_handler.cooldown.CooldownStoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+
+/**
+ * Keeps cooldowns on a {@link CooldownServer}, so bot processes of different shards share them. <br>
+ * Requests are pipelined over one connection: callers don't wait for each other's answers, and requests queued
+ * while another caller is writing are written together with its one. Answers are cached for a short lease,
+ * repeated calls of users on cooldown are then rejected without a round trip. A lease is also how long another
+ * process' save could go unseen, so it should stay well below the shortest cooldown. <br>
+ * A lost connection fails the pending calls and is reestablished on the next one, wrap the store in
+ * {@link com.github.afarion1.command_handler.cooldown.CircuitBreakerCooldownStore} to keep commands working
+ * while the server is down. Times are compared on the server, so clocks of the processes should be synchronized.
+ */
+public final class RemoteCooldownStore implements CooldownStore {
+
+    private static final Logger log = LoggerFactory.getLogger(RemoteCooldownStore.class);
+    private static final int MAX_CACHED_KEYS = 100_000;
+    private static final int MAX_WRITE_BATCH = 256;
+
+    private final InetSocketAddress address;
+    private final long timeoutNanos;
+    private final LeaseCache cache;
+    private final AtomicInteger nextRequestId = new AtomicInteger();
+    private final Map<Integer, CompletableFuture<ByteBuffer>> pending = new ConcurrentHashMap<>();
+    private final Queue<ByteBuffer> outgoing = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile SocketChannel channel = null;
+    private volatile boolean opened = false;
+
+    /**
+     * Caches answers for 500 milliseconds and waits up to 5 seconds for them.
+     */
+    public RemoteCooldownStore(InetSocketAddress address) {
+        this(address, Duration.ofMillis(500), Duration.ofSeconds(5));
+    }
+
+    /**
+     * @param address address of the {@link CooldownServer}
+     * @param lease how long answers are cached, zero disables the cache
+     * @param timeout how long a call waits for its answer
+     */
+    public RemoteCooldownStore(InetSocketAddress address, Duration lease, Duration timeout) {
+        if (lease.isNegative())
+            throw new IllegalArgumentException("Lease shouldn't be negative");
+        if (timeout.isNegative() || timeout.isZero())
+            throw new IllegalArgumentException("Timeout should be positive");
+        this.address = address;
+        this.cache = new LeaseCache(lease.toMillis(), MAX_CACHED_KEYS);
+        this.timeoutNanos = timeout.toNanos();
+    }
+
+    @Override
+    public void open() throws CooldownStoreException {
+        opened = true;
+        send(request(Protocol.PING, 0));
+    }
+
+    @Override
+    public synchronized void close() {
+        opened = false;
+        disconnect(channel, new CooldownStoreException("The store is closed"));
+    }
+
+    @Override
+    public boolean isAvailable() {
+        SocketChannel current = channel;
+        return current != null && current.isOpen();
+    }
+
+    @Override
+    public long getCooledDownDate(CooldownScope scope, String cmdName, long id) throws CooldownStoreException {
+        long now = System.currentTimeMillis();
+        long cached = cache.get(scope, cmdName, id, now);
+        if (cached != LeaseCache.MISSING)
+            return cached;
+        return fetch(scope, cmdName, new long[]{id}, now)[0];
+    }
+
+    @Override
+    public long[] getCooledDownDates(CooldownScope scope, String cmdName, long[] ids) throws CooldownStoreException {
+        long now = System.currentTimeMillis();
+        long[] dates = new long[ids.length];
+        long[] missing = new long[ids.length];
+        int[] positions = new int[ids.length];
+        int missingCount = 0;
+        for (int i = 0; i < ids.length; i++) {
+            dates[i] = cache.get(scope, cmdName, ids[i], now);
+            if (dates[i] == LeaseCache.MISSING) {
+                missing[missingCount] = ids[i];
+                positions[missingCount++] = i;
+            }
+        }
+        if (missingCount == 0)
+            return dates;
+        long[] fetched = fetch(scope, cmdName, Arrays.copyOf(missing, missingCount), now);
+        for (int i = 0; i < missingCount; i++)
+            dates[positions[i]] = fetched[i];
+        return dates;
+    }
+
+    @Override
+    public void saveCooldown(CooldownScope scope, String cmdName, long id, long cooledDownAfter)
+            throws CooldownStoreException {
+        saveCooldowns(scope, cmdName, new long[]{id}, new long[]{cooledDownAfter});
+    }
+
+    @Override
+    public void saveCooldowns(CooldownScope scope, String cmdName, long[] ids, long[] cooledDownAfter)
+            throws CooldownStoreException {
+        byte[] name = Protocol.utf8(cmdName);
+        ByteBuffer request = request(Protocol.SAVE, 1 + 2 + name.length + 4 + ids.length * 16);
+        request.put((byte) scope.ordinal());
+        Protocol.putString(request, name);
+        request.putInt(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            request.putLong(ids[i]);
+            request.putLong(cooledDownAfter[i]);
+        }
+        send(request);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < ids.length; i++)
+            cache.put(scope, cmdName, ids[i], cooledDownAfter[i], now);
+    }
+
+    @Override
+    public long tryAcquire(String cmdName, long userId, long userCooledDownAfter, long guildId,
+                           long guildCooledDownAfter, long now) throws CooldownStoreException {
+        long cached = cachedRemaining(cmdName, userId, userCooledDownAfter, guildId, guildCooledDownAfter, now);
+        if (cached > 0)
+            return cached;
+        ByteBuffer response = send(acquireRequest(cmdName, userId, userCooledDownAfter, guildId,
+                guildCooledDownAfter, now));
+        return acquired(response, cmdName, userId, userCooledDownAfter, guildId, guildCooledDownAfter, now);
+    }
+
+    /**
+     * Pipelines the acquires of the calls, so they are written together and take one round trip instead of one
+     * per call. The server still acquires each call atomically, in order.
+     */
+    @Override
+    public long[] tryAcquireAll(String cmdName, long[] userIds, long[] userCooledDownAfter, long[] guildIds,
+                                long[] guildCooledDownAfter, long now) throws CooldownStoreException {
+        long[] remaining = new long[userIds.length];
+        int[] requestIds = new int[userIds.length];
+        List<CompletableFuture<ByteBuffer>> answers = new ArrayList<>(userIds.length);
+        SocketChannel current = connection();
+        try {
+            for (int i = 0; i < userIds.length; i++) {
+                remaining[i] = cachedRemaining(cmdName, userIds[i], userCooledDownAfter[i], guildIds[i],
+                        guildCooledDownAfter[i], now);
+                if (remaining[i] > 0) {
+                    answers.add(null);
+                    continue;
+                }
+                ByteBuffer request = acquireRequest(cmdName, userIds[i], userCooledDownAfter[i], guildIds[i],
+                        guildCooledDownAfter[i], now);
+                requestIds[i] = request.getInt(5);
+                answers.add(enqueue(request));
+            }
+            flush(current);
+
+            long deadline = System.nanoTime() + timeoutNanos;
+            for (int i = 0; i < userIds.length; i++) {
+                CompletableFuture<ByteBuffer> answer = answers.get(i);
+                if (answer == null)
+                    continue;
+                remaining[i] = acquired(await(answer, deadline), cmdName, userIds[i], userCooledDownAfter[i],
+                        guildIds[i], guildCooledDownAfter[i], now);
+            }
+            return remaining;
+        } finally {
+            for (int i = 0; i < answers.size(); i++)
+                if (answers.get(i) != null)
+                    pending.remove(requestIds[i]);
+        }
+    }
+
+    /**
+     * Cooldowns only move forward, so a cached live one rejects the call without asking the server.
+     * @return remaining time of a cached live cooldown blocking the call, 0 if the server should be asked
+     */
+    private long cachedRemaining(String cmdName, long userId, long userCooledDownAfter, long guildId,
+                                 long guildCooledDownAfter, long now) {
+        if (userCooledDownAfter != -1) {
+            long cached = cache.get(CooldownScope.USER, cmdName, userId, now);
+            if (cached != LeaseCache.MISSING && cached - now > 0)
+                return cached - now;
+        }
+        if (guildCooledDownAfter != -1) {
+            long cached = cache.get(CooldownScope.GUILD, cmdName, guildId, now);
+            if (cached != LeaseCache.MISSING && cached - now > 0)
+                return cached - now;
+        }
+        return 0;
+    }
+
+    private ByteBuffer acquireRequest(String cmdName, long userId, long userCooledDownAfter, long guildId,
+                                      long guildCooledDownAfter, long now) {
+        byte[] name = Protocol.utf8(cmdName);
+        ByteBuffer request = request(Protocol.ACQUIRE, 2 + name.length + 5 * 8);
+        Protocol.putString(request, name);
+        request.putLong(userId);
+        request.putLong(userCooledDownAfter);
+        request.putLong(guildId);
+        request.putLong(guildCooledDownAfter);
+        request.putLong(now);
+        return request;
+    }
+
+    /**
+     * Caches the outcome of an acquire.
+     * @return remaining time of the blocking cooldown, 0 if the cooldowns were acquired
+     */
+    private long acquired(ByteBuffer response, String cmdName, long userId, long userCooledDownAfter, long guildId,
+                          long guildCooledDownAfter, long now) {
+        long remaining = response.getLong();
+        byte blocking = response.get();
+        if (remaining > 0) {
+            if (blocking == CooldownScope.USER.ordinal())
+                cache.put(CooldownScope.USER, cmdName, userId, now + remaining, now);
+            else if (blocking == CooldownScope.GUILD.ordinal())
+                cache.put(CooldownScope.GUILD, cmdName, guildId, now + remaining, now);
+            return remaining;
+        }
+        if (userCooledDownAfter != -1)
+            cache.put(CooldownScope.USER, cmdName, userId, userCooledDownAfter, now);
+        if (guildCooledDownAfter != -1)
+            cache.put(CooldownScope.GUILD, cmdName, guildId, guildCooledDownAfter, now);
+        return 0;
+    }
+
+    @Override
+    public void forEachLiveCooldown(CooldownScope scope, String cmdName, long now, LongConsumer consumer)
+            throws CooldownStoreException {
+        ByteBuffer response = send(scopedRequest(Protocol.SCAN, scope, cmdName, now));
+        int amount = response.getInt();
+        for (int i = 0; i < amount; i++)
+            consumer.accept(response.getLong());
+    }
+
+    @Override
+    public int deleteOutdated(CooldownScope scope, String cmdName, long now) throws CooldownStoreException {
+        return send(scopedRequest(Protocol.DELETE_OUTDATED, scope, cmdName, now)).getInt();
+    }
+
+    private long[] fetch(CooldownScope scope, String cmdName, long[] ids, long now) throws CooldownStoreException {
+        byte[] name = Protocol.utf8(cmdName);
+        ByteBuffer request = request(Protocol.GET, 1 + 2 + name.length + 4 + ids.length * 8);
+        request.put((byte) scope.ordinal());
+        Protocol.putString(request, name);
+        request.putInt(ids.length);
+        for (long id : ids)
+            request.putLong(id);
+        ByteBuffer response = send(request);
+        long[] dates = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            dates[i] = response.getLong();
+            cache.put(scope, cmdName, ids[i], dates[i], now);
+        }
+        return dates;
+    }
+
+    private ByteBuffer scopedRequest(byte opcode, CooldownScope scope, String cmdName, long now) {
+        byte[] name = Protocol.utf8(cmdName);
+        ByteBuffer request = request(opcode, 1 + 2 + name.length + 8);
+        request.put((byte) scope.ordinal());
+        Protocol.putString(request, name);
+        request.putLong(now);
+        return request;
+    }
+
+    /**
+     * @return buffer with the header written, positioned at the payload
+     */
+    private ByteBuffer request(byte opcode, int payloadSize) {
+        ByteBuffer request = ByteBuffer.allocate(Protocol.REQUEST_HEADER_SIZE + payloadSize);
+        request.putInt(Protocol.REQUEST_HEADER_SIZE - 4 + payloadSize);
+        request.put(opcode);
+        request.putInt(nextRequestId.getAndIncrement());
+        return request;
+    }
+
+    /**
+     * Sends the request and waits for its answer.
+     * @return payload of the answer
+     */
+    private ByteBuffer send(ByteBuffer request) throws CooldownStoreException {
+        SocketChannel current = connection();
+        int requestId = request.getInt(5);
+        CompletableFuture<ByteBuffer> answer = enqueue(request);
+        flush(current);
+        try {
+            return await(answer, System.nanoTime() + timeoutNanos);
+        } finally {
+            pending.remove(requestId);
+        }
+    }
+
+    /**
+     * Queues the request without writing it, see {@link #flush(SocketChannel)}. The caller removes its answer from
+     * the pending ones once it's done waiting.
+     * @return answer to the request
+     */
+    private CompletableFuture<ByteBuffer> enqueue(ByteBuffer request) {
+        CompletableFuture<ByteBuffer> answer = new CompletableFuture<>();
+        pending.put(request.getInt(5), answer);
+        request.flip();
+        outgoing.add(request);
+        return answer;
+    }
+
+    /**
+     * @param deadline {@link System#nanoTime()} after which waiting fails
+     * @return payload of the answer
+     */
+    private static ByteBuffer await(CompletableFuture<ByteBuffer> answer, long deadline)
+            throws CooldownStoreException {
+        try {
+            return answer.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CooldownStoreException("Interrupted while waiting for cooldown server", e);
+        } catch (TimeoutException e) {
+            throw new CooldownStoreException("Cooldown server didn't answer in time", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CooldownStoreException)
+                throw (CooldownStoreException) e.getCause();
+            throw new CooldownStoreException("Cooldown server call failed", e.getCause());
+        }
+    }
+
+    /**
+     * Writes the queued requests. Whoever holds the lock writes the requests queued by the others too, so
+     * concurrent calls share a write.
+     */
+    private void flush(SocketChannel current) {
+        List<ByteBuffer> batch = new ArrayList<>();
+        while (!outgoing.isEmpty() && writeLock.tryLock()) {
+            try {
+                ByteBuffer request;
+                while (batch.size() < MAX_WRITE_BATCH && (request = outgoing.poll()) != null)
+                    batch.add(request);
+                //another caller could have written them between the check and the lock
+                if (batch.isEmpty())
+                    continue;
+                ByteBuffer[] buffers = batch.toArray(new ByteBuffer[0]);
+                ByteBuffer last = buffers[buffers.length - 1];
+                while (last.hasRemaining())
+                    current.write(buffers);
+            } catch (IOException e) {
+                disconnect(current, new CooldownStoreException("Unable to write to cooldown server", e));
+            } finally {
+                batch.clear();
+                writeLock.unlock();
+            }
+        }
+    }
+
+    private synchronized SocketChannel connection() throws CooldownStoreException {
+        if (!opened)
+            throw new CooldownStoreException("The store isn't open");
+        if (channel != null && channel.isOpen())
+            return channel;
+        try {
+            SocketChannel connected = SocketChannel.open(address);
+            connected.socket().setTcpNoDelay(true);
+            channel = connected;
+            Thread reader = new Thread(() -> read(connected), "Cooldown store reader");
+            reader.setDaemon(true);
+            reader.start();
+            log.info("Connected to cooldown server {}", address);
+            return connected;
+        } catch (IOException e) {
+            throw new CooldownStoreException("Unable to connect to cooldown server " + address, e);
+        }
+    }
+
+    /**
+     * Runs in the reader thread of the connection.
+     */
+    private void read(SocketChannel connected) {
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        try {
+            while (true) {
+                lengthBuffer.clear();
+                readFully(connected, lengthBuffer);
+                int length = lengthBuffer.getInt(0);
+                if (length < Protocol.RESPONSE_HEADER_SIZE - 4 || length > Protocol.MAX_FRAME_SIZE)
+                    throw new IOException("Invalid frame length " + length);
+                ByteBuffer frame = ByteBuffer.allocate(length);
+                readFully(connected, frame);
+                frame.flip();
+                int requestId = frame.getInt();
+                byte status = frame.get();
+                CompletableFuture<ByteBuffer> answer = pending.get(requestId);
+                if (answer == null)
+                    continue;
+                if (status == Protocol.OK)
+                    answer.complete(frame);
+                else
+                    answer.completeExceptionally(new CooldownStoreException("Cooldown server failed: "
+                            + Protocol.getString(frame)));
+            }
+        } catch (IOException e) {
+            disconnect(connected, new CooldownStoreException("Connection to cooldown server was lost", e));
+        }
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            if (channel.read(buffer) == -1)
+                throw new EOFException("Cooldown server closed the connection");
+    }
+
+    private void disconnect(SocketChannel connected, CooldownStoreException cause) {
+        synchronized (this) {
+            if (connected == null || channel != connected)
+                return;
+            channel = null;
+        }
+        try {
+            connected.close();
+        } catch (IOException e) {
+            log.debug("Unable to close connection to cooldown server", e);
+        }
+        if (opened)
+            log.warn("Disconnected from cooldown server {}", address, cause);
+        outgoing.clear();
+        for (CompletableFuture<ByteBuffer> answer : pending.values())
+            answer.completeExceptionally(cause);
+        //answers cached before the disconnect could be stale by the time it's back
+        cache.clear();
+    }
+}
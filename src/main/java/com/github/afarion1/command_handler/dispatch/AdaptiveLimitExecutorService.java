@@ -0,0 +1,183 @@
+package com.github.afarion1.command_handler.dispatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Executor adjusting how many commands run at once by their execution latency, similarly to TCP congestion
+ * control. The limit grows while latency stays close to its long term average and shrinks when latency rises,
+ * which means that commands compete for some resource (CPU, disk, a remote service). Commands above the limit
+ * are queued, commands above the queue capacity are rejected. <br>
+ * The limit is computed as {@code limit * gradient + sqrt(limit)}, where gradient is the ratio of long term
+ * to recent latency, clamped to [0.5, 1]. It doesn't grow while less than half of it is used.
+ * <pre>{@code
+ * AdaptiveLimitExecutorService executor = new AdaptiveLimitExecutorService(4, 1, 256, 10_000);
+ * CommandHandler handler = new CommandHandlerBuilder()
+ *         .setJda(jda)
+ *         .setExecutorService(executor)
+ *         .build();
+ * }</pre>
+ */
+public final class AdaptiveLimitExecutorService extends GatedExecutorService {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveLimitExecutorService.class);
+    private static final double SHORT_RTT_ALPHA = 0.2;
+    private static final double LONG_RTT_ALPHA = 0.01;
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int queueCapacity;
+    private final Queue<Runnable> queue = new ArrayDeque<>();
+    private double limit;
+    private double shortRttNanos = 0;
+    private double longRttNanos = 0;
+    private long rejected = 0;
+
+    /**
+     * Creates the executor with initial limit of available processors amount, limits from 1 to 256 and queue
+     * capacity of 10000.
+     */
+    public AdaptiveLimitExecutorService() {
+        this(Runtime.getRuntime().availableProcessors(), 1, 256, 10_000);
+    }
+
+    /**
+     * @param initialLimit amount of commands allowed to run at once until latency is measured
+     * @param minLimit the limit never goes below the value
+     * @param maxLimit the limit never goes above the value, it's also the maximal amount of threads
+     * @param queueCapacity maximal amount of commands waiting for execution, commands above it are rejected
+     */
+    public AdaptiveLimitExecutorService(int initialLimit, int minLimit, int maxLimit, int queueCapacity) {
+        super(maxLimit);
+        if (minLimit < 1 || maxLimit < minLimit)
+            throw new IllegalArgumentException("Limits should satisfy 1 <= minLimit <= maxLimit");
+        if (initialLimit < minLimit || initialLimit > maxLimit)
+            throw new IllegalArgumentException("Initial limit should be within [minLimit, maxLimit]");
+        if (queueCapacity < 0)
+            throw new IllegalArgumentException("Queue capacity should not be negative");
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.queueCapacity = queueCapacity;
+        this.limit = initialLimit;
+    }
+
+    @Override
+    boolean enqueue(Runnable task) {
+        if (queue.size() >= queueCapacity && inFlight() >= currentLimit()) {
+            rejected++;
+            return false;
+        }
+        return queue.offer(task);
+    }
+
+    @Override
+    Runnable dequeue() {
+        return queue.poll();
+    }
+
+    @Override
+    int queued() {
+        return queue.size();
+    }
+
+    @Override
+    int currentLimit() {
+        return (int) limit;
+    }
+
+    @Override
+    String rejectionMessage(Runnable task) {
+        return "The limit of " + currentLimit() + " running commands is reached and the queue is full";
+    }
+
+    @Override
+    void completed(Runnable task, long runNanos) {
+        if (longRttNanos == 0) {
+            shortRttNanos = runNanos;
+            longRttNanos = runNanos;
+            return;
+        }
+        shortRttNanos += (runNanos - shortRttNanos) * SHORT_RTT_ALPHA;
+        longRttNanos += (runNanos - longRttNanos) * LONG_RTT_ALPHA;
+        //let the long term latency catch up after a sustained spike, otherwise the limit would stay at its minimum
+        if (longRttNanos / shortRttNanos > 2)
+            longRttNanos *= 0.95;
+
+        //the limit isn't the bottleneck, so latency tells nothing about it
+        if (inFlight() + 1 < limit / 2)
+            return;
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRttNanos / shortRttNanos));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        newLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        if ((int) newLimit != (int) limit)
+            log.trace("Concurrency limit changed from {} to {}", (int) limit, (int) newLimit);
+        limit = newLimit;
+    }
+
+    /**
+     * @return amount of commands allowed to run at once
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return currentLimit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return amount of commands waiting for execution
+     */
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return amount of commands rejected because the queue was full
+     */
+    public long getRejected() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return moving average of recent execution latency, 0 until a command is executed
+     */
+    public long getRttNanos() {
+        lock.lock();
+        try {
+            return (long) shortRttNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return long term moving average of execution latency, the baseline the recent latency is compared to
+     */
+    public long getLongRttNanos() {
+        lock.lock();
+        try {
+            return (long) longRttNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
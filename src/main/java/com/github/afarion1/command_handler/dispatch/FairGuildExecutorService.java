@@ -0,0 +1,238 @@
+package com.github.afarion1.command_handler.dispatch;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Executor sharing its threads fairly between guilds, so a single busy guild can't fill the queue and delay
+ * commands of every other guild. Each guild, and direct messages as a whole, has its own queue with a limited
+ * capacity; the queues are served by deficit round-robin weighted by execution time: every round a guild gets a
+ * quantum of time, commands are charged with the average execution time of the guild when dispatched and with
+ * the real one when finished. <br>
+ * Tasks which aren't {@link GuildTask}s share a separate queue.
+ * <pre>{@code
+ * CommandHandler handler = new CommandHandlerBuilder()
+ *         .setJda(jda)
+ *         .setExecutorService(new FairGuildExecutorService(8, 100))
+ *         .build();
+ * }</pre>
+ */
+public final class FairGuildExecutorService extends GatedExecutorService {
+
+    private static final long OTHER_TASKS = -1;
+    private static final double COST_ALPHA = 0.2;
+
+    private final int threads;
+    private final int guildCapacity;
+    private final int totalCapacity;
+    private final long quantumNanos;
+    private final Long2ObjectMap<GuildQueue> guilds = new Long2ObjectOpenHashMap<>();
+    //guilds having queued tasks, in round-robin order
+    private final ArrayDeque<GuildQueue> active = new ArrayDeque<>();
+    private int queued = 0;
+    private long rejected = 0;
+
+    /**
+     * Creates the executor with total capacity of 100 queued commands per thread and quantum of 1 millisecond.
+     * @param threads amount of threads executing commands
+     * @param guildCapacity maximal amount of queued commands of a guild, commands above it are rejected
+     */
+    public FairGuildExecutorService(int threads, int guildCapacity) {
+        this(threads, guildCapacity, threads * 100, Duration.ofMillis(1));
+    }
+
+    /**
+     * @param threads amount of threads executing commands
+     * @param guildCapacity maximal amount of queued commands of a guild, commands above it are rejected
+     * @param totalCapacity maximal amount of queued commands of all the guilds
+     * @param quantum execution time a guild gets per round, larger values let guilds run longer series of
+     *                commands at once
+     */
+    public FairGuildExecutorService(int threads, int guildCapacity, int totalCapacity, Duration quantum) {
+        super(threads);
+        if (threads < 1)
+            throw new IllegalArgumentException("Amount of threads should be positive");
+        if (guildCapacity < 1 || totalCapacity < guildCapacity)
+            throw new IllegalArgumentException("Capacities should satisfy 1 <= guildCapacity <= totalCapacity");
+        if (quantum == null || quantum.isNegative() || quantum.isZero())
+            throw new IllegalArgumentException("Quantum should be positive");
+        this.threads = threads;
+        this.guildCapacity = guildCapacity;
+        this.totalCapacity = totalCapacity;
+        this.quantumNanos = quantum.toNanos();
+    }
+
+    private static long guildId(Runnable task) {
+        return task instanceof GuildTask ? ((GuildTask) task).getGuildId() : OTHER_TASKS;
+    }
+
+    @Override
+    boolean enqueue(Runnable task) {
+        long guildId = guildId(task);
+        GuildQueue guild = guilds.get(guildId);
+        if (queued >= totalCapacity || (guild != null && guild.tasks.size() >= guildCapacity)) {
+            rejected++;
+            return false;
+        }
+        if (guild == null) {
+            guild = new GuildQueue(guildId, quantumNanos);
+            guilds.put(guildId, guild);
+        }
+        guild.tasks.add(task);
+        queued++;
+        if (!guild.active) {
+            guild.active = true;
+            active.addLast(guild);
+        }
+        return true;
+    }
+
+    @Override
+    Runnable dequeue() {
+        int skipped = 0;
+        while (!active.isEmpty()) {
+            GuildQueue guild = active.peekFirst();
+            if (guild.deficit <= 0) {
+                guild.deficit += quantumNanos;
+                active.addLast(active.pollFirst());
+                //a whole rotation without a positive deficit, add the rounds still needed at once
+                if (++skipped == active.size()) {
+                    addRounds();
+                    skipped = 0;
+                }
+                continue;
+            }
+
+            Runnable task = guild.tasks.poll();
+            queued--;
+            guild.running++;
+            guild.deficit -= guild.estimatedCost;
+            if (guild.tasks.isEmpty()) {
+                active.pollFirst();
+                guild.active = false;
+            }
+            return task;
+        }
+        return null;
+    }
+
+    /**
+     * Adds the quanta every active guild would get in the rotations until one of their deficits is positive, so
+     * deficits far below zero after long commands don't take thousands of rotations under the lock.
+     */
+    private void addRounds() {
+        long rounds = Long.MAX_VALUE;
+        for (GuildQueue guild : active)
+            rounds = Math.min(rounds, guild.deficit > 0 ? 0 : -guild.deficit / quantumNanos + 1);
+        if (rounds == 0)
+            return;
+        for (GuildQueue guild : active)
+            guild.deficit += rounds * quantumNanos;
+    }
+
+    @Override
+    void completed(Runnable task, long runNanos) {
+        GuildQueue guild = guilds.get(guildId(task));
+        if (guild == null)
+            return;
+        guild.running--;
+        //replace the estimate charged on dispatch with the real cost
+        guild.deficit += guild.estimatedCost - runNanos;
+        guild.estimatedCost += (long) ((runNanos - guild.estimatedCost) * COST_ALPHA);
+        //forget idle guilds, like DRR resets deficit of empty queues
+        if (!guild.active && guild.running == 0)
+            guilds.remove(guild.guildId);
+    }
+
+    @Override
+    int queued() {
+        return queued;
+    }
+
+    @Override
+    int currentLimit() {
+        return threads;
+    }
+
+    @Override
+    String rejectionMessage(Runnable task) {
+        long guildId = guildId(task);
+        GuildQueue guild = guilds.get(guildId);
+        if (guild != null && guild.tasks.size() >= guildCapacity)
+            return "The queue of guild " + guildId + " is full";
+        return "The queue is full";
+    }
+
+    /**
+     * @return amount of queued commands of all the guilds
+     */
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param guildId id of the guild or {@link GuildTask#DIRECT_MESSAGES}
+     * @return amount of queued commands of the guild
+     */
+    public int getQueued(long guildId) {
+        lock.lock();
+        try {
+            GuildQueue guild = guilds.get(guildId);
+            return guild == null ? 0 : guild.tasks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return guild id -> amount of its queued commands, for the guilds having any
+     */
+    public Map<Long, Integer> getQueuedByGuild() {
+        lock.lock();
+        try {
+            Map<Long, Integer> depths = new HashMap<>();
+            for (GuildQueue guild : active)
+                depths.put(guild.guildId, guild.tasks.size());
+            return Collections.unmodifiableMap(depths);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return amount of commands rejected because their guild's queue or the total capacity was full
+     */
+    public long getRejected() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class GuildQueue {
+        private final long guildId;
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private long deficit = 0;
+        private long estimatedCost;
+        private int running = 0;
+        private boolean active = false;
+
+        private GuildQueue(long guildId, long initialCost) {
+            this.guildId = guildId;
+            this.estimatedCost = initialCost;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.github.afarion1.command_handler.dispatch;
+
+import com.github.afarion1.command_handler.utils.NamedThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Executor running at most {@link #currentLimit()} tasks at once on a pool of worker threads, the rest waits in
+ * a queue managed by the subclass. Queue operations and completion callbacks are called under {@link #lock}.
+ */
+abstract class GatedExecutorService extends AbstractExecutorService {
+
+    final ReentrantLock lock = new ReentrantLock();
+    private final Condition drained = lock.newCondition();
+    private final ThreadPoolExecutor workers;
+    private int inFlight = 0;
+    private boolean shutdown = false;
+
+    GatedExecutorService(int maxThreads) {
+        workers = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new NamedThreadFactory("Command handling thread"));
+        workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return false if the task should be rejected
+     */
+    abstract boolean enqueue(Runnable task);
+
+    /**
+     * @return next task to run or null if there are none
+     */
+    abstract Runnable dequeue();
+
+    abstract int queued();
+
+    /**
+     * @return maximal amount of tasks running at once
+     */
+    abstract int currentLimit();
+
+    /**
+     * Called when a task finishes, before the next one is dispatched.
+     * @param runNanos time the task took to run
+     */
+    void completed(Runnable task, long runNanos) {
+    }
+
+    /**
+     * @return message of {@link RejectedExecutionException} for a task which wasn't enqueued
+     */
+    String rejectionMessage(Runnable task) {
+        return "The queue is full";
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        Objects.requireNonNull(task);
+        lock.lock();
+        try {
+            if (shutdown)
+                throw new RejectedExecutionException("The executor is shut down");
+            if (!enqueue(task))
+                throw new RejectedExecutionException(rejectionMessage(task));
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return amount of tasks running right now
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //under the lock
+    int inFlight() {
+        return inFlight;
+    }
+
+    private void dispatch() {
+        while (inFlight < currentLimit()) {
+            Runnable next = dequeue();
+            if (next == null)
+                break;
+            inFlight++;
+            workers.execute(new Gated(next));
+        }
+        if (shutdown && inFlight == 0 && queued() == 0) {
+            workers.shutdown();
+            drained.signalAll();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> notStarted = new ArrayList<>();
+        lock.lock();
+        try {
+            shutdown = true;
+            Runnable task;
+            while ((task = dequeue()) != null)
+                notStarted.add(task);
+            workers.shutdownNow();
+            drained.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        return notStarted;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        lock.lock();
+        try {
+            return shutdown;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return workers.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        lock.lock();
+        try {
+            //workers are shut down once the queue is drained
+            while (!workers.isShutdown()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    return false;
+                drained.awaitNanos(remaining);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return workers.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    private final class Gated implements Runnable {
+        private final Runnable task;
+
+        private Gated(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                long runNanos = System.nanoTime() - start;
+                lock.lock();
+                try {
+                    inFlight--;
+                    completed(task, runNanos);
+                    dispatch();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.github.afarion1.command_handler.dispatch;
+
+/**
+ * Task processing a message from a guild, submitted by the handler to its executor. Lets executors schedule
+ * tasks per guild.
+ */
+public interface GuildTask extends Runnable {
+
+    /**
+     * Guild id of tasks processing direct messages.
+     */
+    long DIRECT_MESSAGES = 0;
+
+    /**
+     * @return id of the guild the message was sent in or {@link #DIRECT_MESSAGES}
+     */
+    long getGuildId();
+}
@@ -8,8 +8,6 @@ import com.github.afarion1.command_handler.command.config.CommandArgumentConfig;
 import com.github.afarion1.command_handler.command.config.CommandArgumentConfigBuilder;
 import com.github.afarion1.command_handler.command.config.CommandConfig;
 import com.github.afarion1.command_handler.command.config.CommandConfigBuilder;
-import it.unimi.dsi.fastutil.ints.IntArrayList;
-import it.unimi.dsi.fastutil.ints.IntList;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
@@ -18,21 +16,49 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.awt.*;
-import java.util.Set;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 public class CmdInspectCommand extends AbstractCommand {
     private static final Logger log = LoggerFactory.getLogger(CmdInspectCommand.class);
     private static final int ARG_CMD_NAME_ID = 0;
 
-    private final Color embedColor;
     private final CommandHandler handler;
-    private final Set<String> commandNames;
+    private final Map<String, MessageEmbed> embeds;
 
+    /**
+     * Builds inspection embeds of all registered commands on every instantiation, prefer
+     * {@link #CmdInspectCommand(CommandHandler, Map)} with embeds from {@link #setupEmbeds(CommandHandler)}.
+     */
     public CmdInspectCommand(CommandHandler handler) {
+        this(handler, setupEmbeds(handler));
+    }
+
+    /**
+     * @param embeds inspection embeds keyed by command name, as returned by {@link #setupEmbeds(CommandHandler)}
+     */
+    public CmdInspectCommand(CommandHandler handler, Map<String, MessageEmbed> embeds) {
         super(handler);
-        this.embedColor = handler.getInspectCommandColor();
         this.handler = handler;
-        this.commandNames = handler.getAllCommandNamesAndAliases();
+        this.embeds = embeds;
+    }
+
+    /**
+     * Builds inspection embeds of every command registered on the handler, so they don't have to be
+     * rebuilt on each inspection.
+     * @return unmodifiable map of embeds keyed by command name (not alias)
+     */
+    public static Map<String, MessageEmbed> setupEmbeds(CommandHandler handler) {
+        Color embedColor = handler.getInspectCommandColor();
+        Map<String, MessageEmbed> embeds = new HashMap<>();
+        for (String alias : handler.getAllCommandNamesAndAliases()) {
+            CommandConfig cfg = handler.findCommandAndGetConfig(alias);
+            if (!embeds.containsKey(cfg.getName()))
+                embeds.put(cfg.getName(), setupEmbed(cfg, embedColor));
+        }
+        log.trace("Built inspection embeds for {} commands", embeds.size());
+        return Collections.unmodifiableMap(embeds);
     }
 
     @Config
@@ -63,7 +89,11 @@ public class CmdInspectCommand extends AbstractCommand {
             return;
         }
 
-        MessageEmbed embed = setupEmbed(cfg);
+        MessageEmbed embed = embeds.get(cfg.getName());
+        if (embed == null) {
+            log.debug("No cached embed for command {}, building it", cfg.getName());
+            embed = setupEmbed(cfg, handler.getInspectCommandColor());
+        }
         event.getChannel().sendMessage(embed).queue();
     }
 
@@ -72,19 +102,12 @@ public class CmdInspectCommand extends AbstractCommand {
         if (argumentId != ARG_CMD_NAME_ID)
             return 0;
 
-        //choose option with the biggest length
-        IntList matches = new IntArrayList();
-        for (String name : commandNames) {
-            int index = arguments.indexOf(name);
-            if(index == 0 && arguments.length() == name.length())
-                matches.add(index + name.length());
-
-        }
-        return matches.stream().min(Integer::compareTo).orElse(0);
+        //the whole argument must be a name or an alias
+        return handler.findCommandAndGetConfig(arguments) != null ? arguments.length() : 0;
     }
 
     @NotNull
-    private MessageEmbed setupEmbed(CommandConfig cfg) {
+    private static MessageEmbed setupEmbed(CommandConfig cfg, Color embedColor) {
         EmbedBuilder eb = new EmbedBuilder();
         eb.setTitle(cfg.getName());
         StringBuilder sb = new StringBuilder();
@@ -110,13 +133,13 @@ public class CmdInspectCommand extends AbstractCommand {
         if (cfg.getArguments().size() > 0) {
             sb.append("\n\nArguments:\n");
             for (CommandArgumentConfig arg : cfg.getArguments()) {
-                String argumentInfo = arg.getArgumentDesc();
-                argumentInfo += "\n";
-                if (arg.isOptional()) argumentInfo += "Optional";
-                if (arg.isOptional() && arg.isInQuotes()) argumentInfo += ", ";
-                if (arg.isInQuotes()) argumentInfo += "Should be in quotes";
+                StringBuilder argumentInfo = new StringBuilder(arg.getArgumentDesc());
+                argumentInfo.append("\n");
+                if (arg.isOptional()) argumentInfo.append("Optional");
+                if (arg.isOptional() && arg.isInQuotes()) argumentInfo.append(", ");
+                if (arg.isInQuotes()) argumentInfo.append("Should be in quotes");
 
-                eb.addField(arg.getArgumentName(), argumentInfo, false);
+                eb.addField(arg.getArgumentName(), argumentInfo.toString(), false);
             }
         } else if (cfg.isRawArgs()) {
             eb.addField(cfg.getRawArgsName(), cfg.getRawArgsDesc(), false);
@@ -0,0 +1,20 @@
+package com.github.afarion1.command_handler.jfr;
+
+import jdk.jfr.*;
+
+@Name("com.github.afarion1.command_handler.ArgumentParse")
+@Label("Argument Parse")
+@Description("Parsing of command arguments")
+@Category("Command Handler")
+@StackTrace(false)
+final class ArgumentParseEvent extends Event {
+
+    @Label("Command")
+    String command;
+
+    @Label("Guild Id")
+    long guildId;
+
+    @Label("Valid")
+    boolean valid;
+}
@@ -0,0 +1,20 @@
+package com.github.afarion1.command_handler.jfr;
+
+import jdk.jfr.*;
+
+@Name("com.github.afarion1.command_handler.CommandDispatch")
+@Label("Command Dispatch")
+@Description("Processing of a message with the command prefix")
+@Category("Command Handler")
+@StackTrace(false)
+final class CommandDispatchEvent extends Event {
+
+    @Label("Command")
+    String command;
+
+    @Label("Guild Id")
+    long guildId;
+
+    @Label("Outcome")
+    String outcome;
+}
@@ -0,0 +1,23 @@
+package com.github.afarion1.command_handler.jfr;
+
+import jdk.jfr.*;
+
+@Name("com.github.afarion1.command_handler.CommandExecution")
+@Label("Command Execution")
+@Description("Execution of a command")
+@Category("Command Handler")
+@StackTrace(false)
+final class CommandExecutionEvent extends Event {
+
+    @Label("Command")
+    String command;
+
+    @Label("Guild Id")
+    long guildId;
+
+    @Label("Outcome")
+    String outcome;
+
+    @Label("Failure")
+    Class<?> failure;
+}
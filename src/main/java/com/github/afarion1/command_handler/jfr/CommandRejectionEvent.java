@@ -0,0 +1,20 @@
+package com.github.afarion1.command_handler.jfr;
+
+import jdk.jfr.*;
+
+@Name("com.github.afarion1.command_handler.CommandRejection")
+@Label("Command Rejection")
+@Description("Call of a command which was not executed")
+@Category("Command Handler")
+@StackTrace(false)
+final class CommandRejectionEvent extends Event {
+
+    @Label("Command")
+    String command;
+
+    @Label("Guild Id")
+    long guildId;
+
+    @Label("Reason")
+    String reason;
+}
@@ -0,0 +1,20 @@
+package com.github.afarion1.command_handler.jfr;
+
+import jdk.jfr.*;
+
+@Name("com.github.afarion1.command_handler.CooldownQuery")
+@Label("Cooldown Query")
+@Description("Check and save of command cooldowns in the database")
+@Category("Command Handler")
+@StackTrace(false)
+final class CooldownQueryEvent extends Event {
+
+    @Label("Command")
+    String command;
+
+    @Label("Guild Id")
+    long guildId;
+
+    @Label("Outcome")
+    String outcome;
+}
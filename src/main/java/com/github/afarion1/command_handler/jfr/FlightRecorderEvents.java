@@ -0,0 +1,42 @@
+package com.github.afarion1.command_handler.jfr;
+
+import com.github.afarion1.command_handler.command.CommandStageListener;
+
+/**
+ * Entry point of Java Flight Recorder support, safe to use on JVMs without JFR. Classes referring to JFR
+ * are loaded only if it's available.
+ * @see com.github.afarion1.command_handler.command.CommandHandlerBuilder#enableFlightRecorderEvents()
+ */
+public final class FlightRecorderEvents {
+
+    private static final boolean AVAILABLE = isJfrPresent();
+
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * @return true if the JVM supports JFR events
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * @return listener emitting command handler events to JFR
+     * @throws IllegalStateException if JFR isn't available
+     */
+    public static CommandStageListener newListener() {
+        if (!AVAILABLE)
+            throw new IllegalStateException("Java Flight Recorder is not available");
+        return new FlightRecorderListener();
+    }
+
+    private static boolean isJfrPresent() {
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightRecorderEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.github.afarion1.command_handler.jfr;
+
+import com.github.afarion1.command_handler.command.CommandStageListener;
+import com.github.afarion1.command_handler.command.InvocationContext;
+import com.github.afarion1.command_handler.metrics.Rejection;
+import jdk.jfr.EventType;
+import net.dv8tion.jda.api.entities.Guild;
+
+import java.util.Locale;
+
+/**
+ * Emits JFR events from stage notifications. Events begin and end in the stage hooks, so their durations are
+ * measured by JFR itself. Nothing is allocated while the events are disabled in the recording.
+ */
+final class FlightRecorderListener implements CommandStageListener {
+
+    private static final EventType DISPATCH = EventType.getEventType(CommandDispatchEvent.class);
+    private static final EventType ARGUMENT_PARSE = EventType.getEventType(ArgumentParseEvent.class);
+    private static final EventType COOLDOWN_QUERY = EventType.getEventType(CooldownQueryEvent.class);
+    private static final EventType EXECUTION = EventType.getEventType(CommandExecutionEvent.class);
+    private static final EventType REJECTION = EventType.getEventType(CommandRejectionEvent.class);
+
+    //events in progress of the invocation processed by the thread
+    private final ThreadLocal<Events> events = ThreadLocal.withInitial(Events::new);
+
+    @Override
+    public void onReceived(InvocationContext context) {
+        if (DISPATCH.isEnabled()) {
+            Events current = events.get();
+            current.dispatch = new CommandDispatchEvent();
+            current.dispatch.begin();
+        }
+    }
+
+    @Override
+    public void onMatched(InvocationContext context) {
+        if (ARGUMENT_PARSE.isEnabled()) {
+            Events current = events.get();
+            current.argumentParse = new ArgumentParseEvent();
+            current.argumentParse.begin();
+        }
+    }
+
+    @Override
+    public void onArgumentsParsed(InvocationContext context) {
+        Events current = events.get();
+        ArgumentParseEvent event = current.argumentParse;
+        if (event == null)
+            return;
+        current.argumentParse = null;
+        event.end();
+        if (event.shouldCommit()) {
+            event.command = context.getCommand().getName();
+            event.guildId = guildId(context);
+            event.valid = context.getArguments().areValid();
+            event.commit();
+        }
+    }
+
+    @Override
+    public void onPermissionsChecked(InvocationContext context) {
+        if (COOLDOWN_QUERY.isEnabled() && context.getRejection() == null
+                && context.getCommand().hasAnyCooldown(context.getEvent())) {
+            Events current = events.get();
+            current.cooldownQuery = new CooldownQueryEvent();
+            current.cooldownQuery.begin();
+        }
+    }
+
+    @Override
+    public void onCooldownChecked(InvocationContext context) {
+        Events current = events.get();
+        CooldownQueryEvent event = current.cooldownQuery;
+        if (event != null) {
+            current.cooldownQuery = null;
+            event.end();
+            if (event.shouldCommit()) {
+                event.command = context.getCommand().getName();
+                event.guildId = guildId(context);
+                if (context.getRejection() == Rejection.COOLDOWN)
+                    event.outcome = "on cooldown";
+                else if (context.getFailure() != null)
+                    event.outcome = "failed";
+                else
+                    event.outcome = "passed";
+                event.commit();
+            }
+        }
+
+        if (EXECUTION.isEnabled() && context.getRejection() == null) {
+            current.execution = new CommandExecutionEvent();
+            current.execution.begin();
+        }
+    }
+
+    @Override
+    public void onExecuted(InvocationContext context) {
+        commitExecution(context);
+    }
+
+    @Override
+    public void onFailed(InvocationContext context) {
+        commitExecution(context);
+    }
+
+    private void commitExecution(InvocationContext context) {
+        Events current = events.get();
+        CommandExecutionEvent event = current.execution;
+        //cooldown failures are reported before the execution begins
+        if (event == null || context.getExecutedNanos() == 0)
+            return;
+        current.execution = null;
+        event.end();
+        if (event.shouldCommit()) {
+            event.command = context.getCommand().getName();
+            event.guildId = guildId(context);
+            Throwable failure = context.getFailure();
+            event.outcome = failure == null ? "executed" : "failed";
+            event.failure = failure == null ? null : failure.getClass();
+            event.commit();
+        }
+    }
+
+    @Override
+    public void onFinished(InvocationContext context) {
+        Events current = events.get();
+        Rejection rejection = context.getRejection();
+        if (rejection != null && REJECTION.isEnabled()) {
+            CommandRejectionEvent event = new CommandRejectionEvent();
+            if (event.shouldCommit()) {
+                event.command = context.getCommand().getName();
+                event.guildId = guildId(context);
+                event.reason = rejection.name().toLowerCase(Locale.ROOT);
+                event.commit();
+            }
+        }
+
+        CommandDispatchEvent event = current.dispatch;
+        current.clear();
+        if (event == null)
+            return;
+        event.end();
+        if (event.shouldCommit()) {
+            event.command = context.getCommand() == null ? null : context.getCommand().getName();
+            event.guildId = guildId(context);
+            event.outcome = dispatchOutcome(context);
+            event.commit();
+        }
+    }
+
+    private static String dispatchOutcome(InvocationContext context) {
+        if (context.getCommand() == null)
+            return "unmatched";
+        if (context.getRejection() != null)
+            return "rejected";
+        if (context.getFailure() != null)
+            return "failed";
+        return context.getExecutedNanos() != 0 ? "executed" : "aborted";
+    }
+
+    private static long guildId(InvocationContext context) {
+        Guild guild = context.getEvent().getGuild();
+        return guild == null ? 0 : guild.getIdLong();
+    }
+
+    private static final class Events {
+        private CommandDispatchEvent dispatch;
+        private ArgumentParseEvent argumentParse;
+        private CooldownQueryEvent cooldownQuery;
+        private CommandExecutionEvent execution;
+
+        private void clear() {
+            dispatch = null;
+            argumentParse = null;
+            cooldownQuery = null;
+            execution = null;
+        }
+    }
+}
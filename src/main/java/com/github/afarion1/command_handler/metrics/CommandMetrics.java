@@ -0,0 +1,65 @@
+package com.github.afarion1.command_handler.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of a single command. Recording is lock free.
+ */
+public final class CommandMetrics {
+
+    private static final Rejection[] REJECTIONS = Rejection.values();
+    private static final Stage[] STAGES = Stage.values();
+
+    private final String commandName;
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder[] rejections = new LongAdder[REJECTIONS.length];
+    private final LatencyHistogram[] latencies = new LatencyHistogram[STAGES.length];
+
+    CommandMetrics(String commandName) {
+        this.commandName = commandName;
+        for (int i = 0; i < rejections.length; i++)
+            rejections[i] = new LongAdder();
+        for (int i = 0; i < latencies.length; i++)
+            latencies[i] = new LatencyHistogram();
+    }
+
+    public String getCommandName() {
+        return commandName;
+    }
+
+    /**
+     * Records a call of the command, regardless of whether it was executed.
+     */
+    public void recordInvocation() {
+        invocations.increment();
+    }
+
+    public void recordRejection(Rejection rejection) {
+        rejections[rejection.ordinal()].increment();
+    }
+
+    /**
+     * Records a failure while managing cooldowns or executing the command.
+     */
+    public void recordError() {
+        errors.increment();
+    }
+
+    public void recordLatency(Stage stage, long nanos) {
+        latencies[stage.ordinal()].record(nanos);
+    }
+
+    public CommandMetricsSnapshot snapshot() {
+        Map<Rejection, Long> rejectionCounts = new EnumMap<>(Rejection.class);
+        for (Rejection rejection : REJECTIONS)
+            rejectionCounts.put(rejection, rejections[rejection.ordinal()].sum());
+        Map<Stage, HistogramSnapshot> latencySnapshots = new EnumMap<>(Stage.class);
+        for (Stage stage : STAGES)
+            latencySnapshots.put(stage, latencies[stage.ordinal()].snapshot());
+        return new CommandMetricsSnapshot(commandName, invocations.sum(), errors.sum(), rejectionCounts,
+                latencySnapshots);
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.afarion1.command_handler.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Immutable state of {@link CommandMetrics} at some moment.
+ */
+public final class CommandMetricsSnapshot {
+
+    private final String commandName;
+    private final long invocations;
+    private final long errors;
+    private final Map<Rejection, Long> rejections;
+    private final Map<Stage, HistogramSnapshot> latencies;
+
+    CommandMetricsSnapshot(String commandName, long invocations, long errors, Map<Rejection, Long> rejections,
+                           Map<Stage, HistogramSnapshot> latencies) {
+        this.commandName = commandName;
+        this.invocations = invocations;
+        this.errors = errors;
+        this.rejections = Collections.unmodifiableMap(rejections);
+        this.latencies = Collections.unmodifiableMap(latencies);
+    }
+
+    public String getCommandName() {
+        return commandName;
+    }
+
+    public long getInvocations() {
+        return invocations;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getRejections(Rejection rejection) {
+        return rejections.get(rejection);
+    }
+
+    /**
+     * @return sum of rejections of all the reasons
+     */
+    public long getTotalRejections() {
+        long total = 0;
+        for (long count : rejections.values())
+            total += count;
+        return total;
+    }
+
+    public HistogramSnapshot getLatency(Stage stage) {
+        return latencies.get(stage);
+    }
+
+    @Override
+    public String toString() {
+        return "CommandMetricsSnapshot{command=" + commandName + ", invocations=" + invocations +
+                ", errors=" + errors + ", rejections=" + rejections + ", total=" + latencies.get(Stage.TOTAL) + '}';
+    }
+}
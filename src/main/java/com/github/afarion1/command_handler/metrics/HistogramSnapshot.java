@@ -0,0 +1,92 @@
+package com.github.afarion1.command_handler.metrics;
+
+/**
+ * Immutable state of a {@link LatencyHistogram} at some moment. Values recorded concurrently with taking
+ * the snapshot may be partially included.
+ */
+public final class HistogramSnapshot {
+
+    private final long[] counts;
+    private final long count;
+    private final long sumNanos;
+    private final long maxNanos;
+
+    HistogramSnapshot(long[] counts, long sumNanos, long maxNanos) {
+        this.counts = counts;
+        long total = 0;
+        for (long c : counts)
+            total += c;
+        this.count = total;
+        this.sumNanos = sumNanos;
+        this.maxNanos = maxNanos;
+    }
+
+    /**
+     * @return amount of recorded values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public long getSumNanos() {
+        return sumNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public double getMeanNanos() {
+        return count == 0 ? 0 : (double) sumNanos / count;
+    }
+
+    /**
+     * @return amount of buckets, including the last one which has no upper bound
+     */
+    public int getBucketCount() {
+        return counts.length;
+    }
+
+    /**
+     * @return amount of values in the bucket (not cumulative)
+     */
+    public long getBucketValue(int bucket) {
+        return counts[bucket];
+    }
+
+    /**
+     * @return inclusive upper bound of the bucket in nanoseconds, {@link Long#MAX_VALUE} for the last bucket
+     */
+    public long getBucketUpperBoundNanos(int bucket) {
+        return LatencyHistogram.upperBoundNanos(bucket);
+    }
+
+    /**
+     * Estimates a percentile as upper bound of the bucket containing it, so the result is at most twice as
+     * big as the real value. Never exceeds the maximal recorded value.
+     * @param percentile percentile from 0 to 100
+     * @return estimated latency in nanoseconds, 0 if nothing was recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("Percentile should be in range from 0 to 100");
+        if (count == 0)
+            return 0;
+        long rank = (long) Math.ceil(percentile / 100 * count);
+        if (rank < 1) rank = 1;
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= rank)
+                return Math.min(LatencyHistogram.upperBoundNanos(i), maxNanos);
+        }
+        return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "HistogramSnapshot{count=" + count + ", meanNanos=" + (long) getMeanNanos() +
+                ", p50Nanos=" + getPercentileNanos(50) + ", p99Nanos=" + getPercentileNanos(99) +
+                ", maxNanos=" + maxNanos + '}';
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.afarion1.command_handler.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency histogram with fixed exponential buckets, from 1 microsecond up to about 33 seconds.
+ * Bucket {@code i} counts values up to {@code 2^i} microseconds, the last bucket counts everything above.
+ */
+public final class LatencyHistogram {
+
+    static final int BUCKETS = 26;
+    private static final long[] UPPER_BOUNDS_NANOS = new long[BUCKETS];
+
+    static {
+        for (int i = 0; i < BUCKETS; i++)
+            UPPER_BOUNDS_NANOS[i] = 1000L << i;
+    }
+
+    //one extra bucket for values above the last bound
+    private final LongAdder[] buckets = new LongAdder[BUCKETS + 1];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++)
+            buckets[i] = new LongAdder();
+    }
+
+    /**
+     * @param nanos measured latency in nanoseconds, negative values are counted as zero
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets[bucketIndex(nanos)].increment();
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    public HistogramSnapshot snapshot() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++)
+            counts[i] = buckets[i].sum();
+        return new HistogramSnapshot(counts, sum.sum(), max.get());
+    }
+
+    static int bucketIndex(long nanos) {
+        long micros = (nanos - 1) / 1000;
+        int index = micros <= 0 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(micros);
+        return Math.min(index, BUCKETS);
+    }
+
+    /**
+     * @return upper bound of the bucket in nanoseconds, {@link Long#MAX_VALUE} for the last bucket
+     */
+    static long upperBoundNanos(int bucket) {
+        return bucket < BUCKETS ? UPPER_BOUNDS_NANOS[bucket] : Long.MAX_VALUE;
+    }
+}
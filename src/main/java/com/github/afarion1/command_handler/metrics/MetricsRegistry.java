@@ -0,0 +1,38 @@
+package com.github.afarion1.command_handler.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Holds metrics of all the commands of a handler.
+ */
+public final class MetricsRegistry {
+
+    private final Map<String, CommandMetrics> commands = new ConcurrentHashMap<>();
+    private final LongAdder unmatched = new LongAdder();
+    private final long createdAt = System.currentTimeMillis();
+
+    /**
+     * @return metrics of the command, created if absent
+     */
+    public CommandMetrics getCommandMetrics(String commandName) {
+        return commands.computeIfAbsent(commandName, CommandMetrics::new);
+    }
+
+    /**
+     * Records a message starting with the prefix which didn't match any command.
+     */
+    public void recordUnmatched() {
+        unmatched.increment();
+    }
+
+    public MetricsSnapshot snapshot() {
+        Map<String, CommandMetricsSnapshot> snapshots = new LinkedHashMap<>();
+        commands.values().stream()
+                .sorted((a, b) -> a.getCommandName().compareTo(b.getCommandName()))
+                .forEach(m -> snapshots.put(m.getCommandName(), m.snapshot()));
+        return new MetricsSnapshot(snapshots, unmatched.sum(), createdAt, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.afarion1.command_handler.metrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Immutable state of {@link MetricsRegistry} at some moment.
+ */
+public final class MetricsSnapshot {
+
+    private final Map<String, CommandMetricsSnapshot> commands;
+    private final long unmatched;
+    private final long startedAtMillis;
+    private final long takenAtMillis;
+
+    MetricsSnapshot(Map<String, CommandMetricsSnapshot> commands, long unmatched, long startedAtMillis,
+                    long takenAtMillis) {
+        this.commands = Collections.unmodifiableMap(commands);
+        this.unmatched = unmatched;
+        this.startedAtMillis = startedAtMillis;
+        this.takenAtMillis = takenAtMillis;
+    }
+
+    /**
+     * @return metrics of the command or null if the command is unknown
+     */
+    public CommandMetricsSnapshot getCommand(String commandName) {
+        return commands.get(commandName);
+    }
+
+    /**
+     * @return metrics of all the commands sorted by name
+     */
+    public Collection<CommandMetricsSnapshot> getCommands() {
+        return commands.values();
+    }
+
+    /**
+     * @return amount of messages starting with the prefix which didn't match any command
+     */
+    public long getUnmatched() {
+        return unmatched;
+    }
+
+    /**
+     * @return time in millis when metrics recording started
+     */
+    public long getStartedAtMillis() {
+        return startedAtMillis;
+    }
+
+    /**
+     * @return time in millis when the snapshot was taken
+     */
+    public long getTakenAtMillis() {
+        return takenAtMillis;
+    }
+}
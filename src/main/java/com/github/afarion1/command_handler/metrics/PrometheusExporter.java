@@ -0,0 +1,158 @@
+package com.github.afarion1.command_handler.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Formats {@link MetricsSnapshot} in Prometheus text exposition format. Could also serve it over HTTP using the
+ * JDK's built-in server, see {@link #start(InetSocketAddress)}.
+ */
+public final class PrometheusExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(PrometheusExporter.class);
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String PREFIX = "command_handler_";
+
+    private final Supplier<MetricsSnapshot> snapshotSupplier;
+    private HttpServer server = null;
+    private ExecutorService serverExecutor = null;
+
+    /**
+     * @param snapshotSupplier supplier of metrics to export, for example {@code handler::getMetrics}
+     */
+    public PrometheusExporter(Supplier<MetricsSnapshot> snapshotSupplier) {
+        this.snapshotSupplier = snapshotSupplier;
+    }
+
+    /**
+     * Starts serving metrics on {@code /metrics} path of the address.
+     * @throws IOException if the server couldn't be bound to the address
+     */
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        if (server != null)
+            throw new IllegalStateException("The exporter has already started");
+        server = HttpServer.create(address, 0);
+        server.createContext("/metrics", this::handle);
+        serverExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Command handler metrics exporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(serverExecutor);
+        server.start();
+        log.info("Serving metrics on {}/metrics", server.getAddress());
+    }
+
+    public synchronized void stop() {
+        if (server == null)
+            return;
+        server.stop(0);
+        serverExecutor.shutdown();
+        server = null;
+        serverExecutor = null;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = format(snapshotSupplier.get()).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (RuntimeException e) {
+            log.error("Unable to export metrics", e);
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @return the snapshot in Prometheus text exposition format
+     */
+    public static String format(MetricsSnapshot snapshot) {
+        StringBuilder sb = new StringBuilder(4096);
+
+        header(sb, "invocations_total", "counter", "Calls of commands, including rejected ones");
+        for (CommandMetricsSnapshot cmd : snapshot.getCommands()) {
+            sample(sb, "invocations_total", cmd, null, cmd.getInvocations());
+        }
+
+        header(sb, "rejections_total", "counter", "Calls of commands which weren't executed");
+        for (CommandMetricsSnapshot cmd : snapshot.getCommands()) {
+            for (Rejection rejection : Rejection.values()) {
+                String label = "reason=\"" + rejection.name().toLowerCase(Locale.ROOT) + "\"";
+                sample(sb, "rejections_total", cmd, label, cmd.getRejections(rejection));
+            }
+        }
+
+        header(sb, "errors_total", "counter", "Failures while managing cooldown or executing commands");
+        for (CommandMetricsSnapshot cmd : snapshot.getCommands()) {
+            sample(sb, "errors_total", cmd, null, cmd.getErrors());
+        }
+
+        header(sb, "unmatched_total", "counter", "Messages with the prefix that didn't match any command");
+        sb.append(PREFIX).append("unmatched_total ").append(snapshot.getUnmatched()).append('\n');
+
+        header(sb, "stage_duration_seconds", "histogram", "Latency of command processing stages");
+        for (CommandMetricsSnapshot cmd : snapshot.getCommands()) {
+            for (Stage stage : Stage.values()) {
+                appendHistogram(sb, cmd, stage, cmd.getLatency(stage));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendHistogram(StringBuilder sb, CommandMetricsSnapshot cmd, Stage stage,
+                                        HistogramSnapshot histogram) {
+        String stageLabel = "stage=\"" + stage.name().toLowerCase(Locale.ROOT) + "\"";
+        long cumulative = 0;
+        for (int i = 0; i < histogram.getBucketCount(); i++) {
+            cumulative += histogram.getBucketValue(i);
+            long bound = histogram.getBucketUpperBoundNanos(i);
+            String le = bound == Long.MAX_VALUE ? "+Inf" : Double.toString(bound / 1e9);
+            sample(sb, "stage_duration_seconds_bucket", cmd, stageLabel + ",le=\"" + le + "\"", cumulative);
+        }
+        sb.append(PREFIX).append("stage_duration_seconds_sum{");
+        commandLabel(sb, cmd).append(',').append(stageLabel).append("} ")
+                .append(histogram.getSumNanos() / 1e9).append('\n');
+        sample(sb, "stage_duration_seconds_count", cmd, stageLabel, histogram.getCount());
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, CommandMetricsSnapshot cmd, String labels, long value) {
+        sb.append(PREFIX).append(name).append('{');
+        commandLabel(sb, cmd);
+        if (labels != null)
+            sb.append(',').append(labels);
+        sb.append("} ").append(value).append('\n');
+    }
+
+    private static StringBuilder commandLabel(StringBuilder sb, CommandMetricsSnapshot cmd) {
+        sb.append("command=\"");
+        String name = cmd.getCommandName();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '\\' || c == '"') sb.append('\\').append(c);
+            else if (c == '\n') sb.append("\\n");
+            else sb.append(c);
+        }
+        return sb.append('"');
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.afarion1.command_handler.metrics;
+
+/**
+ * Reasons a found command wasn't executed.
+ */
+public enum Rejection {
+    /**
+     * The command could be executed only in guild chat
+     */
+    GUILD_ONLY,
+    /**
+     * The command has cooldown, but the database isn't available
+     */
+    DATABASE,
+    /**
+     * Some arguments are missing or invalid
+     */
+    ARGUMENTS,
+    /**
+     * The author lacks discord permissions
+     */
+    PERMISSIONS,
+    /**
+     * The command is on user or guild cooldown
+     */
+    COOLDOWN
+}
@@ -0,0 +1,27 @@
+package com.github.afarion1.command_handler.metrics;
+
+/**
+ * Stages of command processing which latency is measured.
+ */
+public enum Stage {
+    /**
+     * Finding the command by name or alias
+     */
+    LOOKUP,
+    /**
+     * Parsing and validation of arguments
+     */
+    ARGUMENT_PARSING,
+    /**
+     * Checking and saving cooldowns in the database
+     */
+    COOLDOWN,
+    /**
+     * Execution of the command itself
+     */
+    EXECUTION,
+    /**
+     * Whole processing of the command, starting from the lookup
+     */
+    TOTAL
+}